@@ -0,0 +1,20 @@
+package com.archsense.ai.config;
+
+import com.archsense.common.http.HttpClientProperties;
+import com.archsense.common.http.PooledHttpClientFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestTemplate;
+
+@Configuration
+@EnableConfigurationProperties(HttpClientProperties.class)
+public class RestTemplateConfig {
+
+    @Bean
+    public RestTemplate restTemplate(HttpClientProperties httpClientProperties, ObjectProvider<MeterRegistry> meterRegistry) {
+        return PooledHttpClientFactory.createRestTemplate("ai-service", httpClientProperties, meterRegistry.getIfAvailable());
+    }
+}
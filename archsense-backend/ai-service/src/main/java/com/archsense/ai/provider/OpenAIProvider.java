@@ -6,7 +6,6 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.*;
@@ -23,18 +22,18 @@ public class OpenAIProvider implements AIProvider {
     private static final Logger log = LoggerFactory.getLogger(OpenAIProvider.class);
     private static final String OPENAI_API_URL = "https://api.openai.com/v1/chat/completions";
 
-    @Autowired(required = false)  // Make it optional since we might not have RestTemplate in ai-service standalone
-    private RestTemplate restTemplate;
-
+    private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
     private final String apiKey;
     private final String model;
     private final int maxTokens;
 
-    public OpenAIProvider(ObjectMapper objectMapper,
+    public OpenAIProvider(RestTemplate restTemplate,
+                          ObjectMapper objectMapper,
                           @Value("${ai.openai.api-key}") String apiKey,
                           @Value("${ai.openai.model}") String model,
                           @Value("${ai.openai.max-tokens}") int maxTokens) {
+        this.restTemplate = restTemplate;
         this.objectMapper = objectMapper;
         this.apiKey = apiKey;
         this.model = model;
@@ -45,10 +44,6 @@ public class OpenAIProvider implements AIProvider {
     public AnalysisReport analyze(List<ArtifactContent> artifacts, String projectId, String analysisId) {
         log.info("OpenAI Provider: Analyzing {} artifacts for analysisId: {}", artifacts.size(), analysisId);
 
-        if (restTemplate == null) {
-            restTemplate = new RestTemplate();  // Fallback if not injected
-        }
-
         String prompt = buildPrompt(artifacts);
         String aiResponse = callOpenAI(prompt);
 
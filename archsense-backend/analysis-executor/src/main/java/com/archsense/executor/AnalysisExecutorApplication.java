@@ -2,11 +2,13 @@ package com.archsense.executor;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication(scanBasePackages = {
         "com.archsense.executor",
         "com.archsense.common"
 })
+@EnableScheduling
 public class AnalysisExecutorApplication {
     public static void main(String[] args) {
         SpringApplication.run(AnalysisExecutorApplication.class, args);
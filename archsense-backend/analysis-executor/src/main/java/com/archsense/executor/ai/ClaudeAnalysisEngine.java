@@ -1,10 +1,20 @@
 package com.archsense.executor.ai;
 
+import com.archsense.common.image.ImageScaler;
+import com.archsense.executor.cache.ArtifactCache;
+import com.archsense.executor.cache.ReportCache;
+import com.archsense.executor.client.AnalysisServiceClient;
 import com.archsense.executor.model.AnalysisReport;
 import com.archsense.executor.model.Artifact;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import okhttp3.*;
+import okio.BufferedSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,14 +22,15 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
 @Component
@@ -27,47 +38,122 @@ import java.util.concurrent.TimeUnit;
 public class ClaudeAnalysisEngine {
 
     private static final Logger log = LoggerFactory.getLogger(ClaudeAnalysisEngine.class);
-    private static final String CLAUDE_API_URL = "https://api.anthropic.com/v1/messages";
+    private static final int MAX_PARTIAL_ISSUES = 20;
+    private static final String FALLBACK_SUMMARY = "Analysis completed but response format was unexpected. Please try again.";
+    private static final int MAX_SIGNATURE_LENGTH = 160;
+    // Long-edge limits tried in turn when images push a request over the input budget
+    private static final int[] IMAGE_COMPACTION_EDGES = {1092, 768, 512};
+    // Kept free of excerpts for the section and per-excerpt headers
+    private static final int EXCERPT_OVERHEAD_TOKENS = 100;
 
     private final OkHttpClient httpClient;
     private final ObjectMapper objectMapper;
+    private final ReportCache reportCache;
+    private final ArtifactCache artifactCache;
+    private final ImagePreprocessor imagePreprocessor;
+    private final DocumentTextReader documentTextReader;
+    private final ClaudeCallGuard callGuard;
+    private final TokenRateGovernor rateGovernor;
+    private final String apiUrl;
     private final String apiKey;
     private final String model;
     private final int maxTokens;
+    private final boolean streaming;
+    private final long progressIntervalMs;
+    private final boolean promptCaching;
+    private final String systemPrompt;
+    private final TokenBudgetEstimator budgetEstimator;
+    private final boolean documentText;
+    private final int chunkChars;
+    private final int maxExcerptTokens;
+
+    private final Counter inputTokens;
+    private final Counter outputTokens;
+    private final Counter cacheWriteTokens;
+    private final Counter cacheReadTokens;
+    private final Timer timeToFirstToken;
 
     @Autowired(required = false)
     private com.archsense.executor.storage.StorageService artifactStorageService;
 
+    @Autowired(required = false)
+    private com.archsense.executor.storage.S3StorageService s3StorageService;
+
+    @Autowired(required = false)
+    private AnalysisServiceClient analysisServiceClient;
+
     public ClaudeAnalysisEngine(
+            @Value("${ai.anthropic.base-url:https://api.anthropic.com}") String baseUrl,
             @Value("${ai.anthropic.api-key}") String apiKey,
             @Value("${ai.anthropic.model}") String model,
             @Value("${ai.anthropic.max-tokens}") int maxTokens,
-            ObjectMapper objectMapper) {
-
+            @Value("${ai.anthropic.streaming:false}") boolean streaming,
+            @Value("${ai.anthropic.progress-interval-ms:1000}") long progressIntervalMs,
+            @Value("${ai.anthropic.prompt-caching:true}") boolean promptCaching,
+            @Value("${ai.anthropic.context-window:200000}") int contextWindow,
+            @Value("${ai.anthropic.input-budget-tokens:50000}") int inputBudgetTokens,
+            @Value("${ai.text.enabled:true}") boolean documentText,
+            @Value("${ai.text.chunk-chars:2000}") int chunkChars,
+            @Value("${ai.text.max-excerpt-tokens:15000}") int maxExcerptTokens,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            ReportCache reportCache,
+            ArtifactCache artifactCache,
+            ImagePreprocessor imagePreprocessor,
+            DocumentTextReader documentTextReader,
+            ClaudeCallGuard callGuard,
+            TokenRateGovernor rateGovernor) {
+
+        this.apiUrl = baseUrl + "/v1/messages";
         this.apiKey = apiKey;
         this.model = model;
         this.maxTokens = maxTokens;
+        this.streaming = streaming;
+        this.progressIntervalMs = progressIntervalMs;
+        this.promptCaching = promptCaching;
+        this.systemPrompt = buildSystemPrompt(TokenBudgetEstimator.responseTokenLimit(maxTokens));
+        this.budgetEstimator = new TokenBudgetEstimator(contextWindow, maxTokens, inputBudgetTokens);
+        this.documentText = documentText;
+        this.chunkChars = chunkChars;
+        this.maxExcerptTokens = maxExcerptTokens;
         this.objectMapper = objectMapper;
+        this.reportCache = reportCache;
+        this.artifactCache = artifactCache;
+        this.imagePreprocessor = imagePreprocessor;
+        this.documentTextReader = documentTextReader;
+        this.callGuard = callGuard;
+        this.rateGovernor = rateGovernor;
 
         this.httpClient = new OkHttpClient.Builder()
                 .connectTimeout(30, TimeUnit.SECONDS)
                 .readTimeout(120, TimeUnit.SECONDS) // Longer timeout for image analysis
                 .build();
 
-        log.info("Claude AI Engine initialized: model={}, maxTokens={}", model, maxTokens);
+        this.inputTokens = meterRegistry.counter("archsense.claude.tokens", "type", "input");
+        this.outputTokens = meterRegistry.counter("archsense.claude.tokens", "type", "output");
+        this.cacheWriteTokens = meterRegistry.counter("archsense.claude.tokens", "type", "cache_write");
+        this.cacheReadTokens = meterRegistry.counter("archsense.claude.tokens", "type", "cache_read");
+        this.timeToFirstToken = meterRegistry.timer("archsense.claude.time_to_first_token");
+
+        log.info("Claude AI Engine initialized: model={}, maxTokens={}, streaming={}, promptCaching={}, inputBudget={}, documentText={}",
+                model, maxTokens, streaming, promptCaching, budgetEstimator.getInputBudget(), documentText);
     }
 
     public AnalysisReport analyze(List<Artifact> artifacts, Map<String, Object> context) {
         log.info("Starting Claude AI analysis for {} artifacts", artifacts.size());
 
-        try {
-            String response = callClaudeAPI(artifacts, context);
-            AnalysisReport report = parseResponse(response);
-
-            log.info("Claude analysis completed: {} issues, {} recommendations",
-                    report.getIssues().size(), report.getRecommendations().size());
+        try (PreparedAnalysis prepared = prepare(artifacts, context)) {
+            Optional<AnalysisReport> cached = findCached(prepared);
+            if (cached.isPresent()) {
+                return cached.get();
+            }
 
-            return report;
+            // Built once; the body replays its image buffers, so retries do not redo compaction
+            ClaudeResponse response;
+            try (ClaudeRequestBody requestBody = buildRequestBody(prepared, streaming)) {
+                response = callGuard.execute(() -> callClaudeAPI(requestBody, context));
+            }
+            return toReport(prepared.cacheKey(), prepared.projectId(), response.text(), response.usage());
 
         } catch (Exception e) {
             log.error("Claude AI analysis failed", e);
@@ -75,24 +161,216 @@ public class ClaudeAnalysisEngine {
         }
     }
 
-    private String callClaudeAPI(List<Artifact> artifacts, Map<String, Object> context) throws IOException {
-        String requestBody = buildRequestBodyWithImages(artifacts, context);
+    // Inputs and cache key for one analysis; shared with the Message Batches mode. The prompt itself is
+    // only built (and compacted) in buildRequestBody, so a cache hit never pays for compaction. images is
+    // null when the key came from upload-time digests alone; they are then loaded only on a cache miss
+    record PreparedAnalysis(List<Artifact> artifacts, Map<String, Object> context,
+                            Map<Artifact, LoadedImage> images, String cacheKey, String projectId) implements AutoCloseable {
+        @Override
+        public void close() {
+            closeImages(images);
+        }
+    }
+
+    // derivative is true when artifact-service's upload-time derivative was loaded instead of the original
+    record LoadedImage(ArtifactCache.CachedArtifact data, boolean derivative) {
+    }
+
+    PreparedAnalysis prepare(List<Artifact> artifacts, Map<String, Object> context) {
+        boolean digested = artifacts.stream().allMatch(artifact -> artifact.getContentDigest() != null);
+        Map<Artifact, LoadedImage> images = digested ? null : loadImages(artifacts);
+        return new PreparedAnalysis(artifacts, context, images,
+                buildCacheKey(artifacts, context, images != null ? images : Map.of()), (String) context.get("projectId"));
+    }
+
+    // The key analyze() would use, without loading anything when artifact-service already recorded digests
+    String cacheKey(List<Artifact> artifacts, Map<String, Object> context) {
+        try (PreparedAnalysis prepared = prepare(artifacts, context)) {
+            return prepared.cacheKey();
+        }
+    }
+
+    private static void closeImages(Map<Artifact, LoadedImage> images) {
+        if (images != null) {
+            images.values().forEach(image -> image.data().close());
+        }
+    }
+
+    // The tiered mode picks the model per call through the context; everything else uses the configured one
+    private String modelFor(Map<String, Object> context) {
+        String override = (String) context.get("model");
+        return override != null ? override : model;
+    }
+
+    // True when the response could not be parsed and the report is only a placeholder
+    boolean isFallback(AnalysisReport report) {
+        return FALLBACK_SUMMARY.equals(report.getSummary());
+    }
+
+    Optional<AnalysisReport> findCached(PreparedAnalysis prepared) {
+        Optional<AnalysisReport> cached = reportCache.get(prepared.cacheKey(), prepared.projectId());
+        if (cached.isPresent()) {
+            log.info("Returning cached Claude analysis for project {}", prepared.projectId());
+        }
+        return cached;
+    }
+
+    // Parses the model's text into a report and caches it unless parsing fell back. Usage is attached
+    // after caching so a later cache hit does not report tokens it never spent
+    AnalysisReport toReport(String cacheKey, String projectId, String response, AnalysisReport.TokenUsage usage) {
+        AnalysisReport report = parseResponse(response);
+
+        log.info("Claude analysis completed: {} issues, {} recommendations",
+                report.getIssues().size(), report.getRecommendations().size());
+
+        if (!isFallback(report)) {
+            reportCache.put(cacheKey, projectId, report);
+        }
+
+        if (usage != null) {
+            recordUsage(usage);
+            report.setTokenUsage(usage);
+        }
+        return report;
+    }
+
+    private record ClaudeResponse(String text, AnalysisReport.TokenUsage usage) {
+    }
+
+    // Reads a Messages API usage object; streaming responses send the same fields in message_start
+    AnalysisReport.TokenUsage readUsage(JsonNode usageNode) {
+        AnalysisReport.TokenUsage usage = new AnalysisReport.TokenUsage();
+        usage.setModel(model);
+        mergeUsage(usage, usageNode);
+        return usage;
+    }
+
+    private void mergeUsage(AnalysisReport.TokenUsage usage, JsonNode usageNode) {
+        if (usageNode.hasNonNull("input_tokens")) {
+            usage.setInputTokens(usageNode.get("input_tokens").asInt());
+        }
+        if (usageNode.hasNonNull("output_tokens")) {
+            usage.setOutputTokens(usageNode.get("output_tokens").asInt());
+        }
+        if (usageNode.hasNonNull("cache_creation_input_tokens")) {
+            usage.setCacheCreationInputTokens(usageNode.get("cache_creation_input_tokens").asInt());
+        }
+        if (usageNode.hasNonNull("cache_read_input_tokens")) {
+            usage.setCacheReadInputTokens(usageNode.get("cache_read_input_tokens").asInt());
+        }
+    }
+
+    private void recordUsage(AnalysisReport.TokenUsage usage) {
+        increment(inputTokens, usage.getInputTokens());
+        increment(outputTokens, usage.getOutputTokens());
+        increment(cacheWriteTokens, usage.getCacheCreationInputTokens());
+        increment(cacheReadTokens, usage.getCacheReadInputTokens());
+        if (usage.getTimeToFirstTokenMs() != null) {
+            timeToFirstToken.record(usage.getTimeToFirstTokenMs(), TimeUnit.MILLISECONDS);
+        }
+
+        log.info("Claude usage: input={}, output={}, cacheWrite={}, cacheRead={}, ttft={}ms, duration={}ms",
+                usage.getInputTokens(), usage.getOutputTokens(), usage.getCacheCreationInputTokens(),
+                usage.getCacheReadInputTokens(), usage.getTimeToFirstTokenMs(), usage.getDurationMs());
+    }
+
+    private void increment(Counter counter, Integer tokens) {
+        if (tokens != null) {
+            counter.increment(tokens);
+        }
+    }
+
+    // Prefers the model-sized derivative made at upload time; the original is the fallback while
+    // preprocessing is still pending, failed, or the derivative cannot be read
+    private Map<Artifact, LoadedImage> loadImages(List<Artifact> artifacts) {
+        Map<Artifact, LoadedImage> images = new LinkedHashMap<>();
+        for (Artifact artifact : artifacts) {
+            if (isImageType(artifact.getType())) {
+                if (artifact.getDerivativeKey() != null) {
+                    ArtifactCache.CachedArtifact derivative = loadArtifact(artifact, artifact.getDerivativeKey());
+                    if (derivative != null) {
+                        images.put(artifact, new LoadedImage(derivative, true));
+                        continue;
+                    }
+                }
+                ArtifactCache.CachedArtifact image = loadArtifact(artifact, artifact.getS3Key());
+                if (image != null) {
+                    images.put(artifact, new LoadedImage(image, false));
+                }
+            }
+        }
+        return images;
+    }
+
+    private String buildCacheKey(List<Artifact> artifacts, Map<String, Object> context, Map<Artifact, LoadedImage> images) {
+        // The version number only labels the prompt; normalize it so re-running identical inputs hits the cache
+        Map<String, Object> keyContext = new HashMap<>(context);
+        Integer version = (Integer) context.get("version");
+        keyContext.put("version", version != null && version > 1 ? 2 : 1);
+
+        List<String> artifactDigests = new ArrayList<>();
+        for (Artifact artifact : artifacts) {
+            // The upload-time digest is of the original, so it matches whether or not the derivative was used
+            LoadedImage image = images.get(artifact);
+            if (artifact.getContentDigest() != null) {
+                artifactDigests.add(artifact.getContentDigest());
+            } else if (image != null) {
+                artifactDigests.add(image.data().getDigest());
+            } else {
+                artifactDigests.add(contentDigest(artifact));
+            }
+        }
+
+        // Excerpts are not in the keyed prompt (they are chosen after the cache check); their content is
+        // covered by the digests, the settings that choose them are not
+        String excerptSettings = hasDocuments(artifacts) ? "\ntext:" + chunkChars + "/" + maxExcerptTokens : "";
+        return reportCache.buildKey(modelFor(context), systemPrompt + buildPrompt(artifacts, keyContext) + excerptSettings, artifactDigests);
+    }
+
+    // Documents not yet digested by artifact-service are keyed by their bytes too, so an edited file that
+    // kept its size still misses. Only when the artifact cannot be read does the key fall back to its name
+    private String contentDigest(Artifact artifact) {
+        try (ArtifactCache.CachedArtifact data = loadArtifact(artifact, artifact.getS3Key())) {
+            return data != null ? data.getDigest() : artifact.getS3Key() + ":" + artifact.getSize();
+        }
+    }
 
+    // Reserved per attempt: the API counts a retried request against the limits again
+    private ClaudeResponse callClaudeAPI(ClaudeRequestBody requestBody, Map<String, Object> context) throws IOException {
+        TokenRateGovernor.Reservation reservation = rateGovernor.reserve(requestBody.getEstimatedInputTokens(),
+                maxTokens, !Boolean.TRUE.equals(context.get("batch")));
+        AnalysisReport.TokenUsage usage = null;
+        try {
+            ClaudeResponse response = sendRequest(requestBody, context);
+            usage = response.usage();
+            usage.setModel(requestBody.getModel());
+            return response;
+        } finally {
+            rateGovernor.settle(reservation, usage);
+        }
+    }
+
+    private ClaudeResponse sendRequest(ClaudeRequestBody requestBody, Map<String, Object> context) throws IOException {
         Request request = new Request.Builder()
-                .url(CLAUDE_API_URL)
+                .url(apiUrl)
                 .addHeader("x-api-key", apiKey)
                 .addHeader("anthropic-version", "2023-06-01")
                 .addHeader("content-type", "application/json")
-                .post(RequestBody.create(requestBody, MediaType.parse("application/json")))
+                .post(requestBody)
                 .build();
 
-        log.debug("Calling Claude API with {} artifacts...", artifacts.size());
+        log.debug("Calling Claude API with {} images...", requestBody.getImageCount());
+        long startedAt = System.nanoTime();
 
         try (Response response = httpClient.newCall(request).execute()) {
             if (!response.isSuccessful()) {
                 String errorBody = response.body() != null ? response.body().string() : "No error body";
                 log.error("Claude API error: {} - {}", response.code(), errorBody);
-                throw new IOException("Claude API request failed: " + response.code() + " - " + errorBody);
+                throw ClaudeApiException.from(response, errorBody);
+            }
+
+            if (streaming) {
+                return readStreamingResponse(response, (String) context.get("analysisId"), startedAt);
             }
 
             String responseBody = response.body().string();
@@ -102,61 +380,334 @@ public class ClaudeAnalysisEngine {
             JsonNode content = root.path("content");
 
             if (content.isArray() && content.size() > 0) {
-                return content.get(0).path("text").asText();
+                AnalysisReport.TokenUsage usage = readUsage(root.path("usage"));
+                usage.setDurationMs(elapsedMs(startedAt));
+                return new ClaudeResponse(content.get(0).path("text").asText(), usage);
             }
 
             throw new IOException("Unexpected response format from Claude API");
         }
     }
 
-    private String buildRequestBodyWithImages(List<Artifact> artifacts, Map<String, Object> context) {
-        try {
-            ObjectMapper mapper = new ObjectMapper();
-            var message = mapper.createObjectNode();
-            message.put("model", model);
-            message.put("max_tokens", maxTokens);
-
-            var messages = mapper.createArrayNode();
-            var userMessage = mapper.createObjectNode();
-            userMessage.put("role", "user");
-
-            // Build content array with text + images
-            var contentArray = mapper.createArrayNode();
-
-            // Add text prompt
-            var textContent = mapper.createObjectNode();
-            textContent.put("type", "text");
-            textContent.put("text", buildPrompt(artifacts, context));
-            contentArray.add(textContent);
-
-            // Add images
-            for (Artifact artifact : artifacts) {
-                if (isImageType(artifact.getType())) {
-                    log.info("Adding image to analysis: {}", artifact.getName());
-                    String base64Image = getArtifactAsBase64(artifact);
-                    if (base64Image != null) {
-                        var imageContent = mapper.createObjectNode();
-                        imageContent.put("type", "image");
-
-                        var imageSource = mapper.createObjectNode();
-                        imageSource.put("type", "base64");
-                        imageSource.put("media_type", getMediaType(artifact.getType()));
-                        imageSource.put("data", base64Image);
-
-                        imageContent.set("source", imageSource);
-                        contentArray.add(imageContent);
+    private long elapsedMs(long startedAt) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+    }
+
+    private ClaudeResponse readStreamingResponse(Response response, String analysisId, long startedAt) throws IOException {
+        StreamingReportParser reportParser = new StreamingReportParser(objectMapper.getFactory());
+        AnalysisReport.TokenUsage usage = readUsage(objectMapper.createObjectNode());
+        StringBuilder text = new StringBuilder();
+        int publishedIssues = 0;
+        long lastPublishedAt = 0;
+
+        BufferedSource source = response.body().source();
+        String line;
+        while ((line = source.readUtf8Line()) != null) {
+            // Only data lines carry payload; the event type is repeated inside the JSON
+            if (!line.startsWith("data:")) {
+                continue;
+            }
+
+            JsonNode event = objectMapper.readTree(line.substring(5).trim());
+            String type = event.path("type").asText();
+
+            if ("message_start".equals(type)) {
+                mergeUsage(usage, event.path("message").path("usage"));
+            } else if ("content_block_delta".equals(type)) {
+                JsonNode delta = event.path("delta");
+                if ("text_delta".equals(delta.path("type").asText())) {
+                    if (usage.getTimeToFirstTokenMs() == null) {
+                        usage.setTimeToFirstTokenMs(elapsedMs(startedAt));
+                    }
+                    String chunk = delta.path("text").asText();
+                    text.append(chunk);
+                    reportParser.feed(chunk);
+
+                    long now = System.currentTimeMillis();
+                    if (reportParser.getIssueCount() > publishedIssues && now - lastPublishedAt >= progressIntervalMs) {
+                        publishProgress(analysisId, reportParser);
+                        publishedIssues = reportParser.getIssueCount();
+                        lastPublishedAt = now;
                     }
                 }
+            } else if ("message_delta".equals(type)) {
+                // Carries the final, cumulative output token count
+                mergeUsage(usage, event.path("usage"));
+                String stopReason = event.path("delta").path("stop_reason").asText(null);
+                if ("max_tokens".equals(stopReason)) {
+                    log.warn("Claude response hit max_tokens ({}), report may be truncated", maxTokens);
+                }
+            } else if ("error".equals(type)) {
+                // Overload can also arrive mid-stream, after the 200; it is as retryable as a 529 up front
+                JsonNode error = event.path("error");
+                String message = "Claude API stream error: " + error.path("message").asText();
+                if ("overloaded_error".equals(error.path("type").asText())) {
+                    throw new ClaudeApiException(message, ClaudeApiException.OVERLOADED, null);
+                }
+                throw new IOException(message);
+            } else if ("message_stop".equals(type)) {
+                break;
+            }
+        }
+
+        if (reportParser.getIssueCount() > publishedIssues) {
+            publishProgress(analysisId, reportParser);
+        }
+
+        log.debug("Claude API stream finished: {} chars, {} issues parsed incrementally",
+                text.length(), reportParser.getIssueCount());
+
+        if (text.length() == 0) {
+            throw new IOException("Claude API stream ended without any content");
+        }
+        usage.setDurationMs(elapsedMs(startedAt));
+        return new ClaudeResponse(text.toString(), usage);
+    }
+
+    private void publishProgress(String analysisId, StreamingReportParser reportParser) {
+        if (analysisServiceClient == null || analysisId == null) {
+            return;
+        }
+
+        List<Map<String, String>> issues = reportParser.getIssues();
+        List<String> partialIssues = new ArrayList<>();
+        for (Map<String, String> issue : issues.subList(Math.max(0, issues.size() - MAX_PARTIAL_ISSUES), issues.size())) {
+            partialIssues.add(String.format("[%s] %s: %s",
+                    issue.getOrDefault("severity", "UNKNOWN"),
+                    issue.getOrDefault("category", "General"),
+                    issue.getOrDefault("description", "")));
+        }
+
+        analysisServiceClient.updateProgress(analysisId, issues.size(), partialIssues);
+    }
+
+    ClaudeRequestBody buildRequestBody(PreparedAnalysis prepared, boolean stream) {
+        FittedInput input = fitToBudget(prepared);
+
+        List<ClaudeRequestBody.Image> imageParts = new ArrayList<>();
+        for (BudgetedImage image : input.images()) {
+            log.info("Adding image to analysis: {}", image.name());
+            imageParts.add(image.image());
+        }
+
+        return new ClaudeRequestBody(objectMapper.getFactory(), modelFor(prepared.context()), maxTokens, stream,
+                systemPrompt, promptCaching, input.prompt(), imageParts, input.estimatedTokens(), input.pinned());
+    }
+
+    private record BudgetedImage(String name, ByteBuffer raw, ImageScaler.Dimensions dimensions,
+                                 ClaudeRequestBody.Image image) {
+    }
+
+    // pinned are the cache handles behind the images' buffers; the request body takes them over
+    private record FittedInput(String prompt, List<BudgetedImage> images, int estimatedTokens,
+                               List<ArtifactCache.CachedArtifact> pinned) {
+    }
+
+    private FittedInput fitToBudget(PreparedAnalysis prepared) {
+        // Loaded here when the cache key did not need them, and released again once processed
+        Map<Artifact, LoadedImage> loaded = prepared.images() != null ? prepared.images() : loadImages(prepared.artifacts());
+        List<ArtifactCache.CachedArtifact> pinned = new ArrayList<>();
+        try {
+            return fitToBudget(prepared, loaded, pinned);
+        } catch (RuntimeException e) {
+            pinned.forEach(ArtifactCache.CachedArtifact::close);
+            throw e;
+        } finally {
+            if (prepared.images() == null) {
+                closeImages(loaded);
+            }
+        }
+    }
+
+    // Estimates the request before it is sent and downscales images step by step until it fits. A request
+    // that still does not fit is refused rather than sent to come back truncated. Document excerpts only
+    // get whatever budget is left after that
+    private FittedInput fitToBudget(PreparedAnalysis prepared, Map<Artifact, LoadedImage> loaded,
+                                    List<ArtifactCache.CachedArtifact> pinned) {
+        Map<String, Object> context = prepared.context();
+        String prompt = buildPrompt(prepared.artifacts(), context);
+
+        List<BudgetedImage> images = new ArrayList<>();
+        List<Long> keptHashes = new ArrayList<>();
+        // Dropped image name -> the kept image it duplicates, so the prompt can say why it is missing
+        Map<String, String> duplicates = new LinkedHashMap<>();
+        for (Map.Entry<Artifact, LoadedImage> image : loaded.entrySet()) {
+            Artifact artifact = image.getKey();
+            ImagePreprocessor.ProcessedImage processed = image.getValue().derivative()
+                    ? imagePreprocessor.adopt(image.getValue().data(), artifact.getDerivativeContentType(), artifact.getPerceptualHash())
+                    : imagePreprocessor.process(image.getValue().data());
+            int duplicateOf = imagePreprocessor.duplicateOf(processed.hash(), keptHashes);
+            if (duplicateOf >= 0) {
+                String kept = images.get(duplicateOf).name();
+                log.info("Skipping image {}: perceptual duplicate of {}", artifact.getName(), kept);
+                duplicates.put(artifact.getName(), kept);
+                if (processed.source() != null) {
+                    processed.source().close();
+                }
+                continue;
+            }
+            if (processed.source() != null) {
+                pinned.add(processed.source());
+            }
+            keptHashes.add(processed.hash());
+
+            String mediaType = processed.mediaType() != null ? processed.mediaType() : getMediaType(artifact.getType());
+            images.add(new BudgetedImage(artifact.getName(), processed.raw(), processed.dimensions(),
+                    new ClaudeRequestBody.Image(mediaType, processed.base64())));
+        }
+        if (!duplicates.isEmpty()) {
+            context = new HashMap<>(context);
+            context.put("duplicateImages", duplicates);
+            prompt = buildPrompt(prepared.artifacts(), context);
+        }
+
+        TokenBudgetEstimator.Estimate estimate = estimate(prompt, images);
+        log.debug("Estimated request size: {} tokens (budget {})", estimate, budgetEstimator.getInputBudget());
+
+        for (int maxEdge : IMAGE_COMPACTION_EDGES) {
+            if (budgetEstimator.fits(estimate)) {
+                break;
             }
+            images = downscaleImages(images, maxEdge);
+            estimate = estimate(prompt, images);
+            log.info("Downscaled images to {}px to fit the token budget: now ~{} tokens", maxEdge, estimate.total());
+        }
+
+        if (!budgetEstimator.fits(estimate)) {
+            throw new IllegalStateException(String.format(
+                    "Analysis input needs ~%d tokens (%d text, %d for %d images), over the %d token budget even after compaction",
+                    estimate.total(), estimate.systemTokens() + estimate.promptTokens(), estimate.imageTokens(),
+                    images.size(), budgetEstimator.getInputBudget()));
+        }
 
-            userMessage.set("content", contentArray);
-            messages.add(userMessage);
+        String excerpts = selectExcerpts(prepared.artifacts(), context,
+                Math.min(maxExcerptTokens, budgetEstimator.getInputBudget() - estimate.total() - EXCERPT_OVERHEAD_TOKENS));
+        if (excerpts != null) {
+            context = new HashMap<>(context);
+            context.put("documentExcerpts", excerpts);
+            prompt = buildPrompt(prepared.artifacts(), context);
+            estimate = estimate(prompt, images);
+        }
+        return new FittedInput(prompt, images, estimate.total(), pinned);
+    }
 
-            message.set("messages", messages);
+    private boolean hasDocuments(List<Artifact> artifacts) {
+        return documentText && artifacts.stream().anyMatch(artifact -> documentTextReader.isTextType(artifact.getType()));
+    }
 
-            return mapper.writeValueAsString(message);
+    // Streams every text artifact through one ranking, so the budget goes to the most relevant passages
+    // across all documents, then prints the winners in document order. Null when there is nothing to add
+    private String selectExcerpts(List<Artifact> artifacts, Map<String, Object> context, int tokenBudget) {
+        if (!hasDocuments(artifacts)) {
+            return null;
+        }
+        int chunkTokens = budgetEstimator.estimateChars(chunkChars);
+        if (tokenBudget < chunkTokens / 2) {
+            log.warn("No token budget left for document excerpts ({} tokens), documents are listed by name only", tokenBudget);
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> constraints = (Map<String, Object>) context.get("constraints");
+        // Chunks cut at paragraph breaks can be as short as half the target, so keep enough candidates for that
+        DocumentExcerpts documents = new DocumentExcerpts(chunkChars, Math.max(1, 2 * tokenBudget / chunkTokens), constraints);
+        for (Artifact artifact : artifacts) {
+            if (documentTextReader.isTextType(artifact.getType())) {
+                documentTextReader.read(artifact, documents);
+            }
+        }
+
+        List<DocumentExcerpts.Excerpt> selected = new ArrayList<>();
+        int used = 0;
+        for (DocumentExcerpts.Excerpt excerpt : documents.ranked()) {
+            int tokens = budgetEstimator.estimateText(excerpt.text()) + budgetEstimator.estimateText(excerptHeader(excerpt, documents));
+            if (used + tokens <= tokenBudget) {
+                selected.add(excerpt);
+                used += tokens;
+            }
+        }
+        if (selected.isEmpty()) {
+            return null;
+        }
+        selected.sort(Comparator.comparingInt(DocumentExcerpts.Excerpt::documentOrder)
+                .thenComparingInt(DocumentExcerpts.Excerpt::index));
+
+        StringBuilder section = new StringBuilder();
+        for (DocumentExcerpts.Excerpt excerpt : selected) {
+            section.append(excerptHeader(excerpt, documents)).append(excerpt.text()).append("\n\n");
+        }
+        log.info("Selected {} document excerpts (~{} tokens of {} available)", selected.size(), used, tokenBudget);
+        return section.toString();
+    }
+
+    private String excerptHeader(DocumentExcerpts.Excerpt excerpt, DocumentExcerpts documents) {
+        return String.format("--- %s, excerpt %d of %d ---\n", excerpt.document(),
+                excerpt.index() + 1, documents.chunkCount(excerpt.document()));
+    }
+
+    private TokenBudgetEstimator.Estimate estimate(String prompt, List<BudgetedImage> images) {
+        int imageTokens = 0;
+        for (BudgetedImage image : images) {
+            imageTokens += image.dimensions() != null
+                    ? budgetEstimator.estimateImage(image.dimensions().width(), image.dimensions().height())
+                    : TokenBudgetEstimator.UNKNOWN_IMAGE_TOKENS;
+        }
+        return new TokenBudgetEstimator.Estimate(budgetEstimator.estimateText(systemPrompt),
+                budgetEstimator.estimateText(prompt), imageTokens);
+    }
+
+    private List<BudgetedImage> downscaleImages(List<BudgetedImage> images, int maxEdge) {
+        List<BudgetedImage> scaled = new ArrayList<>(images.size());
+        for (BudgetedImage image : images) {
+            if (image.dimensions() == null || image.dimensions().longEdge() <= maxEdge) {
+                scaled.add(image);
+                continue;
+            }
+            try {
+                // Always from the preprocessed bytes, so repeated steps do not compound resampling loss
+                ImagePreprocessor.ProcessedImage result = imagePreprocessor.downscale(image.raw(), maxEdge);
+                scaled.add(new BudgetedImage(image.name(), image.raw(), result.dimensions(),
+                        new ClaudeRequestBody.Image(result.mediaType(), result.base64())));
+            } catch (IOException e) {
+                log.warn("Could not downscale image {}: {}", image.name(), e.getMessage());
+                scaled.add(image);
+            }
+        }
+        return scaled;
+    }
+
+    // The evolution lists are derived locally (EvolutionDiffEngine), so the model only needs enough of the
+    // previous report to write its summary: one "SEVERITY | Category | description" signature per issue
+    // plus the headline figures. Returns null if the report cannot be parsed
+    private String compactPreviousReport(String previousReportJson) {
+        try {
+            JsonNode previous = objectMapper.readTree(previousReportJson);
+            ObjectNode compact = objectMapper.createObjectNode();
+            compact.set("version", previous.path("version"));
+            compact.put("architecturePattern", previous.path("architecturePattern").asText(null));
+
+            ArrayNode issues = compact.putArray("issues");
+            for (JsonNode issue : previous.path("issues")) {
+                String description = issue.path("description").asText("");
+                if (description.length() > MAX_SIGNATURE_LENGTH) {
+                    description = description.substring(0, MAX_SIGNATURE_LENGTH) + "…";
+                }
+                issues.add(issue.path("severity").asText("UNKNOWN") + " | "
+                        + issue.path("category").asText("General") + " | " + description);
+            }
+
+            JsonNode trend = previous.path("evolutionAnalysis").path("overallTrend");
+            if (!trend.isMissingNode()) {
+                compact.set("overallTrend", trend);
+            }
+            JsonNode monthlyCost = previous.path("costEstimation").path("monthlyEstimateUsd");
+            if (!monthlyCost.isMissingNode()) {
+                compact.set("monthlyEstimateUsd", monthlyCost);
+            }
+            return objectMapper.writeValueAsString(compact);
         } catch (Exception e) {
-            throw new RuntimeException("Failed to build request body", e);
+            log.warn("Could not compact previous report: {}", e.getMessage());
+            return null;
         }
     }
 
@@ -183,128 +734,68 @@ public class ClaudeAnalysisEngine {
         };
     }
 
-    private String getArtifactAsBase64(Artifact artifact) {
-        if (artifactStorageService == null) {
+    private ArtifactCache.CachedArtifact loadArtifact(Artifact artifact, String s3Key) {
+        if (s3StorageService == null && artifactStorageService == null) {
             log.warn("Storage service not available, cannot load artifact: {}", artifact.getName());
             return null;
         }
 
         try {
-            log.debug("Loading artifact from storage: {}", artifact.getS3Key());
-//            InputStream inputStream = artifactStorageService.retrieveReport(artifact.getS3Key());
-//            byte[] imageBytes = inputStream.readAllBytes();
-//            inputStream.close();
-            String data = artifactStorageService.retrieveReport(artifact.getS3Key());
-            InputStream inputStream =
-                    new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8));
-            byte[] imageBytes = inputStream.readAllBytes();
-            inputStream.close();
-
-            String base64 = Base64.getEncoder().encodeToString(imageBytes);
-            log.debug("Encoded artifact to base64: {} bytes -> {} chars", imageBytes.length, base64.length());
-
-            return base64;
+            ArtifactCache.CachedArtifact cached = artifactCache.get(s3Key, key -> {
+                log.debug("Loading artifact from storage: {}", key);
+                return s3StorageService != null
+                        ? s3StorageService.openArtifact(key)
+                        : artifactStorageService.openArtifact(key);
+            });
+
+            log.debug("Artifact ready: {} bytes -> {} base64 chars", cached.getSize(), cached.getBase64Length());
+            return cached;
         } catch (Exception e) {
             log.error("Failed to load artifact: {}", artifact.getName(), e);
             return null;
         }
     }
 
-    private String buildPrompt(List<Artifact> artifacts, Map<String, Object> context) {
+    // Everything here is the same for every analysis, so it goes in the system block and is served
+    // from the prompt cache after the first call; anything that varies belongs in buildPrompt
+    private static String buildSystemPrompt(int responseTokenLimit) {
         StringBuilder prompt = new StringBuilder();
         prompt.append("You are an expert software architect analyzing system architecture artifacts.\n\n");
 
-        prompt.append("CRITICAL TOKEN LIMIT: Your response must be under 9,500 tokens (leaving 500 token buffer).\n");
+        prompt.append(String.format("CRITICAL TOKEN LIMIT: Your response must be under %,d tokens.\n", responseTokenLimit));
         prompt.append("Be comprehensive but concise. Prioritize quality over quantity.\n");
         prompt.append("If you approach the limit, prefer fewer detailed items over many shallow items.\n\n");
 
-        // Extract context
-        Integer version = (Integer) context.get("version");
-        String previousReportJson = (String) context.get("previousReport");
-        @SuppressWarnings("unchecked")
-        Map<String, Object> constraints = (Map<String, Object>) context.get("constraints");
+        prompt.append("The user message gives the ANALYSIS CONTEXT, any PROJECT CONSTRAINTS, the PREVIOUS ANALYSIS if there is one, ");
+        prompt.append("and the list of ARTIFACTS PROVIDED, followed by the artifacts themselves.\n");
+        prompt.append("Text and PDF artifacts appear as DOCUMENT EXCERPTS: the passages most relevant to the architecture, ");
+        prompt.append("in document order. They are not the complete documents, so do not treat what they omit as missing ");
+        prompt.append("from the system.\n\n");
 
-        prompt.append("=== ANALYSIS CONTEXT ===\n");
-        prompt.append("Analysis Version: ").append(version != null ? version : 1).append("\n");
-
-        if (constraints != null && !constraints.isEmpty()) {
-            prompt.append("\n=== PROJECT CONSTRAINTS ===\n");
-            if (constraints.get("expectedQps") != null) {
-                prompt.append("Expected Load: ").append(constraints.get("expectedQps")).append(" QPS\n");
-            }
-            if (constraints.get("latencyTargetMs") != null) {
-                prompt.append("Latency Target: ").append(constraints.get("latencyTargetMs")).append(" ms\n");
-            }
-            if (constraints.get("consistencyLevel") != null) {
-                prompt.append("Consistency Requirement: ").append(constraints.get("consistencyLevel")).append("\n");
-            }
-            if (constraints.get("budgetSensitivity") != null) {
-                prompt.append("Budget Sensitivity: ").append(constraints.get("budgetSensitivity")).append("\n");
-            }
-        }
-
-        if (previousReportJson != null && !previousReportJson.isEmpty()) {
-            prompt.append("\n=== PREVIOUS ANALYSIS (Version ").append(version != null ? version - 1 : "N-1").append(") ===\n");
-            prompt.append("IMPORTANT: The previous analysis may have been performed on a DIFFERENT architecture artifact.\n");
-            prompt.append("Your task is to compare the ISSUES and ARCHITECTURE QUALITY, not the specific artifact content.\n");
-            prompt.append("Focus on:\n");
-            prompt.append("- Which types of issues were present before vs now?\n");
-            prompt.append("- Has the architecture improved, degraded, or stayed the same?\n");
-            prompt.append("- Are there fewer/more HIGH severity issues?\n");
-            prompt.append("- Is the overall system more/less resilient, scalable, secure?\n\n");
-            prompt.append(previousReportJson).append("\n");
-        }
-
-        prompt.append("\n=== ARTIFACTS PROVIDED ===\n");
-        for (Artifact artifact : artifacts) {
-            prompt.append(String.format("- %s (%s, %d bytes)\n",
-                    artifact.getName(), artifact.getType(), artifact.getSize()));
-        }
-
-        prompt.append("\n=== ANALYSIS INSTRUCTIONS ===\n");
+        prompt.append("=== ANALYSIS INSTRUCTIONS ===\n");
         prompt.append("For architecture diagrams/images:\n");
         prompt.append("1. Identify all components, services, and systems\n");
         prompt.append("2. Analyze connections and data flows\n");
         prompt.append("3. Evaluate the architecture pattern (microservices, monolith, serverless, etc.)\n");
-        prompt.append("4. Look for security vulnerabilities, single points of failure, performance bottlenecks\n\n");
-
-        if (constraints != null && !constraints.isEmpty()) {
-            prompt.append("5. EVALUATE ISSUES AGAINST CONSTRAINTS:\n");
-            prompt.append("   - Assess severity based on project constraints\n");
-            prompt.append("   - An issue is HIGH severity if it violates a constraint\n");
-            prompt.append("   - Consider budget sensitivity when recommending solutions\n");
-            prompt.append("   - Factor in expected load and latency targets\n\n");
-        }
-
-        if (previousReportJson != null && !previousReportJson.isEmpty()) {
-            prompt.append("6. **MANDATORY** - COMPARE WITH PREVIOUS ANALYSIS VERSION:\n");
-            prompt.append("   CRITICAL: The previous analysis above may be from a DIFFERENT architecture document.\n");
-            prompt.append("   You MUST compare the ARCHITECTURE QUALITY, not document similarity.\n\n");
-
-            prompt.append("   Step-by-step comparison process:\n");
-            prompt.append("   a) List all HIGH/MEDIUM issues from the previous analysis\n");
-            prompt.append("   b) Check if each previous issue still exists in the current architecture\n");
-            prompt.append("   c) For RESOLVED issues: Issues that existed before but are now fixed\n");
-            prompt.append("      Example: Previous had 'MD5 password hashing' → Current has 'bcrypt hashing' = RESOLVED\n");
-            prompt.append("      Example: Previous had 'Single database instance' → Current has 'Multi-AZ cluster' = RESOLVED\n");
-            prompt.append("   d) For NEW issues: Issues in current architecture that weren't in previous\n");
-            prompt.append("      Example: Current architecture has 'No rate limiting' but previous did = NEW issue\n");
-            prompt.append("   e) For REGRESSED issues: Issues that got WORSE\n");
-            prompt.append("      Example: Previous had caching, current removed it = REGRESSION\n");
-            prompt.append("   f) Determine overall trend:\n");
-            prompt.append("      - IMPROVING: More issues resolved than new issues added, or severity decreased\n");
-            prompt.append("      - STABLE: Similar number and severity of issues\n");
-            prompt.append("      - DEGRADING: More new issues or increased severity\n\n");
-
-            prompt.append("   EXAMPLES OF GOOD COMPARISONS:\n");
-            prompt.append("   ✓ 'Previous had MD5 hashing (HIGH), current has bcrypt (secure)' → Resolved\n");
-            prompt.append("   ✓ 'Previous had no database replication (HIGH), current has Multi-AZ' → Resolved\n");
-            prompt.append("   ✓ 'Previous had synchronous processing (MEDIUM), current has queues' → Resolved\n");
-            prompt.append("   ✓ 'Current has higher infrastructure costs (NEW)' → New Issue\n\n");
-
-            prompt.append("   You MUST include evolutionAnalysis with meaningful comparisons.\n");
-            prompt.append("   DO NOT say 'Unable to compare' - always attempt comparison based on issue types.\n\n");
-        }
+        prompt.append("4. Look for security vulnerabilities, single points of failure, performance bottlenecks\n");
+        prompt.append("For design documents, use the excerpts for stated requirements, components and decisions,\n");
+        prompt.append("and flag where a diagram and a document disagree.\n\n");
+
+        prompt.append("5. WHEN PROJECT CONSTRAINTS ARE PROVIDED, EVALUATE ISSUES AGAINST THEM:\n");
+        prompt.append("   - Assess severity based on project constraints\n");
+        prompt.append("   - An issue is HIGH severity if it violates a constraint\n");
+        prompt.append("   - Consider budget sensitivity when recommending solutions\n");
+        prompt.append("   - Factor in expected load and latency targets\n\n");
+
+        prompt.append("6. WHEN A PREVIOUS ANALYSIS IS PROVIDED, SUMMARIZE HOW THE ARCHITECTURE CHANGED:\n");
+        prompt.append("   The system matches previous and current issues itself and derives the resolved, new and\n");
+        prompt.append("   regressed lists and the trend. Do NOT list issues in evolutionAnalysis; write only its summary:\n");
+        prompt.append("   2-3 sentences on what changed and whether the system is more or less resilient, scalable,\n");
+        prompt.append("   secure and cost-efficient than before.\n");
+        prompt.append("   CRITICAL: The previous analysis may be from a DIFFERENT architecture document.\n");
+        prompt.append("   Compare the ISSUES and ARCHITECTURE QUALITY, not document similarity.\n");
+        prompt.append("   Where a previous issue still exists, report it again with the same category and similar\n");
+        prompt.append("   wording, so it is recognized as the same issue rather than a resolved one plus a new one.\n\n");
 
         prompt.append("7. ESTIMATE CLOUD COSTS:\n");
         prompt.append("   - For each component, estimate monthly AWS/cloud cost\n");
@@ -320,7 +811,7 @@ public class ClaudeAnalysisEngine {
         prompt.append("=== REQUIRED JSON RESPONSE FORMAT ===\n");
         prompt.append("Return ONLY valid JSON (no markdown, no code blocks) in this exact structure:\n");
         prompt.append("{\n");
-        prompt.append("  \"version\": ").append(version != null ? version : 1).append(",\n");
+        prompt.append("  \"version\": 1,  // the Analysis Version from the context\n");
         prompt.append("  \"summary\": \"Detailed analysis including pattern, components, and connections\",\n");
         prompt.append("  \"architecturePattern\": \"Microservices|Monolithic|Serverless|Hybrid|etc.\",\n");
         prompt.append("  \"components\": [\"Component1\", \"Component2\"],\n");
@@ -342,36 +833,9 @@ public class ClaudeAnalysisEngine {
         prompt.append("      \"benefit\": \"Expected benefit\"\n");
         prompt.append("    }\n");
         prompt.append("  ],\n");
-
-// CRITICAL: Make evolutionAnalysis MANDATORY for version > 1
-        if (version != null && version > 1) {
-            prompt.append("  \"evolutionAnalysis\": {\n");
-
-            if (previousReportJson != null && !previousReportJson.isEmpty()) {
-                prompt.append("  \"evolutionAnalysis\": {\n");
-                prompt.append("    \"resolvedIssues\": [  // Aim for 5-15 items for different architectures\n");
-                prompt.append("      \"Specific HIGH/MEDIUM severity issue that was fixed with clear before/after\",\n");
-                prompt.append("      \"Another resolved issue with severity context and specific improvement\"\n");
-                prompt.append("    ],\n");
-                prompt.append("    \"newIssues\": [  // Issues in current that weren't in previous\n");
-                prompt.append("      \"New issue that appeared (if any)\"\n");
-                prompt.append("    ],\n");
-                prompt.append("    \"regressedIssues\": [  // Issues that got WORSE\n");
-                prompt.append("      \"Issue that regressed (if any)\"\n");
-                prompt.append("    ],\n");
-                prompt.append("    \"overallTrend\": \"IMPROVING|STABLE|DEGRADING (based on net change)\"\n");
-                prompt.append("  },\n");
-            } else {
-                // Fallback if previous report couldn't be loaded
-                prompt.append("    \"resolvedIssues\": [\"Previous report unavailable - cannot determine resolved issues\"],\n");
-                prompt.append("    \"newIssues\": [],\n");
-                prompt.append("    \"regressedIssues\": [],\n");
-                prompt.append("    \"overallTrend\": \"UNKNOWN\"\n");
-            }
-
-            prompt.append("  },\n");
-        }
-
+        prompt.append("  \"evolutionAnalysis\": {  // ONLY when a previous analysis is provided\n");
+        prompt.append("    \"summary\": \"2-3 sentences on how the architecture changed since the previous version\"\n");
+        prompt.append("  },\n");
         prompt.append("  \"costEstimation\": {\n");
         prompt.append("    \"monthlyEstimateUsd\": 0.0,\n");
         prompt.append("    \"costTier\": \"LOW|MEDIUM|HIGH\",\n");
@@ -389,6 +853,80 @@ public class ClaudeAnalysisEngine {
         return prompt.toString();
     }
 
+    private String buildPrompt(List<Artifact> artifacts, Map<String, Object> context) {
+        StringBuilder prompt = new StringBuilder();
+
+        // Extract context
+        Integer version = (Integer) context.get("version");
+        String previousReportJson = (String) context.get("previousReport");
+        @SuppressWarnings("unchecked")
+        Map<String, Object> constraints = (Map<String, Object>) context.get("constraints");
+
+        prompt.append("=== ANALYSIS CONTEXT ===\n");
+        prompt.append("Analysis Version: ").append(version != null ? version : 1).append("\n");
+
+        if (constraints != null && !constraints.isEmpty()) {
+            prompt.append("\n=== PROJECT CONSTRAINTS ===\n");
+            if (constraints.get("expectedQps") != null) {
+                prompt.append("Expected Load: ").append(constraints.get("expectedQps")).append(" QPS\n");
+            }
+            if (constraints.get("latencyTargetMs") != null) {
+                prompt.append("Latency Target: ").append(constraints.get("latencyTargetMs")).append(" ms\n");
+            }
+            if (constraints.get("consistencyLevel") != null) {
+                prompt.append("Consistency Requirement: ").append(constraints.get("consistencyLevel")).append("\n");
+            }
+            if (constraints.get("budgetSensitivity") != null) {
+                prompt.append("Budget Sensitivity: ").append(constraints.get("budgetSensitivity")).append("\n");
+            }
+        }
+
+        boolean hasPrevious = previousReportJson != null && !previousReportJson.isEmpty();
+        if (hasPrevious) {
+            String compacted = compactPreviousReport(previousReportJson);
+            prompt.append("\n=== PREVIOUS ANALYSIS (Version ").append(version != null ? version - 1 : "N-1").append(") ===\n");
+            if (compacted != null) {
+                prompt.append("(Condensed to one \"SEVERITY | Category | description\" signature per issue)\n");
+            }
+            prompt.append(compacted != null ? compacted : previousReportJson).append("\n");
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, String> duplicateImages = (Map<String, String>) context.getOrDefault("duplicateImages", Map.of());
+        prompt.append("\n=== ARTIFACTS PROVIDED ===\n");
+        for (Artifact artifact : artifacts) {
+            prompt.append(String.format("- %s (%s, %d bytes)",
+                    artifact.getName(), artifact.getType(), artifact.getSize()));
+            String keptImage = duplicateImages.get(artifact.getName());
+            if (keptImage != null) {
+                prompt.append(" - not attached: near-identical to ").append(keptImage);
+            }
+            prompt.append("\n");
+        }
+
+        String excerpts = (String) context.get("documentExcerpts");
+        if (excerpts != null) {
+            prompt.append("\n=== DOCUMENT EXCERPTS ===\n");
+            prompt.append(excerpts);
+        }
+
+        String shardScope = (String) context.get("shard");
+        if (shardScope != null) {
+            prompt.append("\n=== SCOPE ===\n").append(shardScope).append("\n");
+            prompt.append("Omit evolutionAnalysis: the comparison with the previous analysis is made after merging.\n");
+        } else if (version != null && version > 1) {
+            if (hasPrevious) {
+                prompt.append("\nWrite evolutionAnalysis.summary against the previous analysis above (instruction 6).\n");
+            } else {
+                prompt.append("\nThe previous report is unavailable: omit evolutionAnalysis.\n");
+            }
+        } else {
+            prompt.append("\nThis is the first analysis: omit evolutionAnalysis.\n");
+        }
+
+        return prompt.toString();
+    }
+
     private AnalysisReport parseResponse(String response) {
         try {
             String jsonStr = response.trim();
@@ -406,34 +944,7 @@ public class ClaudeAnalysisEngine {
             jsonStr = jsonStr.trim();
 
             log.debug("Parsing Claude response...");
-            AnalysisReport report = objectMapper.readValue(jsonStr, AnalysisReport.class);
-
-            // VALIDATION: Ensure evolutionAnalysis exists and is meaningful for version > 1
-            if (report.getVersion() != null && report.getVersion() > 1) {
-                if (report.getEvolutionAnalysis() == null) {
-                    log.error("Version {} but evolutionAnalysis is NULL - creating default", report.getVersion());
-                    AnalysisReport.EvolutionAnalysis evolution = new AnalysisReport.EvolutionAnalysis();
-                    evolution.setResolvedIssues(List.of("AI did not generate evolution analysis"));
-                    evolution.setNewIssues(new ArrayList<>());
-                    evolution.setRegressedIssues(new ArrayList<>());
-                    evolution.setOverallTrend("UNKNOWN");
-                    report.setEvolutionAnalysis(evolution);
-                } else {
-                    // Check if lists are empty - might indicate AI didn't do proper comparison
-                    AnalysisReport.EvolutionAnalysis evo = report.getEvolutionAnalysis();
-                    boolean allEmpty = (evo.getResolvedIssues() == null || evo.getResolvedIssues().isEmpty()) &&
-                            (evo.getNewIssues() == null || evo.getNewIssues().isEmpty()) &&
-                            (evo.getRegressedIssues() == null || evo.getRegressedIssues().isEmpty());
-
-                    if (allEmpty) {
-                        log.warn("Version {} evolutionAnalysis has all empty lists - AI may not have compared properly",
-                                report.getVersion());
-                        // Don't override - let it be empty to indicate comparison wasn't done
-                    }
-                }
-            }
-
-            return report;
+            return objectMapper.readValue(jsonStr, AnalysisReport.class);
 
         } catch (Exception e) {
             log.error("Failed to parse Claude response: {}",
@@ -441,7 +952,7 @@ public class ClaudeAnalysisEngine {
 
             // Fallback report
             AnalysisReport report = new AnalysisReport();
-            report.setSummary("Analysis completed but response format was unexpected. Please try again.");
+            report.setSummary(FALLBACK_SUMMARY);
             report.setArchitecturePattern("Unknown");
             report.setComponents(new ArrayList<>());
             report.setConnections(new ArrayList<>());
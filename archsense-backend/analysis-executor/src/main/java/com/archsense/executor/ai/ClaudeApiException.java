@@ -0,0 +1,62 @@
+package com.archsense.executor.ai;
+
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+// A non-2xx answer from the Claude API, with what the retry policy needs to know about it
+class ClaudeApiException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    // 529 is Anthropic's "overloaded"; it and 429 come with retry-after when the API knows how long to wait
+    static final int OVERLOADED = 529;
+
+    private final int status;
+    private final Long retryAfterMs;
+
+    ClaudeApiException(String message, int status, Long retryAfterMs) {
+        super(message);
+        this.status = status;
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    static ClaudeApiException from(Response response, String errorBody) {
+        return new ClaudeApiException("Claude API request failed: " + response.code() + " - " + errorBody,
+                response.code(), parseRetryAfter(response.header("retry-after")));
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    Long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+
+    boolean isTransient() {
+        return status == 408 || status == 429 || status >= 500;
+    }
+
+    // Delta-seconds (possibly fractional) or an HTTP date; anything else is ignored
+    static Long parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Math.max(0, (long) (Double.parseDouble(value.trim()) * 1000));
+        } catch (NumberFormatException e) {
+            try {
+                Instant at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                return Math.max(0, Duration.between(Instant.now(), at).toMillis());
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+}
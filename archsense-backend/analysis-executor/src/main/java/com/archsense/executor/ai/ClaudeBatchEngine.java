@@ -0,0 +1,481 @@
+package com.archsense.executor.ai;
+
+import com.archsense.executor.model.AnalysisReport;
+import com.archsense.executor.model.Artifact;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.BufferedSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Non-interactive mode for batch runs: analyses are collected for a short window, submitted together
+// as one Message Batch (half the price of synchronous calls and outside the per-minute rate limits),
+// and polled until the batch ends. Results are handed back to the executor, which stores them
+// through the same report/status path as a synchronous analysis. Each in-flight batch is polled by
+// one replica at a time, the one holding its lease in Redis; a replica that stops renewing its leases
+// has its batches taken over by the others
+@Component
+@ConditionalOnExpression("'${ai.provider:}' == 'anthropic' and ${ai.anthropic.message-batches.enabled:false}")
+public class ClaudeBatchEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(ClaudeBatchEngine.class);
+    private static final String IN_FLIGHT_SET = "message_batches";
+
+    // Takes the lease when it is free, renews it when we already hold it. A batch whose entries are gone
+    // has ended on another replica and is not claimed again
+    private static final DefaultRedisScript<Long> CLAIM_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[2]) == 0 then
+              return 0
+            end
+            local owner = redis.call('GET', KEYS[1])
+            if not owner then
+              redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2])
+              return 1
+            end
+            if owner == ARGV[1] then
+              redis.call('PEXPIRE', KEYS[1], ARGV[2])
+              return 1
+            end
+            return 0
+            """, Long.class);
+
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+              return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+
+    public record DeferredAnalysis(
+            String analysisId,
+            String projectId,
+            String userId,
+            Integer version,
+            String previousAnalysisId
+    ) {
+    }
+
+    // Either a cached report, or the analysis was queued: submitted completes once its batch has been
+    // accepted by the API (exceptionally when submission failed), and only then is the request done with
+    public record Deferral(Optional<AnalysisReport> cached, CompletableFuture<Void> submitted) {
+    }
+
+    public interface ResultHandler {
+        void onReport(DeferredAnalysis analysis, AnalysisReport report);
+
+        void onFailure(DeferredAnalysis analysis, String error);
+    }
+
+    // What must survive a restart to finish an analysis once its batch ends
+    record InFlightRequest(DeferredAnalysis analysis, String cacheKey) {
+    }
+
+    private record PendingRequest(DeferredAnalysis analysis, String cacheKey, ClaudeRequestBody body,
+                                  CompletableFuture<Void> submitted) {
+    }
+
+    private final ClaudeAnalysisEngine claudeAnalysisEngine;
+    private final ObjectMapper objectMapper;
+    private final OkHttpClient httpClient;
+    private final String batchesUrl;
+    private final String apiKey;
+    private final int maxRequests;
+    private final boolean persist;
+    private final long leaseMs;
+    private final String ownerId = UUID.randomUUID().toString();
+
+    private final List<PendingRequest> pending = new ArrayList<>();
+    // Batch id -> its analyses still waiting for a result, by analysis id
+    private final Map<String, Map<String, InFlightRequest>> inFlight = new ConcurrentHashMap<>();
+    private volatile ResultHandler resultHandler;
+
+    @Autowired(required = false)
+    private StringRedisTemplate redisTemplate;
+
+    public ClaudeBatchEngine(
+            @Value("${ai.anthropic.base-url:https://api.anthropic.com}") String baseUrl,
+            @Value("${ai.anthropic.api-key}") String apiKey,
+            @Value("${ai.anthropic.message-batches.max-requests:100}") int maxRequests,
+            @Value("${ai.anthropic.message-batches.persist:true}") boolean persist,
+            @Value("${ai.anthropic.message-batches.lease-ms:300000}") long leaseMs,
+            ClaudeAnalysisEngine claudeAnalysisEngine,
+            ObjectMapper objectMapper) {
+
+        this.batchesUrl = baseUrl + "/v1/messages/batches";
+        this.apiKey = apiKey;
+        this.maxRequests = maxRequests;
+        this.persist = persist;
+        this.leaseMs = leaseMs;
+        this.claudeAnalysisEngine = claudeAnalysisEngine;
+        this.objectMapper = objectMapper;
+
+        this.httpClient = new OkHttpClient.Builder()
+                .connectTimeout(30, TimeUnit.SECONDS)
+                .readTimeout(300, TimeUnit.SECONDS) // Results of a large batch are one long download
+                .writeTimeout(300, TimeUnit.SECONDS)
+                .build();
+
+        log.info("Claude Message Batches mode enabled: maxRequests={}, persist={}, leaseMs={}",
+                maxRequests, persist, leaseMs);
+    }
+
+    // Batches submitted before a restart are still processed by the API; pick their polling back up
+    @PostConstruct
+    public void recoverInFlightBatches() {
+        adoptOrphanedBatches();
+    }
+
+    // Lets another replica take over straight away instead of waiting for the leases to expire
+    @PreDestroy
+    public void releaseLeases() {
+        if (!persist || redisTemplate == null) {
+            return;
+        }
+        for (String batchId : inFlight.keySet()) {
+            try {
+                redisTemplate.execute(RELEASE_SCRIPT, List.of(ownerKey(batchId)), ownerId);
+            } catch (Exception e) {
+                log.warn("Could not release message batch {}: {}", batchId, e.getMessage());
+            }
+        }
+    }
+
+    public void setResultHandler(ResultHandler resultHandler) {
+        this.resultHandler = resultHandler;
+    }
+
+    // Returns a cached report straight away; otherwise queues the analysis for the next batch. Until the
+    // batch is submitted the analysis exists only in memory, so the caller must not consider the request
+    // handled (and let it be redelivered after a restart) before submitted completes
+    public Deferral defer(DeferredAnalysis analysis, List<Artifact> artifacts, Map<String, Object> context) {
+        PendingRequest request;
+        try (ClaudeAnalysisEngine.PreparedAnalysis prepared = claudeAnalysisEngine.prepare(artifacts, context)) {
+            Optional<AnalysisReport> cached = claudeAnalysisEngine.findCached(prepared);
+            if (cached.isPresent()) {
+                return new Deferral(cached, CompletableFuture.completedFuture(null));
+            }
+
+            // Message Batches do not stream, regardless of the synchronous mode's setting
+            request = new PendingRequest(analysis, prepared.cacheKey(),
+                    claudeAnalysisEngine.buildRequestBody(prepared, false), new CompletableFuture<>());
+        }
+
+        List<PendingRequest> full = null;
+        synchronized (pending) {
+            pending.add(request);
+            if (pending.size() >= maxRequests) {
+                full = drainPending();
+            }
+        }
+
+        log.info("Analysis {} queued for the next message batch", analysis.analysisId());
+        if (full != null) {
+            submitBatch(full);
+        }
+        return new Deferral(Optional.empty(), request.submitted());
+    }
+
+    @Scheduled(fixedDelayString = "${ai.anthropic.message-batches.collect-window-ms:60000}")
+    public void flush() {
+        List<PendingRequest> requests;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            requests = drainPending();
+        }
+        submitBatch(requests);
+    }
+
+    @Scheduled(fixedDelayString = "${ai.anthropic.message-batches.poll-interval-ms:60000}")
+    public void poll() {
+        if (resultHandler == null) {
+            return;
+        }
+        adoptOrphanedBatches();
+        for (String batchId : List.copyOf(inFlight.keySet())) {
+            if (!claim(batchId)) {
+                // Our lease ran out (a long pause, say) and another replica has the batch now
+                inFlight.remove(batchId);
+                log.info("Message batch {} is now polled by another replica", batchId);
+                continue;
+            }
+            try {
+                pollBatch(batchId);
+            } catch (Exception e) {
+                // Transient; the next poll tries again
+                log.warn("Could not poll message batch {}: {}", batchId, e.getMessage());
+            }
+        }
+    }
+
+    private List<PendingRequest> drainPending() {
+        List<PendingRequest> requests = new ArrayList<>(pending);
+        pending.clear();
+        return requests;
+    }
+
+    private void submitBatch(List<PendingRequest> requests) {
+        Map<String, ClaudeRequestBody> bodies = new LinkedHashMap<>();
+        for (PendingRequest request : requests) {
+            bodies.put(request.analysis().analysisId(), request.body());
+        }
+
+        Request request = newRequest(batchesUrl)
+                .post(new ClaudeBatchRequestBody(objectMapper.getFactory(), bodies))
+                .build();
+
+        try (Response response = httpClient.newCall(request).execute()) {
+            String body = response.body() != null ? response.body().string() : "";
+            if (!response.isSuccessful()) {
+                throw new IOException("Message batch submission failed: " + response.code() + " - " + body);
+            }
+
+            String batchId = objectMapper.readTree(body).path("id").asText();
+            List<InFlightRequest> entries = requests.stream()
+                    .map(r -> new InFlightRequest(r.analysis(), r.cacheKey()))
+                    .toList();
+
+            inFlight.put(batchId, byAnalysisId(entries));
+            persistBatch(batchId, entries);
+            log.info("Submitted message batch {} with {} analyses", batchId, entries.size());
+            requests.forEach(pendingRequest -> pendingRequest.submitted().complete(null));
+
+        } catch (Exception e) {
+            log.error("Failed to submit message batch of {} analyses", requests.size(), e);
+            for (PendingRequest pendingRequest : requests) {
+                notifyFailure(pendingRequest.analysis(), "Message batch submission failed: " + e.getMessage());
+                pendingRequest.submitted().completeExceptionally(e);
+            }
+        } finally {
+            // Sent or given up on, the bodies' images are no longer needed
+            requests.forEach(pendingRequest -> pendingRequest.body().close());
+        }
+    }
+
+    private void pollBatch(String batchId) throws IOException {
+        JsonNode batch;
+        try (Response response = httpClient.newCall(newRequest(batchesUrl + "/" + batchId).get().build()).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("status " + response.code());
+            }
+            batch = objectMapper.readTree(response.body().string());
+        }
+
+        String status = batch.path("processing_status").asText();
+        if (!"ended".equals(status)) {
+            log.debug("Message batch {} is {}: {}", batchId, status, batch.path("request_counts"));
+            return;
+        }
+
+        String resultsUrl = batch.path("results_url").asText(null);
+        if (resultsUrl == null || resultsUrl.isBlank()) {
+            resultsUrl = batchesUrl + "/" + batchId + "/results";
+        }
+
+        Map<String, InFlightRequest> remaining = inFlight.getOrDefault(batchId, Map.of());
+
+        // Results are JSON lines in no particular order; read them one at a time rather than as one body.
+        // Each analysis is struck off as soon as it is handled, so a read that breaks off partway is
+        // picked up again by the next poll, here or on another replica, without repeating any of them
+        try (Response response = httpClient.newCall(newRequest(resultsUrl).get().build()).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("results status " + response.code());
+            }
+
+            BufferedSource source = response.body().source();
+            String line;
+            while ((line = source.readUtf8Line()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode result = objectMapper.readTree(line);
+                InFlightRequest entry = remaining.get(result.path("custom_id").asText());
+                if (entry != null) {
+                    handleResult(entry, result.path("result"));
+                    markHandled(batchId, remaining, entry);
+                }
+            }
+        }
+
+        for (InFlightRequest entry : List.copyOf(remaining.values())) {
+            notifyFailure(entry.analysis(), "Message batch " + batchId + " returned no result for this analysis");
+            markHandled(batchId, remaining, entry);
+        }
+
+        inFlight.remove(batchId);
+        removePersistedBatch(batchId);
+        log.info("Message batch {} ended: {}", batchId, batch.path("request_counts"));
+    }
+
+    private void handleResult(InFlightRequest entry, JsonNode result) {
+        String type = result.path("type").asText();
+        if (!"succeeded".equals(type)) {
+            // errored, canceled or expired (batches expire after 24 hours)
+            String detail = result.path("error").path("error").path("message").asText(type);
+            notifyFailure(entry.analysis(), "Message batch request " + type + ": " + detail);
+            return;
+        }
+
+        JsonNode content = result.path("message").path("content");
+        if (!content.isArray() || content.isEmpty()) {
+            notifyFailure(entry.analysis(), "Unexpected response format from Claude API");
+            return;
+        }
+
+        try {
+            AnalysisReport report = claudeAnalysisEngine.toReport(entry.cacheKey(), entry.analysis().projectId(),
+                    content.get(0).path("text").asText(), claudeAnalysisEngine.readUsage(result.path("message").path("usage")));
+            resultHandler.onReport(entry.analysis(), report);
+        } catch (Exception e) {
+            log.error("Failed to complete deferred analysis {}", entry.analysis().analysisId(), e);
+            notifyFailure(entry.analysis(), e.getMessage());
+        }
+    }
+
+    private void notifyFailure(DeferredAnalysis analysis, String error) {
+        try {
+            resultHandler.onFailure(analysis, error);
+        } catch (Exception e) {
+            log.error("Failed to report deferred analysis failure: {}", analysis.analysisId(), e);
+        }
+    }
+
+    private Request.Builder newRequest(String url) {
+        return new Request.Builder()
+                .url(url)
+                .addHeader("x-api-key", apiKey)
+                .addHeader("anthropic-version", "2023-06-01");
+    }
+
+    // Batches persisted by any replica: take over those whose owner has stopped renewing its lease
+    private void adoptOrphanedBatches() {
+        if (!persist || redisTemplate == null) {
+            return;
+        }
+
+        try {
+            Set<String> batchIds = redisTemplate.opsForSet().members(IN_FLIGHT_SET);
+            if (batchIds == null) {
+                return;
+            }
+            for (String batchId : batchIds) {
+                if (inFlight.containsKey(batchId) || !claim(batchId)) {
+                    continue;
+                }
+                String json = redisTemplate.opsForValue().get(entriesKey(batchId));
+                if (json != null) {
+                    Map<String, InFlightRequest> entries = byAnalysisId(
+                            objectMapper.readValue(json, new TypeReference<List<InFlightRequest>>() {}));
+                    Set<String> handled = redisTemplate.opsForSet().members(handledKey(batchId));
+                    if (handled != null) {
+                        entries.keySet().removeAll(handled);
+                    }
+                    inFlight.put(batchId, entries);
+                    log.info("Took over polling of message batch {} ({} analyses left)", batchId, entries.size());
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Could not recover in-flight message batches: {}", e.getMessage());
+        }
+    }
+
+    private boolean claim(String batchId) {
+        if (!persist || redisTemplate == null) {
+            return true;
+        }
+        try {
+            Long claimed = redisTemplate.execute(CLAIM_SCRIPT, List.of(ownerKey(batchId), entriesKey(batchId)),
+                    ownerId, String.valueOf(leaseMs));
+            return claimed != null && claimed == 1;
+        } catch (Exception e) {
+            // Without Redis no other replica can take the batch over either; keep polling what we hold
+            log.warn("Could not renew the lease on message batch {}: {}", batchId, e.getMessage());
+            return inFlight.containsKey(batchId);
+        }
+    }
+
+    private void persistBatch(String batchId, List<InFlightRequest> entries) {
+        if (!persist || redisTemplate == null) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(entriesKey(batchId), objectMapper.writeValueAsString(entries));
+            // Leased before it is listed, so no other replica adopts it in between
+            claim(batchId);
+            redisTemplate.opsForSet().add(IN_FLIGHT_SET, batchId);
+        } catch (Exception e) {
+            log.warn("Could not persist message batch {}; it will not survive a restart: {}", batchId, e.getMessage());
+        }
+    }
+
+    private void markHandled(String batchId, Map<String, InFlightRequest> remaining, InFlightRequest entry) {
+        remaining.remove(entry.analysis().analysisId());
+        if (!persist || redisTemplate == null) {
+            return;
+        }
+        try {
+            redisTemplate.opsForSet().add(handledKey(batchId), entry.analysis().analysisId());
+        } catch (Exception e) {
+            log.warn("Could not record analysis {} of message batch {} as handled: {}",
+                    entry.analysis().analysisId(), batchId, e.getMessage());
+        }
+    }
+
+    private static Map<String, InFlightRequest> byAnalysisId(List<InFlightRequest> entries) {
+        Map<String, InFlightRequest> byAnalysisId = new ConcurrentHashMap<>();
+        entries.forEach(entry -> byAnalysisId.put(entry.analysis().analysisId(), entry));
+        return byAnalysisId;
+    }
+
+    private void removePersistedBatch(String batchId) {
+        if (!persist || redisTemplate == null) {
+            return;
+        }
+        try {
+            redisTemplate.opsForSet().remove(IN_FLIGHT_SET, batchId);
+            redisTemplate.delete(List.of(entriesKey(batchId), handledKey(batchId), ownerKey(batchId)));
+        } catch (Exception e) {
+            log.warn("Could not remove persisted message batch {}: {}", batchId, e.getMessage());
+        }
+    }
+
+    // Hash-tagged so a batch's entries and its lease land in the same slot on a Redis cluster
+    private static String entriesKey(String batchId) {
+        return "message_batch:{" + batchId + "}";
+    }
+
+    private static String ownerKey(String batchId) {
+        return "message_batch_owner:{" + batchId + "}";
+    }
+
+    // Analyses of the batch whose results have already been handed to the executor
+    private static String handledKey(String batchId) {
+        return "message_batch_handled:{" + batchId + "}";
+    }
+}
@@ -0,0 +1,54 @@
+package com.archsense.executor.ai;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+import java.io.IOException;
+import java.util.Map;
+
+// Message Batches payload: {"requests": [{"custom_id": ..., "params": <Messages API params>}, ...]}.
+// Each request's params are streamed the same way as a single Messages call
+class ClaudeBatchRequestBody extends RequestBody {
+
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    private final JsonFactory jsonFactory;
+    private final Map<String, ClaudeRequestBody> requests;
+
+    ClaudeBatchRequestBody(JsonFactory jsonFactory, Map<String, ClaudeRequestBody> requests) {
+        this.jsonFactory = jsonFactory;
+        this.requests = requests;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return JSON;
+    }
+
+    @Override
+    public long contentLength() {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        JsonGenerator generator = jsonFactory.createGenerator(sink.outputStream());
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("requests");
+        for (Map.Entry<String, ClaudeRequestBody> request : requests.entrySet()) {
+            generator.writeStartObject();
+            generator.writeStringField("custom_id", request.getKey());
+            generator.writeFieldName("params");
+            request.getValue().writeParams(generator);
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.flush();
+    }
+}
@@ -0,0 +1,224 @@
+package com.archsense.executor.ai;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Retries and a circuit breaker around synchronous Claude calls. Transient failures (429, 5xx, 529
+// overloaded, timeouts, dropped connections) are retried with full-jitter exponential backoff, or after
+// the server's retry-after when it sends one. Consecutive transient failures open the breaker; while it
+// is open calls fail immediately instead of adding load to a provider that is already shedding it, and
+// after the open period a single trial call decides whether it closes again
+@Component
+@ConditionalOnProperty(name = "ai.provider", havingValue = "anthropic")
+public class ClaudeCallGuard {
+
+    private static final Logger log = LoggerFactory.getLogger(ClaudeCallGuard.class);
+
+    @FunctionalInterface
+    interface Attempt<T> {
+        T call() throws IOException;
+    }
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final MeterRegistry meterRegistry;
+    private final int maxAttempts;
+    private final long baseBackoffMs;
+    private final long maxBackoffMs;
+    private final long maxRetryAfterMs;
+    private final int failureThreshold;
+    private final long openMs;
+    private final Counter rejected;
+
+    // Guarded by this
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    public ClaudeCallGuard(MeterRegistry meterRegistry,
+                           @Value("${ai.anthropic.retry.max-attempts:4}") int maxAttempts,
+                           @Value("${ai.anthropic.retry.base-backoff-ms:1000}") long baseBackoffMs,
+                           @Value("${ai.anthropic.retry.max-backoff-ms:30000}") long maxBackoffMs,
+                           @Value("${ai.anthropic.retry.max-retry-after-ms:60000}") long maxRetryAfterMs,
+                           @Value("${ai.anthropic.circuit-breaker.failure-threshold:5}") int failureThreshold,
+                           @Value("${ai.anthropic.circuit-breaker.open-ms:30000}") long openMs) {
+        this.meterRegistry = meterRegistry;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseBackoffMs = Math.max(1, baseBackoffMs);
+        this.maxBackoffMs = Math.max(this.baseBackoffMs, maxBackoffMs);
+        this.maxRetryAfterMs = maxRetryAfterMs;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMs = openMs;
+        this.rejected = meterRegistry.counter("archsense.claude.circuit.rejected");
+
+        log.info("Claude call guard initialized: maxAttempts={}, backoff={}..{}ms, failureThreshold={}, openMs={}",
+                this.maxAttempts, this.baseBackoffMs, this.maxBackoffMs, this.failureThreshold, openMs);
+    }
+
+    @PostConstruct
+    public void registerMetrics() {
+        meterRegistry.gauge("archsense.claude.circuit.state", this, guard -> guard.getState().ordinal());
+    }
+
+    <T> T execute(Attempt<T> attempt) throws IOException {
+        IOException lastFailure = null;
+        for (int attemptNo = 1; ; attemptNo++) {
+            if (!tryAcquire()) {
+                rejected.increment();
+                // Our own failures opened it; the caller is better served by the real error
+                if (lastFailure != null) {
+                    throw lastFailure;
+                }
+                throw new IOException("Claude API circuit is open after repeated failures; retry in "
+                        + retryAfterSeconds() + "s");
+            }
+
+            long startedAt = System.nanoTime();
+            long delayMs;
+            try {
+                T result = attempt.call();
+                recordAttempt(startedAt, "success", attemptNo);
+                onReachable();
+                return result;
+            } catch (TokenCapacityException e) {
+                // The rate governor gave up before anything was sent; the API's health is unknown
+                releaseTrial();
+                throw e;
+            } catch (IOException e) {
+                recordAttempt(startedAt, outcome(e), attemptNo);
+                if (!isTransient(e)) {
+                    // The API answered, it just did not like this request
+                    onReachable();
+                    throw e;
+                }
+                onTransientFailure();
+                lastFailure = e;
+                delayMs = delayMs(e, attemptNo);
+                if (attemptNo >= maxAttempts || delayMs < 0) {
+                    throw e;
+                }
+                log.warn("Claude API attempt {}/{} failed ({}), retrying in {}ms",
+                        attemptNo, maxAttempts, e.getMessage(), delayMs);
+            } catch (RuntimeException e) {
+                recordAttempt(startedAt, "error", attemptNo);
+                onReachable();
+                throw e;
+            }
+
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while backing off from the Claude API");
+            }
+        }
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMs) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    public boolean isOpen() {
+        return getState() == State.OPEN;
+    }
+
+    public synchronized long retryAfterSeconds() {
+        long remaining = state == State.OPEN ? openMs - (System.currentTimeMillis() - openedAt) : 0;
+        return Math.max(1, TimeUnit.MILLISECONDS.toSeconds(remaining + 999));
+    }
+
+    private synchronized boolean tryAcquire() {
+        State current = getState();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        if (current == State.OPEN || trialInFlight) {
+            return false;
+        }
+        // Open period over: exactly one caller gets to find out whether the API is back
+        state = State.HALF_OPEN;
+        trialInFlight = true;
+        return true;
+    }
+
+    private synchronized void onReachable() {
+        if (state != State.CLOSED) {
+            log.info("Claude API reachable again, closing circuit");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    private synchronized void releaseTrial() {
+        trialInFlight = false;
+    }
+
+    private synchronized void onTransientFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            log.warn("Opening Claude API circuit for {}ms after {} consecutive failures", openMs, consecutiveFailures);
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+        trialInFlight = false;
+    }
+
+    // retry-after wins over our own backoff; one longer than we are willing to hold a worker for is a failure
+    private long delayMs(IOException e, int attemptNo) {
+        if (e instanceof ClaudeApiException apiException && apiException.getRetryAfterMs() != null) {
+            long retryAfter = apiException.getRetryAfterMs();
+            if (retryAfter > maxRetryAfterMs) {
+                log.warn("Claude API asked to retry after {}ms, more than the {}ms allowed", retryAfter, maxRetryAfterMs);
+                return -1;
+            }
+            // A little spread so callers told the same instant do not all return at once
+            return retryAfter + ThreadLocalRandom.current().nextLong(baseBackoffMs / 4 + 1);
+        }
+        long ceiling = Math.min(maxBackoffMs, baseBackoffMs << Math.min(attemptNo - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private boolean isTransient(IOException e) {
+        if (e instanceof ClaudeApiException apiException) {
+            return apiException.isTransient();
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            return false;
+        }
+        // Timeouts, refused or reset connections and responses cut off mid-body
+        return e instanceof InterruptedIOException || e instanceof SocketException || e instanceof EOFException;
+    }
+
+    private String outcome(IOException e) {
+        if (e instanceof ClaudeApiException apiException) {
+            return String.valueOf(apiException.getStatus());
+        }
+        if (e instanceof InterruptedIOException) {
+            return "timeout";
+        }
+        return e instanceof SocketException || e instanceof EOFException ? "network" : "error";
+    }
+
+    private void recordAttempt(long startedAt, String outcome, int attemptNo) {
+        meterRegistry.timer("archsense.claude.attempts", "outcome", outcome, "retry", String.valueOf(attemptNo > 1))
+                .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+    }
+}
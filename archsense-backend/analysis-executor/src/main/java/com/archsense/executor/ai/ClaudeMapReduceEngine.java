@@ -0,0 +1,243 @@
+package com.archsense.executor.ai;
+
+import com.archsense.executor.cache.PartialResultStore;
+import com.archsense.executor.client.AnalysisServiceClient;
+import com.archsense.executor.model.AnalysisReport;
+import com.archsense.executor.model.Artifact;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+// Splits analyses of many artifacts into shards that are analyzed by parallel Claude calls and merged
+// afterwards, so wall-clock time follows the slowest shard instead of the whole input and no single
+// response has to describe thirty diagrams within max_tokens. Each shard goes through the normal engine,
+// so it is budgeted, cached and metered like any other analysis.
+// In incremental mode every artifact is its own shard and shard results are kept in the PartialResultStore,
+// so re-running a project only calls the model for artifacts whose content (or the constraints) changed
+@Component
+@ConditionalOnExpression("'${ai.provider:}' == 'anthropic' and (${ai.anthropic.map-reduce.enabled:false} or ${ai.anthropic.incremental.enabled:false})")
+public class ClaudeMapReduceEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(ClaudeMapReduceEngine.class);
+    private static final int MAX_PROGRESS_ISSUES = 20;
+    private static final String SHARD_SCOPE = "These artifacts are one part of a larger project; the other parts are "
+            + "analyzed separately and merged afterwards. Report only what these artifacts show, and estimate costs "
+            + "only for the components shown here.";
+
+    private final ClaudeAnalysisEngine claudeAnalysisEngine;
+    private final PartialResultStore partialResultStore;
+    private final Executor shardExecutor;
+    private final ReportMerger reportMerger = new ReportMerger();
+    private final int minArtifacts;
+    private final int artifactsPerShard;
+    private final int maxConcurrency;
+    private final boolean incremental;
+    private final Timer shardTimer;
+    private final Timer mergedTimer;
+
+    @Autowired(required = false)
+    private AnalysisServiceClient analysisServiceClient;
+
+    public ClaudeMapReduceEngine(ClaudeAnalysisEngine claudeAnalysisEngine,
+                                 PartialResultStore partialResultStore,
+                                 MeterRegistry meterRegistry,
+                                 @Qualifier("shardTaskExecutor") Executor shardExecutor,
+                                 @Value("${ai.anthropic.map-reduce.min-artifacts:6}") int minArtifacts,
+                                 @Value("${ai.anthropic.map-reduce.artifacts-per-shard:4}") int artifactsPerShard,
+                                 @Value("${ai.anthropic.map-reduce.max-concurrency:4}") int maxConcurrency,
+                                 @Value("${ai.anthropic.incremental.enabled:false}") boolean incremental) {
+        this.claudeAnalysisEngine = claudeAnalysisEngine;
+        this.partialResultStore = partialResultStore;
+        this.shardExecutor = shardExecutor;
+        this.minArtifacts = minArtifacts;
+        // Only single-artifact shards stay valid when another artifact is added to the project
+        this.artifactsPerShard = incremental ? 1 : Math.max(1, artifactsPerShard);
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.incremental = incremental;
+        this.shardTimer = meterRegistry.timer("archsense.mapreduce.duration", "stage", "shard");
+        this.mergedTimer = meterRegistry.timer("archsense.mapreduce.duration", "stage", "total");
+
+        log.info("Map-reduce mode enabled: minArtifacts={}, artifactsPerShard={}, maxConcurrency={}, incremental={}",
+                minArtifacts, this.artifactsPerShard, this.maxConcurrency, incremental);
+    }
+
+    public boolean handles(List<Artifact> artifacts) {
+        // Incremental mode takes every analysis, or the partials of small projects would never be stored
+        return incremental || (artifacts.size() >= minArtifacts && artifacts.size() > artifactsPerShard);
+    }
+
+    public AnalysisReport analyze(List<Artifact> artifacts, Map<String, Object> context) {
+        long startedAt = System.nanoTime();
+        List<List<Artifact>> shards = shard(artifacts);
+        log.info("Analyzing {} artifacts in {} shards, at most {} at a time", artifacts.size(), shards.size(), maxConcurrency);
+
+        // Shards never see the previous analysis; the executor diffs the merged report against it
+        Map<String, Object> shardContext = new HashMap<>(context);
+        shardContext.remove("previousReport");
+        shardContext.remove("analysisId");
+        shardContext.put("shard", SHARD_SCOPE);
+
+        String analysisId = (String) context.get("analysisId");
+        List<AnalysisReport> completed = new ArrayList<>();
+        AtomicInteger reused = new AtomicInteger();
+        Semaphore permits = new Semaphore(maxConcurrency);
+        List<CompletableFuture<AnalysisReport>> futures = new ArrayList<>();
+        try {
+            for (List<Artifact> shard : shards) {
+                permits.acquire();
+                if (futures.stream().anyMatch(CompletableFuture::isCompletedExceptionally)) {
+                    break;
+                }
+                futures.add(CompletableFuture
+                        .supplyAsync(() -> analyzeShard(shard, shardContext, reused), shardExecutor)
+                        .whenComplete((report, error) -> {
+                            permits.release();
+                            if (report != null) {
+                                publishProgress(analysisId, completed, report);
+                            }
+                        }));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new RuntimeException("Map-reduce analysis interrupted", e);
+        } catch (CompletionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new RuntimeException("Map-reduce shard failed: " + e.getCause().getMessage(), e.getCause());
+        }
+
+        List<AnalysisReport> parts = futures.stream().map(CompletableFuture::join).toList();
+        List<String> labels = shards.stream().map(this::shardNames).toList();
+        AnalysisReport merged = reportMerger.merge(parts, labels);
+
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        mergedTimer.record(elapsedMs, TimeUnit.MILLISECONDS);
+        if (merged.getTokenUsage() != null) {
+            merged.getTokenUsage().setDurationMs(elapsedMs);
+        }
+        log.info("Map-reduce analysis completed in {}ms: {} shards -> {} issues, {} recommendations",
+                elapsedMs, shards.size(), merged.getIssues().size(), merged.getRecommendations().size());
+        if (incremental) {
+            log.info("Reused {} of {} partial results", reused.get(), shards.size());
+        }
+        return merged;
+    }
+
+    private AnalysisReport analyzeShard(List<Artifact> shard, Map<String, Object> shardContext, AtomicInteger reused) {
+        String partialKey = null;
+        String projectId = (String) shardContext.get("projectId");
+        if (incremental) {
+            // A shard's findings do not depend on which version asked for them (shards never see the previous
+            // report), so the version stays out of the key and v1 partials serve v2 and later
+            Map<String, Object> keyContext = new HashMap<>(shardContext);
+            keyContext.remove("version");
+            partialKey = claudeAnalysisEngine.cacheKey(shard, keyContext);
+            Optional<AnalysisReport> partial = partialResultStore.get(partialKey, projectId)
+                    .filter(report -> !claudeAnalysisEngine.isFallback(report));
+            if (partial.isPresent()) {
+                log.debug("Reusing partial result for unchanged artifact {}", shard.get(0).getName());
+                reused.incrementAndGet();
+                return partial.get();
+            }
+        }
+
+        long startedAt = System.nanoTime();
+        try {
+            AnalysisReport report = claudeAnalysisEngine.analyze(shard, shardContext);
+            if (claudeAnalysisEngine.isFallback(report)) {
+                // A placeholder would merge in as a shard with no findings and hide that part of the project;
+                // fallbacks are never cached, so one more call really asks the model again
+                log.warn("Shard {} returned no parseable report, retrying once", shardNames(shard));
+                report = claudeAnalysisEngine.analyze(shard, shardContext);
+                if (claudeAnalysisEngine.isFallback(report)) {
+                    throw new IllegalStateException("No parseable report for shard " + shardNames(shard));
+                }
+            }
+            // A placeholder must never be reused as if it were the artifact's analysis
+            if (partialKey != null && !claudeAnalysisEngine.isFallback(report)) {
+                partialResultStore.put(partialKey, projectId, report);
+            }
+            return report;
+        } finally {
+            shardTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private String shardNames(List<Artifact> shard) {
+        return shard.stream().map(Artifact::getName).collect(Collectors.joining(", "));
+    }
+
+    // Largest-first onto the lightest shard, so no shard ends up with all the big diagrams. Size stands
+    // in for cost: bigger uploads are the ones that stay large after preprocessing and take longest
+    List<List<Artifact>> shard(List<Artifact> artifacts) {
+        int shardCount = (artifacts.size() + artifactsPerShard - 1) / artifactsPerShard;
+        List<List<Artifact>> shards = new ArrayList<>();
+        long[] weights = new long[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new ArrayList<>());
+        }
+
+        List<Artifact> bySize = new ArrayList<>(artifacts);
+        bySize.sort(Comparator.comparingLong(Artifact::getSize).reversed());
+        for (Artifact artifact : bySize) {
+            int lightest = -1;
+            for (int i = 0; i < shardCount; i++) {
+                if (shards.get(i).size() < artifactsPerShard && (lightest < 0 || weights[i] < weights[lightest])) {
+                    lightest = i;
+                }
+            }
+            shards.get(lightest).add(artifact);
+            weights[lightest] += artifact.getSize();
+        }
+
+        // Upload order within a shard keeps prompts, and so shard cache keys, stable between runs
+        for (List<Artifact> shard : shards) {
+            shard.sort(Comparator.comparingInt(artifacts::indexOf));
+        }
+        return shards;
+    }
+
+    private void publishProgress(String analysisId, List<AnalysisReport> completed, AnalysisReport report) {
+        if (analysisServiceClient == null || analysisId == null) {
+            return;
+        }
+
+        List<String> partialIssues = new ArrayList<>();
+        int issueCount;
+        synchronized (completed) {
+            completed.add(report);
+            issueCount = completed.stream().mapToInt(part -> part.getIssues() != null ? part.getIssues().size() : 0).sum();
+        }
+        List<AnalysisReport.Issue> issues = report.getIssues() != null ? report.getIssues() : List.of();
+        for (AnalysisReport.Issue issue : issues.subList(0, Math.min(MAX_PROGRESS_ISSUES, issues.size()))) {
+            partialIssues.add(String.format("[%s] %s: %s", issue.getSeverity(), issue.getCategory(), issue.getDescription()));
+        }
+
+        try {
+            analysisServiceClient.updateProgress(analysisId, issueCount, partialIssues);
+        } catch (Exception e) {
+            log.debug("Could not publish shard progress for {}: {}", analysisId, e.getMessage());
+        }
+    }
+}
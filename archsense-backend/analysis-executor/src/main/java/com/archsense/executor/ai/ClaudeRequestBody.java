@@ -0,0 +1,146 @@
+package com.archsense.executor.ai;
+
+import com.archsense.executor.cache.ArtifactCache;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// Writes the Messages API payload straight into the socket sink; base64 image data is streamed
+// from the artifact cache's mapped files so it never becomes a heap String. The body holds those files
+// until it is closed, and must not be written after that
+class ClaudeRequestBody extends RequestBody implements AutoCloseable {
+
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    record Image(String mediaType, ByteBuffer base64) {
+    }
+
+    private final JsonFactory jsonFactory;
+    private final String model;
+    private final int maxTokens;
+    private final boolean stream;
+    private final String systemPrompt;
+    private final boolean cacheSystemPrompt;
+    private final String prompt;
+    private final List<Image> images;
+    private final int estimatedInputTokens;
+    private final List<ArtifactCache.CachedArtifact> pinned;
+
+    ClaudeRequestBody(JsonFactory jsonFactory, String model, int maxTokens, boolean stream,
+                      String systemPrompt, boolean cacheSystemPrompt, String prompt, List<Image> images,
+                      int estimatedInputTokens, List<ArtifactCache.CachedArtifact> pinned) {
+        this.jsonFactory = jsonFactory;
+        this.model = model;
+        this.maxTokens = maxTokens;
+        this.stream = stream;
+        this.systemPrompt = systemPrompt;
+        this.cacheSystemPrompt = cacheSystemPrompt;
+        this.prompt = prompt;
+        this.images = images;
+        this.estimatedInputTokens = estimatedInputTokens;
+        this.pinned = pinned;
+    }
+
+    String getModel() {
+        return model;
+    }
+
+    int getEstimatedInputTokens() {
+        return estimatedInputTokens;
+    }
+
+    int getImageCount() {
+        return images.size();
+    }
+
+    @Override
+    public void close() {
+        pinned.forEach(ArtifactCache.CachedArtifact::close);
+    }
+
+    @Override
+    public MediaType contentType() {
+        return JSON;
+    }
+
+    @Override
+    public long contentLength() {
+        // Unknown up front; OkHttp falls back to chunked transfer encoding
+        return -1;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        // The sink belongs to OkHttp, so the generator must not close it
+        JsonGenerator generator = jsonFactory.createGenerator(sink.outputStream());
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        writeParams(generator);
+        generator.flush();
+    }
+
+    // The Messages API parameters as one JSON object; Message Batches embed the same object per request
+    void writeParams(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("model", model);
+        generator.writeNumberField("max_tokens", maxTokens);
+        if (stream) {
+            generator.writeBooleanField("stream", true);
+        }
+
+        // The system block is identical on every call, so it is the prefix marked for prompt caching
+        generator.writeArrayFieldStart("system");
+        generator.writeStartObject();
+        generator.writeStringField("type", "text");
+        generator.writeStringField("text", systemPrompt);
+        if (cacheSystemPrompt) {
+            generator.writeObjectFieldStart("cache_control");
+            generator.writeStringField("type", "ephemeral");
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+        generator.writeEndArray();
+
+        generator.writeArrayFieldStart("messages");
+        generator.writeStartObject();
+        generator.writeStringField("role", "user");
+        generator.writeArrayFieldStart("content");
+
+        generator.writeStartObject();
+        generator.writeStringField("type", "text");
+        generator.writeStringField("text", prompt);
+        generator.writeEndObject();
+
+        for (Image image : images) {
+            generator.writeStartObject();
+            generator.writeStringField("type", "image");
+            generator.writeObjectFieldStart("source");
+            generator.writeStringField("type", "base64");
+            generator.writeStringField("media_type", image.mediaType());
+            generator.writeFieldName("data");
+            // duplicate() so a retried call starts again from the beginning of the buffer
+            try (Reader base64 = new InputStreamReader(
+                    new ByteBufferBackedInputStream(image.base64().duplicate()), StandardCharsets.US_ASCII)) {
+                generator.writeString(base64, -1);
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.writeEndArray();
+
+        generator.writeEndObject();
+    }
+}
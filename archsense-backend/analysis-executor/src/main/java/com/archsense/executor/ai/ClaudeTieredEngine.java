@@ -0,0 +1,217 @@
+package com.archsense.executor.ai;
+
+import com.archsense.executor.model.AnalysisReport;
+import com.archsense.executor.model.Artifact;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Runs every analysis on the configured (cheap, fast) model first and repeats it on a stronger model only
+// when the triage report gives a reason to: it could not be parsed, the model was unsure of its findings,
+// or it found enough HIGH issues that they deserve a closer look. Projects whose budget sensitivity makes
+// cost accuracy matter go to the stronger model directly. The escalated report replaces the triage one
+@Component
+@ConditionalOnExpression("'${ai.provider:}' == 'anthropic' and ${ai.anthropic.tiering.enabled:false}")
+public class ClaudeTieredEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(ClaudeTieredEngine.class);
+    private static final String TRIAGE = "triage";
+    private static final String ESCALATION = "escalation";
+    // Prompt caching prices relative to the base input price
+    private static final double CACHE_WRITE_FACTOR = 1.25;
+    private static final double CACHE_READ_FACTOR = 0.1;
+
+    private record Tier(String name, String model, double inputUsdPerMtok, double outputUsdPerMtok) {
+    }
+
+    private final ClaudeAnalysisEngine claudeAnalysisEngine;
+    private final MeterRegistry meterRegistry;
+    private final Tier triage;
+    private final Tier escalation;
+    private final double minConfidence;
+    private final int maxHighIssues;
+    private final Set<String> directBudgetSensitivities = new HashSet<>();
+
+    public ClaudeTieredEngine(ClaudeAnalysisEngine claudeAnalysisEngine,
+                              MeterRegistry meterRegistry,
+                              @Value("${ai.anthropic.model}") String triageModel,
+                              @Value("${ai.anthropic.tiering.escalation-model}") String escalationModel,
+                              @Value("${ai.anthropic.tiering.min-confidence:0.6}") double minConfidence,
+                              @Value("${ai.anthropic.tiering.max-high-issues:3}") int maxHighIssues,
+                              @Value("${ai.anthropic.tiering.direct-budget-sensitivity:HIGH}") List<String> directBudgetSensitivities,
+                              @Value("${ai.anthropic.tiering.triage-price.input-usd-per-mtok:1.0}") double triageInputPrice,
+                              @Value("${ai.anthropic.tiering.triage-price.output-usd-per-mtok:5.0}") double triageOutputPrice,
+                              @Value("${ai.anthropic.tiering.escalation-price.input-usd-per-mtok:3.0}") double escalationInputPrice,
+                              @Value("${ai.anthropic.tiering.escalation-price.output-usd-per-mtok:15.0}") double escalationOutputPrice) {
+        this.claudeAnalysisEngine = claudeAnalysisEngine;
+        this.meterRegistry = meterRegistry;
+        this.triage = new Tier(TRIAGE, triageModel, triageInputPrice, triageOutputPrice);
+        this.escalation = new Tier(ESCALATION, escalationModel, escalationInputPrice, escalationOutputPrice);
+        this.minConfidence = minConfidence;
+        this.maxHighIssues = maxHighIssues;
+        for (String sensitivity : directBudgetSensitivities) {
+            if (!sensitivity.isBlank()) {
+                this.directBudgetSensitivities.add(sensitivity.trim().toUpperCase());
+            }
+        }
+
+        log.info("Tiered mode enabled: triage={}, escalation={}, minConfidence={}, maxHighIssues={}, direct={}",
+                triageModel, escalationModel, minConfidence, maxHighIssues, this.directBudgetSensitivities);
+    }
+
+    public AnalysisReport analyze(List<Artifact> artifacts, Map<String, Object> context) {
+        String direct = directReason(context);
+        if (direct != null) {
+            AnalysisReport report = run(escalation, artifacts, context);
+            route("direct", direct, report);
+            return report;
+        }
+
+        AnalysisReport triageReport = run(triage, artifacts, context);
+        String reason = escalationReason(triageReport);
+        if (reason == null) {
+            route(TRIAGE, "none", triageReport);
+            return triageReport;
+        }
+
+        log.info("Escalating analysis {} to {}: {}", context.get("analysisId"), escalation.model(), reason);
+        AnalysisReport escalated;
+        try {
+            escalated = run(escalation, artifacts, context);
+        } catch (RuntimeException e) {
+            // A usable triage report is better than none; a placeholder is not
+            if (claudeAnalysisEngine.isFallback(triageReport)) {
+                throw e;
+            }
+            log.warn("Escalation failed, keeping the triage report: {}", e.getMessage());
+            route(TRIAGE, "escalation-failed", triageReport);
+            return triageReport;
+        }
+        // An unparseable escalated answer is a failed escalation too
+        if (claudeAnalysisEngine.isFallback(escalated) && !claudeAnalysisEngine.isFallback(triageReport)) {
+            log.warn("Escalated report could not be parsed, keeping the triage report");
+            // Both calls were still paid for; the model is the one whose report is kept
+            AnalysisReport.TokenUsage usage = combine(triageReport.getTokenUsage(), escalated.getTokenUsage());
+            if (usage != null) {
+                usage.setModel(triage.model());
+            }
+            triageReport.setTokenUsage(usage);
+            route(TRIAGE, "escalation-failed", triageReport);
+            return triageReport;
+        }
+        escalated.setTokenUsage(combine(triageReport.getTokenUsage(), escalated.getTokenUsage()));
+        route("escalated", reason, escalated);
+        return escalated;
+    }
+
+    private AnalysisReport run(Tier tier, List<Artifact> artifacts, Map<String, Object> context) {
+        Map<String, Object> tierContext = new HashMap<>(context);
+        tierContext.put("model", tier.model());
+
+        long startedAt = System.nanoTime();
+        AnalysisReport report = claudeAnalysisEngine.analyze(artifacts, tierContext);
+        meterRegistry.timer("archsense.tiering.duration", "tier", tier.name())
+                .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        recordCost(tier, report.getTokenUsage());
+        return report;
+    }
+
+    private String directReason(Map<String, Object> context) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> constraints = (Map<String, Object>) context.get("constraints");
+        Object sensitivity = constraints != null ? constraints.get("budgetSensitivity") : null;
+        if (sensitivity != null && directBudgetSensitivities.contains(sensitivity.toString().toUpperCase())) {
+            return "budget-sensitivity";
+        }
+        return null;
+    }
+
+    // First matching signal, in order of how clearly the triage report is unusable
+    private String escalationReason(AnalysisReport report) {
+        if (claudeAnalysisEngine.isFallback(report)) {
+            return "parse-failure";
+        }
+        List<AnalysisReport.Issue> issues = report.getIssues() != null ? report.getIssues() : List.of();
+        OptionalDouble confidence = issues.stream()
+                .filter(issue -> issue.getConfidenceScore() != null)
+                .mapToDouble(AnalysisReport.Issue::getConfidenceScore)
+                .average();
+        if (confidence.isPresent() && confidence.getAsDouble() < minConfidence) {
+            return "low-confidence";
+        }
+        long high = issues.stream().filter(issue -> "HIGH".equalsIgnoreCase(issue.getSeverity())).count();
+        if (high >= maxHighIssues) {
+            return "high-severity";
+        }
+        return null;
+    }
+
+    private void route(String route, String reason, AnalysisReport report) {
+        meterRegistry.counter("archsense.tiering.routes", "route", route, "reason", reason).increment();
+        AnalysisReport.TokenUsage usage = report.getTokenUsage();
+        if (usage == null) {
+            // Cached reports carry no usage, but which tier answered is still worth keeping
+            usage = new AnalysisReport.TokenUsage();
+            usage.setModel(TRIAGE.equals(route) ? triage.model() : escalation.model());
+            report.setTokenUsage(usage);
+        }
+        usage.setRouting("none".equals(reason) ? route : route + ":" + reason);
+        log.info("Analysis routed {} ({}): {} issues", route, reason,
+                report.getIssues() != null ? report.getIssues().size() : 0);
+    }
+
+    private void recordCost(Tier tier, AnalysisReport.TokenUsage usage) {
+        if (usage == null) {
+            return;
+        }
+        double input = tokens(usage.getInputTokens())
+                + CACHE_WRITE_FACTOR * tokens(usage.getCacheCreationInputTokens())
+                + CACHE_READ_FACTOR * tokens(usage.getCacheReadInputTokens());
+        double usd = (input * tier.inputUsdPerMtok() + tokens(usage.getOutputTokens()) * tier.outputUsdPerMtok()) / 1_000_000;
+        meterRegistry.counter("archsense.tiering.cost.usd", "tier", tier.name()).increment(usd);
+        meterRegistry.counter("archsense.tiering.tokens", "tier", tier.name(), "type", "input")
+                .increment(tokens(usage.getInputTokens()));
+        meterRegistry.counter("archsense.tiering.tokens", "tier", tier.name(), "type", "output")
+                .increment(tokens(usage.getOutputTokens()));
+    }
+
+    // The escalated report paid for both calls; the wall-clock time is both calls end to end
+    private AnalysisReport.TokenUsage combine(AnalysisReport.TokenUsage triageUsage, AnalysisReport.TokenUsage escalatedUsage) {
+        if (triageUsage == null) {
+            return escalatedUsage;
+        }
+        if (escalatedUsage == null) {
+            escalatedUsage = new AnalysisReport.TokenUsage();
+            escalatedUsage.setModel(escalation.model());
+        }
+        escalatedUsage.setInputTokens(add(triageUsage.getInputTokens(), escalatedUsage.getInputTokens()));
+        escalatedUsage.setOutputTokens(add(triageUsage.getOutputTokens(), escalatedUsage.getOutputTokens()));
+        escalatedUsage.setCacheCreationInputTokens(add(triageUsage.getCacheCreationInputTokens(),
+                escalatedUsage.getCacheCreationInputTokens()));
+        escalatedUsage.setCacheReadInputTokens(add(triageUsage.getCacheReadInputTokens(),
+                escalatedUsage.getCacheReadInputTokens()));
+        if (triageUsage.getDurationMs() != null && escalatedUsage.getDurationMs() != null) {
+            escalatedUsage.setDurationMs(triageUsage.getDurationMs() + escalatedUsage.getDurationMs());
+        }
+        return escalatedUsage;
+    }
+
+    private double tokens(Integer tokens) {
+        return tokens != null ? tokens : 0;
+    }
+
+    private Integer add(Integer a, Integer b) {
+        return a == null ? b : b == null ? a : a + b;
+    }
+}
@@ -0,0 +1,198 @@
+package com.archsense.executor.ai;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Cuts document text into chunks as it streams past and keeps only the best-scoring ones in a bounded
+// min-heap, so memory follows the excerpt budget rather than the size of the documents
+class DocumentExcerpts {
+
+    record Excerpt(String document, int documentOrder, int index, String text, double score) {
+    }
+
+    // Vocabulary that marks a passage as describing the architecture rather than, say, a changelog or legal text
+    private static final Map<String, Double> TERM_WEIGHTS = Map.ofEntries(
+            Map.entry("architecture", 2.0), Map.entry("component", 1.5), Map.entry("service", 1.5),
+            Map.entry("microservice", 2.0), Map.entry("api", 1.5), Map.entry("gateway", 2.0),
+            Map.entry("database", 2.0), Map.entry("cache", 2.0), Map.entry("queue", 2.0),
+            Map.entry("kafka", 2.0), Map.entry("broker", 1.5), Map.entry("event", 1.0),
+            Map.entry("storage", 1.5), Map.entry("replica", 2.0), Map.entry("replication", 2.0),
+            Map.entry("shard", 2.0), Map.entry("partition", 1.5), Map.entry("cluster", 1.5),
+            Map.entry("failover", 2.5), Map.entry("availability", 2.0), Map.entry("redundancy", 2.0),
+            Map.entry("latency", 2.0), Map.entry("throughput", 2.0), Map.entry("scalability", 2.0),
+            Map.entry("scaling", 2.0), Map.entry("bottleneck", 2.5), Map.entry("timeout", 1.5),
+            Map.entry("retry", 1.5), Map.entry("security", 2.0), Map.entry("authentication", 2.0),
+            Map.entry("authorization", 2.0), Map.entry("encryption", 2.0), Map.entry("tls", 2.0),
+            Map.entry("vulnerability", 2.5), Map.entry("consistency", 2.0), Map.entry("transaction", 1.5),
+            Map.entry("sla", 2.0), Map.entry("slo", 2.0), Map.entry("requirement", 1.5),
+            Map.entry("constraint", 1.5), Map.entry("decision", 1.5), Map.entry("tradeoff", 2.0),
+            Map.entry("risk", 1.5), Map.entry("dependency", 1.0), Map.entry("deployment", 1.5),
+            Map.entry("region", 1.0), Map.entry("monitoring", 1.0), Map.entry("cost", 1.5));
+
+    // Multi-word terms are matched on the lowercased text directly
+    private static final Map<String, Double> PHRASE_WEIGHTS = Map.of(
+            "single point of failure", 4.0, "load balancer", 2.5, "circuit breaker", 2.5,
+            "rate limit", 2.5, "data flow", 2.0, "message queue", 2.0, "read replica", 2.0,
+            "disaster recovery", 2.5, "high availability", 2.5);
+
+    private static final Pattern WORD = Pattern.compile("[a-z][a-z0-9]*");
+    // Short chunks (page footers, tables of contents) score on a floor so a single keyword does not win
+    private static final int MIN_SCORED_WORDS = 40;
+    // Introductions and summaries tend to name the system's parts, so the first chunk gets a nudge
+    private static final double FIRST_CHUNK_BOOST = 1.2;
+
+    private final int chunkChars;
+    private final int maxExcerpts;
+    private final Map<String, Double> termWeights;
+    // Lowest score at the head; among equal scores the later chunk is evicted first
+    private final PriorityQueue<Excerpt> kept = new PriorityQueue<>(Comparator
+            .comparingDouble(Excerpt::score)
+            .thenComparing(Excerpt::documentOrder, Comparator.reverseOrder())
+            .thenComparing(Excerpt::index, Comparator.reverseOrder()));
+    private final Map<String, Integer> chunkCounts = new LinkedHashMap<>();
+
+    private final StringBuilder buffer = new StringBuilder();
+    private String document;
+    private int documentOrder = -1;
+    private int index;
+
+    DocumentExcerpts(int chunkChars, int maxExcerpts, Map<String, Object> constraints) {
+        this.chunkChars = chunkChars;
+        this.maxExcerpts = maxExcerpts;
+        this.termWeights = weightsFor(constraints);
+    }
+
+    // Passages about what the project is constrained on matter more for this analysis
+    private static Map<String, Double> weightsFor(Map<String, Object> constraints) {
+        Map<String, Double> weights = new HashMap<>(TERM_WEIGHTS);
+        if (constraints == null) {
+            return weights;
+        }
+        if (constraints.get("expectedQps") != null) {
+            boost(weights, "throughput", "qps", "rps", "load", "scaling", "autoscaling", "capacity");
+        }
+        if (constraints.get("latencyTargetMs") != null) {
+            boost(weights, "latency", "p99", "p95", "timeout", "cache", "cdn");
+        }
+        if (constraints.get("consistencyLevel") != null) {
+            boost(weights, "consistency", "replication", "transaction", "quorum", "eventual", "strong");
+        }
+        if (constraints.get("budgetSensitivity") != null) {
+            boost(weights, "cost", "pricing", "budget", "instance", "reserved");
+        }
+        return weights;
+    }
+
+    private static void boost(Map<String, Double> weights, String... terms) {
+        for (String term : terms) {
+            weights.merge(term, 1.5, (existing, extra) -> existing + extra);
+        }
+    }
+
+    void begin(String documentName) {
+        document = documentName;
+        documentOrder++;
+        index = 0;
+        buffer.setLength(0);
+    }
+
+    void append(CharSequence text) {
+        buffer.append(text);
+        while (buffer.length() >= chunkChars) {
+            int cut = cutPoint();
+            emit(buffer.substring(0, cut));
+            buffer.delete(0, cut);
+        }
+    }
+
+    void end() {
+        emit(buffer.toString());
+        buffer.setLength(0);
+        chunkCounts.put(document, index);
+    }
+
+    int chunkCount(String documentName) {
+        return chunkCounts.getOrDefault(documentName, 0);
+    }
+
+    // Best first
+    List<Excerpt> ranked() {
+        List<Excerpt> ranked = new ArrayList<>(kept);
+        ranked.sort(kept.comparator().reversed());
+        return ranked;
+    }
+
+    // Prefers a paragraph break, then a line break, then a sentence end, in the second half of the chunk
+    private int cutPoint() {
+        int from = chunkChars / 2;
+        int cut = buffer.lastIndexOf("\n\n", chunkChars);
+        if (cut < from) {
+            cut = buffer.lastIndexOf("\n", chunkChars);
+        }
+        if (cut < from) {
+            cut = buffer.lastIndexOf(". ", chunkChars);
+        }
+        if (cut < from) {
+            cut = buffer.lastIndexOf(" ", chunkChars);
+        }
+        return cut < from ? chunkChars : cut + 1;
+    }
+
+    private void emit(String raw) {
+        String text = raw.replaceAll("[ \\t\\x0B\\f\\r]+", " ").replaceAll(" ?\\n ?", "\n")
+                .replaceAll("\\n{3,}", "\n\n").strip();
+        if (text.isEmpty()) {
+            return;
+        }
+
+        Excerpt excerpt = new Excerpt(document, documentOrder, index, text, score(text, index == 0));
+        index++;
+        if (kept.size() < maxExcerpts) {
+            kept.add(excerpt);
+        } else if (kept.comparator().compare(excerpt, kept.peek()) > 0) {
+            kept.poll();
+            kept.add(excerpt);
+        }
+    }
+
+    private double score(String text, boolean firstChunk) {
+        String lower = text.toLowerCase();
+        double total = 0;
+        int words = 0;
+
+        Matcher matcher = WORD.matcher(lower);
+        while (matcher.find()) {
+            words++;
+            Double weight = termWeights.get(singular(matcher.group()));
+            if (weight != null) {
+                total += weight;
+            }
+        }
+        for (Map.Entry<String, Double> phrase : PHRASE_WEIGHTS.entrySet()) {
+            for (int at = lower.indexOf(phrase.getKey()); at >= 0; at = lower.indexOf(phrase.getKey(), at + 1)) {
+                total += phrase.getValue();
+            }
+        }
+
+        // Density rather than raw count, damped so long chunks are not penalized too hard
+        double score = total / Math.sqrt(Math.max(words, MIN_SCORED_WORDS));
+        return firstChunk ? score * FIRST_CHUNK_BOOST : score;
+    }
+
+    private static String singular(String word) {
+        if (word.length() > 4 && word.endsWith("ies")) {
+            return word.substring(0, word.length() - 3) + "y";
+        }
+        if (word.length() > 3 && word.endsWith("s") && !word.endsWith("ss")) {
+            return word.substring(0, word.length() - 1);
+        }
+        return word;
+    }
+}
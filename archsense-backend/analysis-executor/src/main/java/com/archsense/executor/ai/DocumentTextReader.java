@@ -0,0 +1,155 @@
+package com.archsense.executor.ai;
+
+import com.archsense.executor.model.Artifact;
+import com.archsense.executor.storage.S3StorageService;
+import com.archsense.executor.storage.StorageService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+// Streams the text of PDF, Markdown and plain-text artifacts into DocumentExcerpts. The text artifact-service
+// extracted at upload time is used when there is one; otherwise the original is read here. Nothing is held
+// in memory beyond one read buffer or one PDF page
+@Component
+public class DocumentTextReader {
+
+    private static final Logger log = LoggerFactory.getLogger(DocumentTextReader.class);
+
+    private final long maxScanChars;
+    private final Counter fromDerived;
+    private final Counter fromOriginal;
+    private final Counter failures;
+
+    @Autowired(required = false)
+    private StorageService artifactStorageService;
+
+    @Autowired(required = false)
+    private S3StorageService s3StorageService;
+
+    public DocumentTextReader(MeterRegistry meterRegistry,
+                              @Value("${ai.text.max-scan-chars:2000000}") long maxScanChars) {
+        this.maxScanChars = maxScanChars;
+        this.fromDerived = meterRegistry.counter("archsense.document.text", "source", "derived");
+        this.fromOriginal = meterRegistry.counter("archsense.document.text", "source", "original");
+        this.failures = meterRegistry.counter("archsense.document.text", "source", "failed");
+    }
+
+    boolean isTextType(String type) {
+        return type != null && (
+                type.equalsIgnoreCase("PDF") ||
+                        type.equalsIgnoreCase("MARKDOWN") ||
+                        type.equalsIgnoreCase("MD") ||
+                        type.equalsIgnoreCase("TEXT") ||
+                        type.equalsIgnoreCase("TXT")
+        );
+    }
+
+    // Returns false if nothing could be read; the artifact is then only listed by name, as before
+    boolean read(Artifact artifact, DocumentExcerpts excerpts) {
+        if (s3StorageService == null && artifactStorageService == null) {
+            log.warn("Storage service not available, cannot read document: {}", artifact.getName());
+            return false;
+        }
+
+        long startedAt = System.currentTimeMillis();
+        excerpts.begin(artifact.getName());
+        try {
+            long scanned = readText(artifact, excerpts);
+            log.info("Scanned {} chars of {} into {} chunks in {}ms", scanned, artifact.getName(),
+                    excerpts.chunkCount(artifact.getName()), System.currentTimeMillis() - startedAt);
+            return true;
+        } catch (Exception e) {
+            failures.increment();
+            log.error("Failed to read document: {}", artifact.getName(), e);
+            return false;
+        } finally {
+            excerpts.end();
+        }
+    }
+
+    private long readText(Artifact artifact, DocumentExcerpts excerpts) throws IOException {
+        InputStream derived = null;
+        if (artifact.getTextKey() != null) {
+            try {
+                derived = open(artifact.getTextKey());
+            } catch (IOException | RuntimeException e) {
+                // Falls back only when opening fails, so no document is ever fed twice
+                log.warn("Extracted text of {} unavailable, reading the original: {}", artifact.getName(), e.getMessage());
+            }
+        }
+        if (derived != null) {
+            try (InputStream in = derived) {
+                long scanned = readPlain(in, excerpts);
+                fromDerived.increment();
+                return scanned;
+            }
+        }
+
+        try (InputStream in = open(artifact.getS3Key())) {
+            long scanned = "PDF".equalsIgnoreCase(artifact.getType()) ? readPdf(in, excerpts) : readPlain(in, excerpts);
+            fromOriginal.increment();
+            return scanned;
+        }
+    }
+
+    private long readPlain(InputStream in, DocumentExcerpts excerpts) throws IOException {
+        Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE));
+        char[] buffer = new char[8192];
+        long scanned = 0;
+        int read;
+        while (scanned < maxScanChars && (read = reader.read(buffer, 0, (int) Math.min(buffer.length, maxScanChars - scanned))) != -1) {
+            excerpts.append(new String(buffer, 0, read));
+            scanned += read;
+        }
+        return scanned;
+    }
+
+    // PDFBox needs random access, so the original is spooled to disk and parsed one page at a time
+    private long readPdf(InputStream in, DocumentExcerpts excerpts) throws IOException {
+        Path file = Files.createTempFile("document-", ".pdf");
+        try {
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+            long scanned = 0;
+            try (PDDocument document = Loader.loadPDF(file.toFile(), IOUtils.createTempFileOnlyStreamCache())) {
+                PDFTextStripper stripper = new PDFTextStripper();
+                for (int page = 1; page <= document.getNumberOfPages() && scanned < maxScanChars; page++) {
+                    stripper.setStartPage(page);
+                    stripper.setEndPage(page);
+                    String text = stripper.getText(document);
+                    excerpts.append(text.length() > maxScanChars - scanned
+                            ? text.substring(0, (int) (maxScanChars - scanned)) : text);
+                    scanned += text.length();
+                }
+            }
+            return Math.min(scanned, maxScanChars);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private InputStream open(String key) throws IOException {
+        return s3StorageService != null
+                ? s3StorageService.openArtifact(key)
+                : artifactStorageService.openArtifact(key);
+    }
+}
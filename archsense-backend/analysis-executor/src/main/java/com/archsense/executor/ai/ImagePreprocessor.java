@@ -0,0 +1,220 @@
+package com.archsense.executor.ai;
+
+import com.archsense.common.image.ImageScaler;
+import com.archsense.executor.cache.ArtifactCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Turns an uploaded diagram into what is actually worth sending: decoded once, scaled to the largest
+// size the model uses, re-encoded compactly. Results live in the artifact cache under the original's
+// content hash, so every later analysis of the same diagram skips straight to the encoded bytes
+@Component
+public class ImagePreprocessor {
+
+    private static final Logger log = LoggerFactory.getLogger(ImagePreprocessor.class);
+    private static final String CACHE_KEY_PREFIX = "processed-image/";
+
+    // mediaType is null when the bytes are not a recognizable PNG/JPEG and the declared type has to do.
+    // source is the cache handle the buffers come from, owned by the caller, or null for heap buffers
+    record ProcessedImage(String mediaType, ByteBuffer raw, ByteBuffer base64,
+                          ImageScaler.Dimensions dimensions, Long hash, ArtifactCache.CachedArtifact source) {
+    }
+
+    private record ImageInfo(ImageScaler.Dimensions dimensions, long hash) {
+    }
+
+    private final ArtifactCache artifactCache;
+    private final boolean enabled;
+    private final String format;
+    private final float quality;
+    private final int maxEdge;
+    private final int dedupeMaxDistance;
+    private final String settingsTag;
+    private final Map<String, ImageInfo> infoCache;
+
+    private final Counter processed;
+    private final Counter reused;
+    private final Counter passedThrough;
+    private final Counter fromDerivative;
+    private final Counter duplicates;
+    private final Counter bytesSaved;
+
+    public ImagePreprocessor(ArtifactCache artifactCache,
+                             MeterRegistry meterRegistry,
+                             @Value("${ai.images.preprocess:true}") boolean enabled,
+                             @Value("${ai.images.format:png}") String format,
+                             @Value("${ai.images.quality:0.85}") float quality,
+                             @Value("${ai.images.max-edge:1568}") int maxEdge,
+                             @Value("${ai.images.dedupe-max-distance:-1}") int dedupeMaxDistance,
+                             @Value("${ai.images.info-cache-entries:2000}") int infoCacheEntries) {
+        this.artifactCache = artifactCache;
+        this.enabled = enabled;
+        this.format = "jpeg".equalsIgnoreCase(format) || "jpg".equalsIgnoreCase(format) ? "jpeg" : "png";
+        this.quality = quality;
+        this.maxEdge = Math.min(maxEdge, ImageScaler.MODEL_MAX_EDGE);
+        this.dedupeMaxDistance = dedupeMaxDistance;
+        // Part of the cache key, so changing any setting never serves images made with the old one
+        this.settingsTag = this.format + "-" + Math.round(quality * 100) + "-" + this.maxEdge;
+
+        this.infoCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ImageInfo> eldest) {
+                return size() > infoCacheEntries;
+            }
+        };
+
+        this.processed = meterRegistry.counter("archsense.image.preprocess", "result", "processed");
+        this.reused = meterRegistry.counter("archsense.image.preprocess", "result", "cached");
+        this.passedThrough = meterRegistry.counter("archsense.image.preprocess", "result", "passthrough");
+        this.fromDerivative = meterRegistry.counter("archsense.image.preprocess", "result", "derivative");
+        this.duplicates = meterRegistry.counter("archsense.image.duplicates");
+        this.bytesSaved = meterRegistry.counter("archsense.image.bytes.saved");
+
+        log.info("Image preprocessing initialized: enabled={}, format={}, quality={}, maxEdge={}, dedupeMaxDistance={}",
+                enabled, this.format, quality, this.maxEdge, dedupeMaxDistance);
+    }
+
+    ProcessedImage process(ArtifactCache.CachedArtifact original) {
+        if (!enabled) {
+            return passThrough(original);
+        }
+
+        String key = CACHE_KEY_PREFIX + original.getDigest() + "/" + settingsTag;
+        ArtifactCache.CachedArtifact result = null;
+        try {
+            boolean[] encodedNow = {false};
+            result = artifactCache.get(key, k -> {
+                encodedNow[0] = true;
+                return new ByteArrayInputStream(encode(key, original));
+            });
+            (encodedNow[0] ? processed : reused).increment();
+
+            ImageInfo info = info(key, result);
+            return new ProcessedImage(ImageScaler.sniffMediaType(result.getBytes()), result.getBytes(),
+                    result.getBase64Bytes(), info.dimensions(), info.hash(), result);
+        } catch (IOException | RuntimeException e) {
+            if (result != null) {
+                result.close();
+            }
+            // Formats ImageIO cannot decode (WebP without a plugin, say) still go out as uploaded
+            log.debug("Sending image {} unprocessed: {}", original.getDigest(), e.getMessage());
+            return passThrough(original);
+        }
+    }
+
+    // Wraps a derivative artifact-service already produced at upload time; nothing is re-encoded
+    ProcessedImage adopt(ArtifactCache.CachedArtifact derivative, String mediaType, Long hash) {
+        fromDerivative.increment();
+        try {
+            ImageInfo info = hash != null
+                    ? new ImageInfo(ImageScaler.readDimensions(derivative.getBytes()), hash)
+                    : info(CACHE_KEY_PREFIX + derivative.getDigest() + "/derivative", derivative);
+            String type = mediaType != null ? mediaType : ImageScaler.sniffMediaType(derivative.getBytes());
+            return new ProcessedImage(type, derivative.getBytes(), derivative.getBase64Bytes(), info.dimensions(), info.hash(),
+                    derivative.retain());
+        } catch (IOException | RuntimeException e) {
+            log.debug("Could not read derivative {}: {}", derivative.getDigest(), e.getMessage());
+            return new ProcessedImage(mediaType, derivative.getBytes(), derivative.getBase64Bytes(),
+                    ImageScaler.readDimensions(derivative.getBytes()), null, derivative.retain());
+        }
+    }
+
+    // Re-encodes an already processed image at a smaller size, for the token budget's compaction steps
+    ProcessedImage downscale(ByteBuffer raw, int targetEdge) throws IOException {
+        BufferedImage scaled = ImageScaler.resize(ImageScaler.decode(raw), targetEdge, ImageScaler.MODEL_MAX_PIXELS);
+        byte[] encoded = encode(scaled);
+        return new ProcessedImage(mediaType(), ByteBuffer.wrap(encoded),
+                ByteBuffer.wrap(Base64.getEncoder().encode(encoded)),
+                new ImageScaler.Dimensions(scaled.getWidth(), scaled.getHeight()), null, null);
+    }
+
+    // Index of an image already kept for the same analysis that this one perceptually duplicates, or -1
+    int duplicateOf(Long hash, List<Long> keptHashes) {
+        if (hash == null || dedupeMaxDistance < 0) {
+            return -1;
+        }
+        for (int i = 0; i < keptHashes.size(); i++) {
+            Long kept = keptHashes.get(i);
+            if (kept != null && Long.bitCount(hash ^ kept) <= dedupeMaxDistance) {
+                duplicates.increment();
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private byte[] encode(String key, ArtifactCache.CachedArtifact original) throws IOException {
+        long startedAt = System.currentTimeMillis();
+        BufferedImage image = ImageScaler.resize(ImageScaler.decode(original.getBytes()), maxEdge, ImageScaler.MODEL_MAX_PIXELS);
+        byte[] encoded = encode(image);
+
+        // A small, already compact upload can come out larger; then the original bytes are kept
+        if (encoded.length >= original.getSize()
+                && image.getWidth() == readWidth(original) && ImageScaler.sniffMediaType(original.getBytes()) != null) {
+            ByteBuffer bytes = original.getBytes();
+            encoded = new byte[bytes.remaining()];
+            bytes.get(encoded);
+        }
+
+        ImageScaler.Dimensions dimensions = new ImageScaler.Dimensions(image.getWidth(), image.getHeight());
+        ImageInfo info = new ImageInfo(dimensions, ImageScaler.differenceHash(image));
+        synchronized (infoCache) {
+            infoCache.put(key, info);
+        }
+
+        bytesSaved.increment(Math.max(0, original.getSize() - encoded.length));
+        log.info("Preprocessed image {}: {} -> {} bytes at {}x{} in {}ms", original.getDigest(), original.getSize(),
+                encoded.length, dimensions.width(), dimensions.height(), System.currentTimeMillis() - startedAt);
+        return encoded;
+    }
+
+    private int readWidth(ArtifactCache.CachedArtifact original) {
+        ImageScaler.Dimensions dimensions = ImageScaler.readDimensions(original.getBytes());
+        return dimensions != null ? dimensions.width() : -1;
+    }
+
+    private byte[] encode(BufferedImage image) throws IOException {
+        return "png".equals(format) ? ImageScaler.encodePng(image) : ImageScaler.encodeJpeg(image, quality);
+    }
+
+    private String mediaType() {
+        return "png".equals(format) ? "image/png" : "image/jpeg";
+    }
+
+    // The hash is only kept in memory; once evicted it is recomputed from the small processed image
+    private ImageInfo info(String key, ArtifactCache.CachedArtifact result) throws IOException {
+        synchronized (infoCache) {
+            ImageInfo info = infoCache.get(key);
+            if (info != null) {
+                return info;
+            }
+        }
+
+        BufferedImage image = ImageScaler.decode(result.getBytes());
+        ImageInfo info = new ImageInfo(new ImageScaler.Dimensions(image.getWidth(), image.getHeight()),
+                ImageScaler.differenceHash(image));
+        synchronized (infoCache) {
+            infoCache.put(key, info);
+        }
+        return info;
+    }
+
+    private ProcessedImage passThrough(ArtifactCache.CachedArtifact original) {
+        passedThrough.increment();
+        return new ProcessedImage(ImageScaler.sniffMediaType(original.getBytes()), original.getBytes(), original.getBase64Bytes(),
+                ImageScaler.readDimensions(original.getBytes()), null, original.retain());
+    }
+}
@@ -0,0 +1,252 @@
+package com.archsense.executor.ai;
+
+import com.archsense.executor.evolution.IssueFingerprint;
+import com.archsense.executor.model.AnalysisReport;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Reduce step of the map-reduce mode: folds the partial reports of artifact shards into one. The same
+// issue or component is usually seen by more than one shard (a shared database, say), so everything is
+// deduplicated rather than concatenated. Shard reports are never modified; they may be cache entries
+class ReportMerger {
+
+    private static final Map<String, Integer> SEVERITY_RANK = Map.of("HIGH", 3, "MEDIUM", 2, "LOW", 1);
+
+    // Fingerprint similarity above which two issues are taken to be one finding; stricter than the
+    // evolution diff, since wrongly merging two real issues within one report loses one of them
+    private static final double ISSUE_SIMILARITY = 0.6;
+    // Jaccard similarity of the titles' significant words, tokenized like issue descriptions
+    private static final double RECOMMENDATION_SIMILARITY = 0.6;
+
+    AnalysisReport merge(List<AnalysisReport> parts, List<String> partLabels) {
+        AnalysisReport merged = new AnalysisReport();
+        merged.setSummary(mergeSummaries(parts, partLabels));
+        merged.setArchitecturePattern(mostCommonPattern(parts));
+
+        List<String> components = new ArrayList<>();
+        List<String> connections = new ArrayList<>();
+        List<AnalysisReport.Issue> issues = new ArrayList<>();
+        List<AnalysisReport.Recommendation> recommendations = new ArrayList<>();
+        for (AnalysisReport part : parts) {
+            components.addAll(nonNull(part.getComponents()));
+            connections.addAll(nonNull(part.getConnections()));
+            issues.addAll(nonNull(part.getIssues()));
+            recommendations.addAll(nonNull(part.getRecommendations()));
+        }
+        merged.setComponents(distinct(components));
+        merged.setConnections(distinct(connections));
+        merged.setIssues(mergeIssues(issues));
+        merged.setRecommendations(mergeRecommendations(recommendations));
+        merged.setCostEstimation(mergeCosts(parts));
+        merged.setTokenUsage(mergeUsage(parts));
+        return merged;
+    }
+
+    private String mergeSummaries(List<AnalysisReport> parts, List<String> partLabels) {
+        if (parts.size() == 1) {
+            return parts.get(0).getSummary();
+        }
+        StringBuilder summary = new StringBuilder();
+        summary.append("Merged from ").append(parts.size()).append(" partial analyses.\n\n");
+        for (int i = 0; i < parts.size(); i++) {
+            summary.append("Part ").append(i + 1).append(" (").append(partLabels.get(i)).append("): ")
+                    .append(parts.get(i).getSummary()).append("\n\n");
+        }
+        return summary.toString().trim();
+    }
+
+    private String mostCommonPattern(List<AnalysisReport> parts) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (AnalysisReport part : parts) {
+            String pattern = part.getArchitecturePattern();
+            if (pattern != null && !pattern.isBlank() && !"Unknown".equalsIgnoreCase(pattern)) {
+                counts.merge(pattern, 1, Integer::sum);
+            }
+        }
+        return counts.entrySet().stream()
+                .max(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .orElse("Unknown");
+    }
+
+    private List<AnalysisReport.Issue> mergeIssues(List<AnalysisReport.Issue> issues) {
+        List<AnalysisReport.Issue> merged = new ArrayList<>();
+        for (AnalysisReport.Issue issue : issues) {
+            AnalysisReport.Issue existing = findSimilar(issue, merged);
+            if (existing == null) {
+                merged.add(copy(issue));
+                continue;
+            }
+            // Keep the worst severity and the more confident wording, and say where else it was seen
+            if (rank(issue.getSeverity()) > rank(existing.getSeverity())) {
+                existing.setSeverity(issue.getSeverity());
+            }
+            if (confidence(issue) > confidence(existing)) {
+                existing.setDescription(issue.getDescription());
+                existing.setConfidenceScore(issue.getConfidenceScore());
+            }
+            existing.setLocation(joinDistinct(existing.getLocation(), issue.getLocation()));
+        }
+        merged.sort((a, b) -> rank(b.getSeverity()) - rank(a.getSeverity()));
+        return merged;
+    }
+
+    private AnalysisReport.Issue findSimilar(AnalysisReport.Issue issue, List<AnalysisReport.Issue> candidates) {
+        IssueFingerprint fingerprint = IssueFingerprint.of(issue);
+        for (AnalysisReport.Issue candidate : candidates) {
+            if (fingerprint.similarity(IssueFingerprint.of(candidate)) >= ISSUE_SIMILARITY) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private List<AnalysisReport.Recommendation> mergeRecommendations(List<AnalysisReport.Recommendation> recommendations) {
+        List<AnalysisReport.Recommendation> merged = new ArrayList<>();
+        List<Set<String>> mergedTitles = new ArrayList<>();
+        outer:
+        for (AnalysisReport.Recommendation recommendation : recommendations) {
+            Set<String> title = IssueFingerprint.words(recommendation.getTitle());
+            for (int i = 0; i < merged.size(); i++) {
+                if (IssueFingerprint.jaccard(title, mergedTitles.get(i)) >= RECOMMENDATION_SIMILARITY) {
+                    AnalysisReport.Recommendation existing = merged.get(i);
+                    if (rank(recommendation.getPriority()) > rank(existing.getPriority())) {
+                        existing.setPriority(recommendation.getPriority());
+                    }
+                    continue outer;
+                }
+            }
+            merged.add(new AnalysisReport.Recommendation(recommendation.getPriority(), recommendation.getTitle(),
+                    recommendation.getDescription(), recommendation.getBenefit()));
+            mergedTitles.add(title);
+        }
+        merged.sort((a, b) -> rank(b.getPriority()) - rank(a.getPriority()));
+        return merged;
+    }
+
+    // Each shard prices only the components it saw. A component seen by several shards is one component,
+    // so it is counted once at its highest estimate; shards without a breakdown add their total as is
+    private AnalysisReport.CostEstimation mergeCosts(List<AnalysisReport> parts) {
+        Map<String, AnalysisReport.ComponentCost> components = new LinkedHashMap<>();
+        List<String> optimizations = new ArrayList<>();
+        double unitemized = 0;
+        String tier = null;
+        boolean any = false;
+
+        for (AnalysisReport part : parts) {
+            AnalysisReport.CostEstimation cost = part.getCostEstimation();
+            if (cost == null) {
+                continue;
+            }
+            any = true;
+            List<AnalysisReport.ComponentCost> breakdown = nonNull(cost.getComponentCosts());
+            if (breakdown.isEmpty() && cost.getMonthlyEstimateUsd() != null) {
+                unitemized += cost.getMonthlyEstimateUsd();
+            }
+            for (AnalysisReport.ComponentCost component : breakdown) {
+                components.merge(normalize(component.getComponentName()),
+                        new AnalysisReport.ComponentCost(component.getComponentName(), component.getServiceType(),
+                                component.getEstimatedMonthlyCost()),
+                        (a, b) -> amount(b) > amount(a) ? b : a);
+            }
+            optimizations.addAll(nonNull(cost.getCostOptimizations()));
+            if (rank(cost.getCostTier()) > rank(tier)) {
+                tier = cost.getCostTier();
+            }
+        }
+        if (!any) {
+            return null;
+        }
+
+        double total = unitemized;
+        for (AnalysisReport.ComponentCost component : components.values()) {
+            total += amount(component);
+        }
+        AnalysisReport.CostEstimation merged = new AnalysisReport.CostEstimation();
+        merged.setMonthlyEstimateUsd(Math.round(total * 100) / 100.0);
+        merged.setComponentCosts(new ArrayList<>(components.values()));
+        merged.setCostTier(tier);
+        merged.setCostOptimizations(distinct(optimizations));
+        return merged;
+    }
+
+    // Token counts add up; durations do not, the caller sets the wall-clock time of the whole run
+    private AnalysisReport.TokenUsage mergeUsage(List<AnalysisReport> parts) {
+        AnalysisReport.TokenUsage merged = null;
+        for (AnalysisReport part : parts) {
+            AnalysisReport.TokenUsage usage = part.getTokenUsage();
+            if (usage == null) {
+                continue;
+            }
+            if (merged == null) {
+                merged = new AnalysisReport.TokenUsage();
+                merged.setModel(usage.getModel());
+            }
+            merged.setInputTokens(add(merged.getInputTokens(), usage.getInputTokens()));
+            merged.setOutputTokens(add(merged.getOutputTokens(), usage.getOutputTokens()));
+            merged.setCacheCreationInputTokens(add(merged.getCacheCreationInputTokens(), usage.getCacheCreationInputTokens()));
+            merged.setCacheReadInputTokens(add(merged.getCacheReadInputTokens(), usage.getCacheReadInputTokens()));
+            if (usage.getTimeToFirstTokenMs() != null && (merged.getTimeToFirstTokenMs() == null
+                    || usage.getTimeToFirstTokenMs() < merged.getTimeToFirstTokenMs())) {
+                merged.setTimeToFirstTokenMs(usage.getTimeToFirstTokenMs());
+            }
+        }
+        return merged;
+    }
+
+    private AnalysisReport.Issue copy(AnalysisReport.Issue issue) {
+        AnalysisReport.Issue copy = new AnalysisReport.Issue(issue.getSeverity(), issue.getCategory(),
+                issue.getDescription(), issue.getLocation());
+        copy.setConfidenceScore(issue.getConfidenceScore());
+        return copy;
+    }
+
+    private List<String> distinct(List<String> values) {
+        Map<String, String> byKey = new LinkedHashMap<>();
+        for (String value : values) {
+            if (value != null && !value.isBlank()) {
+                byKey.putIfAbsent(normalize(value), value);
+            }
+        }
+        return new ArrayList<>(byKey.values());
+    }
+
+    private String joinDistinct(String first, String second) {
+        if (first == null || first.isBlank()) {
+            return second;
+        }
+        if (second == null || second.isBlank() || normalize(first).contains(normalize(second))) {
+            return first;
+        }
+        return first + "; " + second;
+    }
+
+
+    private String normalize(String value) {
+        return value == null ? "" : value.toLowerCase().replaceAll("[^a-z0-9>]+", " ").trim();
+    }
+
+    private int rank(String severity) {
+        return severity == null ? 0 : SEVERITY_RANK.getOrDefault(severity.toUpperCase(), 0);
+    }
+
+    private double confidence(AnalysisReport.Issue issue) {
+        return issue.getConfidenceScore() != null ? issue.getConfidenceScore() : 0;
+    }
+
+    private double amount(AnalysisReport.ComponentCost component) {
+        return component.getEstimatedMonthlyCost() != null ? component.getEstimatedMonthlyCost() : 0;
+    }
+
+    private Integer add(Integer a, Integer b) {
+        return a == null ? b : b == null ? a : a + b;
+    }
+
+    private <T> List<T> nonNull(List<T> list) {
+        return list != null ? list : List.of();
+    }
+}
@@ -0,0 +1,114 @@
+package com.archsense.executor.ai;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Tokenizes the report JSON as it streams in so issues can be reported as soon as each one is complete
+class StreamingReportParser {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingReportParser.class);
+
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final List<Map<String, String>> issues = new ArrayList<>();
+
+    private boolean started;
+    private boolean finished;
+    private boolean failed;
+    private int depth;
+    private String rootField;
+    private boolean inIssues;
+    private Map<String, String> currentIssue;
+    private String issueField;
+
+    StreamingReportParser(JsonFactory jsonFactory) throws IOException {
+        this.parser = jsonFactory.createNonBlockingByteArrayParser();
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    void feed(String chunk) {
+        if (finished || failed) {
+            return;
+        }
+
+        // Skip anything before the root object, e.g. a ```json fence
+        if (!started) {
+            int start = chunk.indexOf('{');
+            if (start < 0) {
+                return;
+            }
+            chunk = chunk.substring(start);
+            started = true;
+        }
+
+        byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+        try {
+            feeder.feedInput(bytes, 0, bytes.length);
+            drain();
+        } catch (IOException e) {
+            // Progress is best-effort; the full text is still parsed once the stream ends
+            log.debug("Incremental report parsing stopped: {}", e.getMessage());
+            failed = true;
+        }
+    }
+
+    int getIssueCount() {
+        return issues.size();
+    }
+
+    List<Map<String, String>> getIssues() {
+        return issues;
+    }
+
+    private void drain() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            switch (token) {
+                case START_OBJECT, START_ARRAY -> {
+                    depth++;
+                    if (token == JsonToken.START_ARRAY && depth == 2 && "issues".equals(rootField)) {
+                        inIssues = true;
+                    } else if (token == JsonToken.START_OBJECT && inIssues && depth == 3) {
+                        currentIssue = new LinkedHashMap<>();
+                    }
+                }
+                case END_OBJECT, END_ARRAY -> {
+                    if (token == JsonToken.END_OBJECT && currentIssue != null && depth == 3) {
+                        issues.add(currentIssue);
+                        currentIssue = null;
+                    } else if (token == JsonToken.END_ARRAY && inIssues && depth == 2) {
+                        inIssues = false;
+                    }
+                    depth--;
+                    if (depth == 0) {
+                        finished = true;
+                        return;
+                    }
+                }
+                case FIELD_NAME -> {
+                    if (depth == 1) {
+                        rootField = parser.currentName();
+                    } else if (currentIssue != null && depth == 3) {
+                        issueField = parser.currentName();
+                    }
+                }
+                default -> {
+                    if (currentIssue != null && depth == 3 && issueField != null) {
+                        currentIssue.put(issueField, parser.getText());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.archsense.executor.ai;
+
+import com.archsense.common.image.ImageScaler;
+
+// Rough, deliberately pessimistic token counts for a request before it is sent, so oversized
+// inputs can be compacted up front instead of being discovered as a truncated response
+class TokenBudgetEstimator {
+
+    // JSON and diagram labels tokenize denser than prose, so assume 3 chars per token rather than 4
+    private static final double CHARS_PER_TOKEN = 3.0;
+
+    // Images are tokenized at roughly width * height / 750 after the API's own resize
+    private static final double PIXELS_PER_TOKEN = 750;
+
+    // Used when an image's dimensions cannot be read; the most a single image can cost
+    static final int UNKNOWN_IMAGE_TOKENS = (int) Math.ceil(ImageScaler.MODEL_MAX_PIXELS / PIXELS_PER_TOKEN);
+
+    record Estimate(int systemTokens, int promptTokens, int imageTokens) {
+        int total() {
+            return systemTokens + promptTokens + imageTokens;
+        }
+    }
+
+    private final int inputBudget;
+
+    TokenBudgetEstimator(int contextWindow, int maxTokens, int inputBudget) {
+        // Whatever is configured, input and the reserved output must fit in the context window together
+        this.inputBudget = Math.min(inputBudget, contextWindow - maxTokens);
+    }
+
+    int getInputBudget() {
+        return inputBudget;
+    }
+
+    boolean fits(Estimate estimate) {
+        return estimate.total() <= inputBudget;
+    }
+
+    int estimateText(String text) {
+        return text == null ? 0 : estimateChars(text.length());
+    }
+
+    int estimateChars(int chars) {
+        return (int) Math.ceil(chars / CHARS_PER_TOKEN);
+    }
+
+    int estimateImage(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return UNKNOWN_IMAGE_TOKENS;
+        }
+        double scale = Math.min(1.0, Math.min(
+                (double) ImageScaler.MODEL_MAX_EDGE / Math.max(width, height),
+                Math.sqrt(ImageScaler.MODEL_MAX_PIXELS / ((double) width * height))));
+        return (int) Math.ceil(width * scale * height * scale / PIXELS_PER_TOKEN);
+    }
+
+    // Leaves room for the closing braces of the JSON; the model only sees this number, not max_tokens
+    static int responseTokenLimit(int maxTokens) {
+        return maxTokens - Math.max(200, maxTokens / 20);
+    }
+}
@@ -0,0 +1,14 @@
+package com.archsense.executor.ai;
+
+import java.io.IOException;
+
+// No token capacity came free in time, or the wait was interrupted. Nothing was sent to the API, so the
+// call guard passes it through without counting it for or against the circuit
+class TokenCapacityException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    TokenCapacityException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,221 @@
+package com.archsense.executor.ai;
+
+import com.archsense.executor.model.AnalysisReport;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Keeps all executor replicas together under the organization's input and output tokens-per-minute
+// limits. Two token buckets live in Redis and are refilled and charged by one script, so a reservation
+// is atomic across replicas. Each call reserves its estimated input and its full max_tokens up front
+// (which is how the API itself counts output against the limit) and settles to the real usage afterwards.
+// Within a replica, callers wait in a local queue where interactive analyses go ahead of batch ones and
+// only the head of the queue asks Redis, so waiting costs one round trip per replica rather than per call
+@Component
+@ConditionalOnProperty(name = "ai.provider", havingValue = "anthropic")
+public class TokenRateGovernor {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenRateGovernor.class);
+    // Hash-tagged so both buckets land in the same slot on a Redis cluster
+    private static final List<String> BUCKET_KEYS = List.of("token_bucket:{tpm}:input", "token_bucket:{tpm}:output");
+
+    // Refills both buckets to now, then charges them if both can pay (or unconditionally when settling).
+    // Returns 0 when charged, otherwise how long until both could pay. TIME keeps replicas on one clock
+    private static final DefaultRedisScript<Long> RESERVE_SCRIPT = new DefaultRedisScript<>("""
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local force = ARGV[5] == '1'
+            local levels = {}
+            local wait = 0
+            for i = 1, 2 do
+              local limit = tonumber(ARGV[i])
+              local cost = tonumber(ARGV[i + 2])
+              local state = redis.call('HMGET', KEYS[i], 'tokens', 'ts')
+              local tokens = tonumber(state[1]) or limit
+              local ts = tonumber(state[2]) or now
+              tokens = math.min(limit, tokens + math.max(0, now - ts) * limit / 60000)
+              if not force and tokens < cost then
+                wait = math.max(wait, math.ceil((cost - tokens) * 60000 / limit))
+              end
+              levels[i] = tokens
+            end
+            for i = 1, 2 do
+              local tokens = levels[i]
+              if wait == 0 then
+                tokens = math.min(tonumber(ARGV[i]), tokens - tonumber(ARGV[i + 2]))
+              end
+              redis.call('HSET', KEYS[i], 'tokens', tokens, 'ts', now)
+              redis.call('PEXPIRE', KEYS[i], 120000)
+            end
+            return wait
+            """, Long.class);
+
+    // What one call holds; settle() gives back what it did not use
+    public record Reservation(long inputTokens, long outputTokens) {
+        static final Reservation NONE = new Reservation(0, 0);
+    }
+
+    private record Waiter(int priority, long sequence) {
+    }
+
+    private final boolean enabled;
+    private final long inputTokensPerMinute;
+    private final long outputTokensPerMinute;
+    private final long maxWaitMs;
+    private final long pollIntervalMs;
+    private final MeterRegistry meterRegistry;
+    private final Counter timeouts;
+    private final Counter unavailable;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    // Interactive (0) before batch (1), then arrival order; guarded by lock
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>(
+            Comparator.comparingInt(Waiter::priority).thenComparingLong(Waiter::sequence));
+
+    @Autowired(required = false)
+    private StringRedisTemplate redisTemplate;
+
+    public TokenRateGovernor(MeterRegistry meterRegistry,
+                             @Value("${ai.anthropic.rate-limit.enabled:false}") boolean enabled,
+                             @Value("${ai.anthropic.rate-limit.input-tokens-per-minute:400000}") long inputTokensPerMinute,
+                             @Value("${ai.anthropic.rate-limit.output-tokens-per-minute:80000}") long outputTokensPerMinute,
+                             @Value("${ai.anthropic.rate-limit.max-wait-ms:120000}") long maxWaitMs,
+                             @Value("${ai.anthropic.rate-limit.poll-interval-ms:1000}") long pollIntervalMs) {
+        this.enabled = enabled;
+        this.inputTokensPerMinute = Math.max(1, inputTokensPerMinute);
+        this.outputTokensPerMinute = Math.max(1, outputTokensPerMinute);
+        this.maxWaitMs = maxWaitMs;
+        this.pollIntervalMs = Math.max(10, pollIntervalMs);
+        this.meterRegistry = meterRegistry;
+        this.timeouts = meterRegistry.counter("archsense.ratelimit.timeouts");
+        this.unavailable = meterRegistry.counter("archsense.ratelimit.unavailable");
+
+        log.info("Token rate governor initialized: enabled={}, inputTpm={}, outputTpm={}, maxWaitMs={}",
+                enabled, this.inputTokensPerMinute, this.outputTokensPerMinute, maxWaitMs);
+    }
+
+    @PostConstruct
+    public void registerMetrics() {
+        meterRegistry.gauge("archsense.ratelimit.waiting", this, TokenRateGovernor::waiting);
+    }
+
+    public Reservation reserve(long inputTokens, long outputTokens, boolean interactive) throws IOException {
+        if (!enabled || redisTemplate == null) {
+            return Reservation.NONE;
+        }
+        // A call bigger than a whole minute's budget could never be granted; let it through at the cap
+        Reservation reservation = new Reservation(Math.min(inputTokens, inputTokensPerMinute),
+                Math.min(outputTokens, outputTokensPerMinute));
+        Waiter waiter = new Waiter(interactive ? 0 : 1, sequence.incrementAndGet());
+        long startedAt = System.nanoTime();
+        long deadline = System.currentTimeMillis() + maxWaitMs;
+
+        lock.lock();
+        try {
+            waiters.add(waiter);
+            changed.signalAll();
+            while (true) {
+                long waitMs = pollIntervalMs;
+                if (waiter.equals(waiters.peek())) {
+                    // Redis is asked without the lock, so new arrivals can still queue up meanwhile
+                    lock.unlock();
+                    Long needed;
+                    try {
+                        needed = charge(reservation, false);
+                    } finally {
+                        lock.lock();
+                    }
+                    if (needed == null || needed == 0) {
+                        leave(waiter);
+                        meterRegistry.timer("archsense.ratelimit.wait", "priority", interactive ? "interactive" : "batch")
+                                .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                        return needed == null ? Reservation.NONE : reservation;
+                    }
+                    // Other replicas spend and settlements refund in the meantime, so look again before long
+                    waitMs = Math.min(needed, pollIntervalMs);
+                }
+
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    leave(waiter);
+                    timeouts.increment();
+                    throw new TokenCapacityException("No token capacity for this analysis within " + maxWaitMs + "ms");
+                }
+                changed.await(Math.min(waitMs, remaining), TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            leave(waiter);
+            Thread.currentThread().interrupt();
+            throw new TokenCapacityException("Interrupted while waiting for token capacity");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // usage is null when the call failed: nothing was generated, but the input may well have been counted
+    public void settle(Reservation reservation, AnalysisReport.TokenUsage usage) {
+        if (reservation.equals(Reservation.NONE)) {
+            return;
+        }
+        long inputDelta = 0;
+        long outputDelta = -reservation.outputTokens();
+        if (usage != null) {
+            // Cache reads do not count against the input limit, cache writes do
+            inputDelta = value(usage.getInputTokens()) + value(usage.getCacheCreationInputTokens()) - reservation.inputTokens();
+            outputDelta += value(usage.getOutputTokens());
+        }
+        if (inputDelta != 0 || outputDelta != 0) {
+            charge(new Reservation(inputDelta, outputDelta), true);
+        }
+    }
+
+    private Long charge(Reservation cost, boolean force) {
+        try {
+            return redisTemplate.execute(RESERVE_SCRIPT, BUCKET_KEYS,
+                    String.valueOf(inputTokensPerMinute), String.valueOf(outputTokensPerMinute),
+                    String.valueOf(cost.inputTokens()), String.valueOf(cost.outputTokens()), force ? "1" : "0");
+        } catch (Exception e) {
+            // The governor only smooths load; without Redis, calls go out and the retry policy absorbs any 429
+            unavailable.increment();
+            log.warn("Token rate governor unavailable, not limiting this call: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void leave(Waiter waiter) {
+        waiters.remove(waiter);
+        changed.signalAll();
+    }
+
+    private int waiting() {
+        lock.lock();
+        try {
+            return waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long value(Integer tokens) {
+        return tokens != null ? tokens : 0;
+    }
+}
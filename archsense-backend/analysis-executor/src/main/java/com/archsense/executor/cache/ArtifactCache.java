@@ -0,0 +1,429 @@
+package com.archsense.executor.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+@Component
+public class ArtifactCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ArtifactCache.class);
+    // Each process spills into its own subdirectory with this prefix and only ever deletes those, so the
+    // configured directory may be shared with other replicas and anything else
+    private static final String SPILL_PREFIX = "archsense-spill-";
+    private static final String LOCK_FILE = ".lock";
+    // Java 21 has no public way to unmap a buffer before it is garbage collected; without this, an evicted
+    // spill keeps its disk space until a GC happens to collect the mapping
+    private static final MethodHandle INVOKE_CLEANER = findCleaner();
+
+    @FunctionalInterface
+    public interface ArtifactLoader {
+        InputStream open(String s3Key) throws IOException;
+    }
+
+    private final Path spillDirectory;
+    // Held while this process runs; a spill directory whose lock is free belongs to a process that is gone
+    private final FileChannel spillLock;
+    private final boolean enabled;
+    private final long maxBytes;
+    private final AtomicLong fileCounter = new AtomicLong();
+
+    // Access-ordered for LRU eviction; guarded by its own monitor
+    private final LinkedHashMap<String, Spill> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<Spill>> inFlight = new ConcurrentHashMap<>();
+    private long cachedBytes;
+
+    private final MeterRegistry meterRegistry;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public ArtifactCache(MeterRegistry meterRegistry,
+                         @Value("${executor.artifact-cache.enabled:true}") boolean enabled,
+                         @Value("${executor.artifact-cache.directory:${java.io.tmpdir}/archsense-artifact-cache}") String directory,
+                         @Value("${executor.artifact-cache.max-bytes:536870912}") long maxBytes) throws IOException {
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+        Path root = Files.createDirectories(Paths.get(directory));
+
+        // Spill files of a process that stopped are not indexed by anyone, so they are removed before starting
+        deleteAbandonedSpillDirectories(root);
+        this.spillDirectory = Files.createTempDirectory(root, SPILL_PREFIX);
+        this.spillLock = lockSpillDirectory(spillDirectory);
+
+        this.meterRegistry = meterRegistry;
+        this.hits = meterRegistry.counter("archsense.artifact.cache", "result", "hit");
+        this.misses = meterRegistry.counter("archsense.artifact.cache", "result", "miss");
+        this.evictions = meterRegistry.counter("archsense.artifact.cache.evictions");
+
+        log.info("Artifact cache initialized: enabled={}, directory={}, maxBytes={}", enabled, spillDirectory, maxBytes);
+    }
+
+    @PostConstruct
+    public void registerMetrics() {
+        meterRegistry.gauge("archsense.artifact.cache.bytes", this, ArtifactCache::getCachedBytes);
+    }
+
+    // The caller must close the returned handle once nothing reads its buffers any more
+    public CachedArtifact get(String s3Key, ArtifactLoader loader) throws IOException {
+        if (!enabled) {
+            Spill spill = load(s3Key, loader);
+            spill.deleteFiles();
+            return new CachedArtifact(spill);
+        }
+
+        synchronized (entries) {
+            Spill cached = entries.get(s3Key);
+            if (cached != null) {
+                hits.increment();
+                // Still in the map, so the cache's own reference keeps it alive
+                cached.retain();
+                return new CachedArtifact(cached);
+            }
+        }
+
+        // Concurrent analyses of the same diagram share one download
+        CompletableFuture<Spill> loading = new CompletableFuture<>();
+        CompletableFuture<Spill> existing = inFlight.putIfAbsent(s3Key, loading);
+        if (existing != null) {
+            Spill loaded = awaitLoad(existing);
+            // Evicted again before this caller got to it: load it anew
+            return loaded.retain() ? new CachedArtifact(loaded) : get(s3Key, loader);
+        }
+
+        misses.increment();
+        try {
+            Spill spill = load(s3Key, loader);
+            // The load's reference becomes the cache's; the caller's handle takes its own before admission
+            spill.retain();
+            CachedArtifact artifact = new CachedArtifact(spill);
+            admit(s3Key, spill);
+            loading.complete(spill);
+            return artifact;
+        } catch (IOException | RuntimeException e) {
+            loading.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(s3Key, loading);
+        }
+    }
+
+    public long getCachedBytes() {
+        synchronized (entries) {
+            return cachedBytes;
+        }
+    }
+
+    private Spill load(String s3Key, ArtifactLoader loader) throws IOException {
+        long id = fileCounter.incrementAndGet();
+        Path rawFile = spillDirectory.resolve("artifact-" + id + ".bin");
+        Path base64File = spillDirectory.resolve("artifact-" + id + ".b64");
+
+        MessageDigest digest = sha256();
+        Spill artifact;
+        try {
+            try (InputStream in = new DigestInputStream(loader.open(s3Key), digest)) {
+                Files.copy(in, rawFile);
+            }
+
+            try (InputStream in = Files.newInputStream(rawFile);
+                 OutputStream out = Base64.getEncoder().wrap(Files.newOutputStream(base64File))) {
+                in.transferTo(out);
+            }
+
+            artifact = new Spill(rawFile, base64File, map(rawFile), map(base64File),
+                    HexFormat.of().formatHex(digest.digest()));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(rawFile);
+            Files.deleteIfExists(base64File);
+            throw e;
+        }
+        log.debug("Loaded artifact {} into cache: {} bytes, digest {}", s3Key, artifact.raw.capacity(), artifact.digest);
+        return artifact;
+    }
+
+    private void admit(String s3Key, Spill artifact) {
+        if (artifact.footprint() > maxBytes) {
+            // Too large to keep; only the caller's handle holds it from here on
+            log.warn("Artifact {} ({} bytes) exceeds cache capacity, not caching", s3Key, artifact.footprint());
+            artifact.evict();
+            return;
+        }
+
+        synchronized (entries) {
+            Spill previous = entries.put(s3Key, artifact);
+            if (previous != null) {
+                cachedBytes -= previous.footprint();
+                previous.evict();
+            }
+            cachedBytes += artifact.footprint();
+
+            Iterator<Map.Entry<String, Spill>> iterator = entries.entrySet().iterator();
+            while (cachedBytes > maxBytes && iterator.hasNext()) {
+                Map.Entry<String, Spill> eldest = iterator.next();
+                if (eldest.getValue() == artifact) {
+                    continue;
+                }
+                iterator.remove();
+                cachedBytes -= eldest.getValue().footprint();
+                eldest.getValue().evict();
+                evictions.increment();
+                log.debug("Evicted artifact {} from cache", eldest.getKey());
+            }
+        }
+    }
+
+    private Spill awaitLoad(CompletableFuture<Spill> loading) throws IOException {
+        try {
+            return loading.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw e;
+        }
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static FileChannel lockSpillDirectory(Path spillDirectory) throws IOException {
+        Path lockFile = spillDirectory.resolve(LOCK_FILE);
+        FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        // Another replica sweeping at this moment may have taken the directory for abandoned before it was locked
+        if (!tryLock(channel) || !Files.exists(lockFile)) {
+            channel.close();
+            throw new IOException("Spill directory " + spillDirectory + " was claimed by another process");
+        }
+        return channel;
+    }
+
+    // Spill directories whose owner no longer holds the lock; live ones and anything else are left alone
+    private static void deleteAbandonedSpillDirectories(Path root) throws IOException {
+        try (Stream<Path> paths = Files.list(root)) {
+            for (Path directory : paths.filter(path -> path.getFileName().toString().startsWith(SPILL_PREFIX)
+                    && Files.isDirectory(path)).toList()) {
+                try (FileChannel channel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.WRITE)) {
+                    if (tryLock(channel)) {
+                        log.info("Removing spill directory of a stopped process: {}", directory);
+                        deleteTree(directory);
+                    }
+                } catch (NoSuchFileException e) {
+                    // Not locked yet by the process creating it, or already removed by another one
+                }
+            }
+        }
+    }
+
+    private static boolean tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock() != null;
+        } catch (OverlappingFileLockException e) {
+            // Held by another cache in this JVM
+            return false;
+        }
+    }
+
+    private static void deleteTree(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        synchronized (entries) {
+            entries.values().forEach(Spill::evict);
+            entries.clear();
+            cachedBytes = 0;
+        }
+        deleteTree(spillDirectory);
+        spillLock.close();
+    }
+
+    private static MethodHandle findCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Cannot unmap spill files explicitly, leaving it to the garbage collector: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static void unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invokeExact((ByteBuffer) buffer);
+        } catch (Throwable e) {
+            log.debug("Failed to unmap spill file: {}", e.getMessage());
+        }
+    }
+
+    // One artifact's spill files, mapped once and shared by every handle on them. The cache holds one
+    // reference while the entry is in the map and each open handle holds another; the mapping is only
+    // released when the last one goes, since unmapping under a reader would crash it
+    private static final class Spill {
+
+        private final Path rawFile;
+        private final Path base64File;
+        private final MappedByteBuffer raw;
+        private final MappedByteBuffer base64;
+        private final String digest;
+        // Guarded by this
+        private int references = 1;
+
+        Spill(Path rawFile, Path base64File, MappedByteBuffer raw, MappedByteBuffer base64, String digest) {
+            this.rawFile = rawFile;
+            this.base64File = base64File;
+            this.raw = raw;
+            this.base64 = base64;
+            this.digest = digest;
+        }
+
+        // False once the last reference is gone and the mapping may already be released
+        synchronized boolean retain() {
+            if (references == 0) {
+                return false;
+            }
+            references++;
+            return true;
+        }
+
+        void release() {
+            synchronized (this) {
+                if (--references > 0) {
+                    return;
+                }
+            }
+            deleteFiles();
+            unmap(raw);
+            unmap(base64);
+        }
+
+        // The directory entries go at once, the mapping (and with it the disk space) with the last handle
+        void evict() {
+            deleteFiles();
+            release();
+        }
+
+        long footprint() {
+            return raw.capacity() + base64.capacity();
+        }
+
+        private void deleteFiles() {
+            try {
+                Files.deleteIfExists(rawFile);
+                Files.deleteIfExists(base64File);
+            } catch (IOException e) {
+                log.debug("Failed to delete spill files {}: {}", rawFile, e.getMessage());
+            }
+        }
+    }
+
+    // A caller's hold on cached bytes. The buffers it hands out are only valid until it is closed
+    public static class CachedArtifact implements AutoCloseable {
+
+        private final Spill spill;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private CachedArtifact(Spill spill) {
+            this.spill = spill;
+        }
+
+        public String getDigest() {
+            return spill.digest;
+        }
+
+        public long getSize() {
+            return spill.raw.capacity();
+        }
+
+        public long getBase64Length() {
+            return spill.base64.capacity();
+        }
+
+        // Each caller gets its own read-only view so positions never interfere
+        public ByteBuffer getBytes() {
+            return spill.raw.asReadOnlyBuffer();
+        }
+
+        public ByteBuffer getBase64Bytes() {
+            return spill.base64.asReadOnlyBuffer();
+        }
+
+        public String getBase64() {
+            return StandardCharsets.US_ASCII.decode(getBase64Bytes()).toString();
+        }
+
+        // A second, independently closed handle on the same bytes, for a holder that outlives this one
+        public CachedArtifact retain() {
+            if (closed.get() || !spill.retain()) {
+                throw new IllegalStateException("Cached artifact " + spill.digest + " is already closed");
+            }
+            return new CachedArtifact(spill);
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                spill.release();
+            }
+        }
+    }
+}
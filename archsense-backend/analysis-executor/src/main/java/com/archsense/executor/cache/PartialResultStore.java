@@ -0,0 +1,87 @@
+package com.archsense.executor.cache;
+
+import com.archsense.executor.model.AnalysisReport;
+import com.archsense.executor.storage.S3StorageService;
+import com.archsense.executor.storage.StorageService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+// Durable per-artifact partial reports for incremental re-analysis. Unlike ReportCache entries they do
+// not expire: the key covers model, prompt (with the project's constraints) and the artifact's content
+// digest, so an entry is either exactly reusable or never looked up again
+@Component
+public class PartialResultStore {
+
+    private static final Logger log = LoggerFactory.getLogger(PartialResultStore.class);
+
+    private final ObjectMapper objectMapper;
+    private final ReportCache reportCache;
+    private final Counter hits;
+    private final Counter misses;
+
+    @Autowired(required = false)
+    private StorageService localStorageService;
+
+    @Autowired(required = false)
+    private S3StorageService s3StorageService;
+
+    public PartialResultStore(ObjectMapper objectMapper, ReportCache reportCache, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.reportCache = reportCache;
+        this.hits = meterRegistry.counter("archsense.partial.results", "result", "hit");
+        this.misses = meterRegistry.counter("archsense.partial.results", "result", "miss");
+    }
+
+    public Optional<AnalysisReport> get(String key, String projectId) {
+        if (reportCache.isBypassed(projectId)) {
+            return Optional.empty();
+        }
+
+        try {
+            String json = s3StorageService != null
+                    ? s3StorageService.retrievePartial(key)
+                    : localStorageService != null ? localStorageService.retrievePartial(key) : null;
+            if (json == null) {
+                misses.increment();
+                return Optional.empty();
+            }
+            hits.increment();
+            return Optional.of(objectMapper.readValue(json, AnalysisReport.class));
+        } catch (Exception e) {
+            // A missing or unreadable partial only costs a fresh call for that artifact
+            log.warn("Could not read partial result {}: {}", key, e.getMessage());
+            misses.increment();
+            return Optional.empty();
+        }
+    }
+
+    public void put(String key, String projectId, AnalysisReport report) {
+        if (reportCache.isBypassed(projectId)) {
+            return;
+        }
+
+        try {
+            // Usage belongs to the run that paid for it; a reused partial must not report it again
+            ObjectNode json = objectMapper.valueToTree(report);
+            json.remove("tokenUsage");
+            json.remove("analysisId");
+            String content = objectMapper.writeValueAsString(json);
+
+            if (s3StorageService != null) {
+                s3StorageService.storePartial(key, content);
+            } else if (localStorageService != null) {
+                localStorageService.storePartial(key, content);
+            }
+        } catch (Exception e) {
+            log.warn("Could not store partial result {}: {}", key, e.getMessage());
+        }
+    }
+}
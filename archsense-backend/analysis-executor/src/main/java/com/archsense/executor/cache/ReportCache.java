@@ -0,0 +1,204 @@
+package com.archsense.executor.cache;
+
+import com.archsense.executor.model.AnalysisReport;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+@Component
+public class ReportCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ReportCache.class);
+    private static final String SHARED_KEY_PREFIX = "report_cache:";
+
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final boolean sharedEnabled;
+    private final Duration ttl;
+    private final Set<String> bypassProjectIds;
+    private final Map<String, CachedReport> localCache;
+
+    private final Counter localHits;
+    private final Counter sharedHits;
+    private final Counter misses;
+    private final Counter bypasses;
+
+    @Autowired(required = false)
+    private StringRedisTemplate redisTemplate;
+
+    public ReportCache(ObjectMapper objectMapper,
+                       MeterRegistry meterRegistry,
+                       @Value("${ai.cache.enabled:true}") boolean enabled,
+                       @Value("${ai.cache.local.max-entries:500}") int maxEntries,
+                       @Value("${ai.cache.shared.enabled:false}") boolean sharedEnabled,
+                       @Value("${ai.cache.ttl-minutes:1440}") long ttlMinutes,
+                       @Value("${ai.cache.bypass-project-ids:}") List<String> bypassProjectIds) {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.sharedEnabled = sharedEnabled;
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+        this.bypassProjectIds = new HashSet<>(bypassProjectIds);
+
+        // Access-ordered LinkedHashMap gives LRU eviction once maxEntries is reached
+        this.localCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedReport> eldest) {
+                return size() > maxEntries;
+            }
+        };
+
+        this.localHits = meterRegistry.counter("archsense.report.cache", "result", "hit", "tier", "local");
+        this.sharedHits = meterRegistry.counter("archsense.report.cache", "result", "hit", "tier", "shared");
+        this.misses = meterRegistry.counter("archsense.report.cache", "result", "miss", "tier", "none");
+        this.bypasses = meterRegistry.counter("archsense.report.cache", "result", "bypass", "tier", "none");
+        meterRegistry.gauge("archsense.report.cache.size", localCache, this::localSize);
+
+        log.info("Report cache initialized: enabled={}, maxEntries={}, shared={}, ttl={}min, bypassProjects={}",
+                enabled, maxEntries, sharedEnabled, ttlMinutes, this.bypassProjectIds.size());
+    }
+
+    public String buildKey(String model, String prompt, List<String> artifactDigests) {
+        MessageDigest digest = sha256();
+        digest.update(model.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(prompt.getBytes(StandardCharsets.UTF_8));
+        for (String artifactDigest : artifactDigests) {
+            digest.update((byte) 0);
+            digest.update(artifactDigest.getBytes(StandardCharsets.UTF_8));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public boolean isBypassed(String projectId) {
+        return !enabled || (projectId != null && bypassProjectIds.contains(projectId));
+    }
+
+    public Optional<AnalysisReport> get(String key, String projectId) {
+        if (isBypassed(projectId)) {
+            bypasses.increment();
+            return Optional.empty();
+        }
+
+        String json = getLocal(key);
+        if (json != null) {
+            localHits.increment();
+            log.info("Report cache hit (local) for key {}", key);
+            return Optional.ofNullable(deserialize(json));
+        }
+
+        json = getShared(key);
+        if (json != null) {
+            sharedHits.increment();
+            putLocal(key, json);
+            log.info("Report cache hit (shared) for key {}", key);
+            return Optional.ofNullable(deserialize(json));
+        }
+
+        misses.increment();
+        return Optional.empty();
+    }
+
+    public void put(String key, String projectId, AnalysisReport report) {
+        if (isBypassed(projectId)) {
+            return;
+        }
+
+        try {
+            // Stored as JSON so callers can mutate the returned report without touching the cache
+            String json = objectMapper.writeValueAsString(report);
+            putLocal(key, json);
+            putShared(key, json);
+        } catch (Exception e) {
+            log.warn("Failed to cache report for key {}: {}", key, e.getMessage());
+        }
+    }
+
+    private String getLocal(String key) {
+        synchronized (localCache) {
+            CachedReport cached = localCache.get(key);
+            if (cached == null) {
+                return null;
+            }
+            if (cached.expiresAt().isBefore(Instant.now())) {
+                localCache.remove(key);
+                return null;
+            }
+            return cached.json();
+        }
+    }
+
+    private void putLocal(String key, String json) {
+        synchronized (localCache) {
+            localCache.put(key, new CachedReport(json, Instant.now().plus(ttl)));
+        }
+    }
+
+    private String getShared(String key) {
+        if (!sharedEnabled || redisTemplate == null) {
+            return null;
+        }
+        try {
+            return redisTemplate.opsForValue().get(SHARED_KEY_PREFIX + key);
+        } catch (Exception e) {
+            // The shared tier is an optimization; fall through to the API when Redis is unavailable
+            log.warn("Shared report cache lookup failed: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void putShared(String key, String json) {
+        if (!sharedEnabled || redisTemplate == null) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(SHARED_KEY_PREFIX + key, json, ttl);
+        } catch (Exception e) {
+            log.warn("Shared report cache write failed: {}", e.getMessage());
+        }
+    }
+
+    private AnalysisReport deserialize(String json) {
+        try {
+            return objectMapper.readValue(json, AnalysisReport.class);
+        } catch (Exception e) {
+            log.warn("Discarding unreadable cached report: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private double localSize(Map<String, CachedReport> cache) {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private record CachedReport(String json, Instant expiresAt) {
+    }
+}
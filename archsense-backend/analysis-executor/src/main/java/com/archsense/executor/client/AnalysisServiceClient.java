@@ -7,6 +7,9 @@ import org.springframework.http.*;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.List;
+import java.util.Map;
+
 @Component
 public class AnalysisServiceClient {
 
@@ -38,4 +41,24 @@ public class AnalysisServiceClient {
             log.error("Failed to update analysis status", e);
         }
     }
-}
\ No newline at end of file
+
+    public void updateProgress(String analysisId, int issuesFound, List<String> partialIssues) {
+        String url = baseUrl + "/internal/analyses/" + analysisId + "/progress";
+        log.debug("Publishing progress for analysisId {}: {} issues found", analysisId, issuesFound);
+
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+
+            Map<String, Object> body = Map.of(
+                    "issuesFound", issuesFound,
+                    "partialIssues", partialIssues
+            );
+            restTemplate.exchange(url, HttpMethod.PUT, new HttpEntity<>(body, headers), Void.class);
+
+        } catch (Exception e) {
+            // Progress is informational; never fail the analysis because of it
+            log.warn("Failed to publish progress for analysisId {}: {}", analysisId, e.getMessage());
+        }
+    }
+}
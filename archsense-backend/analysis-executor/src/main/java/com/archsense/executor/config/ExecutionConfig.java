@@ -0,0 +1,64 @@
+package com.archsense.executor.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class ExecutionConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(ExecutionConfig.class);
+
+    @Value("${executor.threads.mode:platform}")
+    private String threadMode;
+
+    @Bean
+    public ThreadFactory analysisThreadFactory() {
+        if (isVirtual()) {
+            log.info("Analysis jobs will run on virtual threads");
+            return Thread.ofVirtual().name("analysis-vworker-", 1).factory();
+        }
+
+        log.info("Analysis jobs will run on platform threads");
+        AtomicInteger threadCounter = new AtomicInteger();
+        return runnable -> new Thread(runnable, "analysis-worker-" + threadCounter.incrementAndGet());
+    }
+
+    @Bean(name = "analysisTaskExecutor", destroyMethod = "shutdown")
+    public ExecutorService analysisTaskExecutor(@Value("${executor.threads.io-pool-size:32}") int ioPoolSize) {
+        if (isVirtual()) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("analysis-vio-", 1).factory());
+        }
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        return Executors.newFixedThreadPool(ioPoolSize,
+                runnable -> new Thread(runnable, "analysis-io-" + threadCounter.incrementAndGet()));
+    }
+
+    // Map-reduce shards are long Claude calls; on their own pool they cannot starve the short context fetches
+    // on analysisTaskExecutor. Every worker runs one analysis at a time and each analysis at most
+    // max-concurrency shards, so this many threads never makes a shard wait for another analysis's
+    @Bean(name = "shardTaskExecutor", destroyMethod = "shutdown")
+    public ExecutorService shardTaskExecutor(@Value("${executor.queue.workers:8}") int workers,
+                                             @Value("${ai.anthropic.map-reduce.max-concurrency:4}") int maxConcurrency) {
+        if (isVirtual()) {
+            // Unpooled; each analysis's semaphore bounds its own shards
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("analysis-vshard-", 1).factory());
+        }
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, workers) * Math.max(1, maxConcurrency),
+                runnable -> new Thread(runnable, "analysis-shard-" + threadCounter.incrementAndGet()));
+    }
+
+    private boolean isVirtual() {
+        return "virtual".equalsIgnoreCase(threadMode);
+    }
+}
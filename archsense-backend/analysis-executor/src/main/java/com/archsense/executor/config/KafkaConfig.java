@@ -0,0 +1,122 @@
+package com.archsense.executor.config;
+
+import com.archsense.common.event.AnalysisRequestedEvent;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+public class KafkaConfig {
+
+    @Value("${spring.kafka.bootstrap-servers}")
+    private String bootstrapServers;
+
+    @Value("${executor.kafka.group-id:analysis-executor}")
+    private String groupId;
+
+    @Value("${executor.kafka.concurrency:8}")
+    private int concurrency;
+
+    @Value("${executor.kafka.max-poll-interval-ms:900000}")
+    private int maxPollIntervalMs;
+
+    @Value("${executor.kafka.batch-concurrency:2}")
+    private int batchConcurrency;
+
+    @Value("${executor.kafka.batch-prefetch:8}")
+    private int batchPrefetch;
+
+    @Value("${executor.kafka.batch-max-poll-interval-ms:3600000}")
+    private int batchMaxPollIntervalMs;
+
+    @Bean
+    public ProducerFactory<String, Object> producerFactory() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+        config.put(ProducerConfig.ACKS_CONFIG, "all");
+        config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        config.put(JsonSerializer.ADD_TYPE_INFO_HEADERS, false);
+        return new DefaultKafkaProducerFactory<>(config);
+    }
+
+    @Bean
+    public KafkaTemplate<String, Object> kafkaTemplate() {
+        return new KafkaTemplate<>(producerFactory());
+    }
+
+    @Bean
+    public ConsumerFactory<String, AnalysisRequestedEvent> analysisRequestConsumerFactory() {
+        // One analysis per poll; the listener blocks until it finishes before committing
+        return new DefaultKafkaConsumerFactory<>(requestConsumerConfig(1, maxPollIntervalMs));
+    }
+
+    @Bean
+    public ConsumerFactory<String, AnalysisRequestedEvent> batchAnalysisRequestConsumerFactory() {
+        // A poll is only finished once all of its analyses are, so the interval covers the whole prefetch
+        return new DefaultKafkaConsumerFactory<>(requestConsumerConfig(batchPrefetch, batchMaxPollIntervalMs));
+    }
+
+    private Map<String, Object> requestConsumerConfig(int maxPollRecords, int pollIntervalMs) {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+        config.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+
+        config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+        config.put(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, pollIntervalMs);
+
+        config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
+        config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
+
+        config.put(ErrorHandlingDeserializer.KEY_DESERIALIZER_CLASS, StringDeserializer.class);
+        config.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, JsonDeserializer.class);
+
+        config.put(JsonDeserializer.TRUSTED_PACKAGES, "com.archsense.common.event");
+        config.put(JsonDeserializer.USE_TYPE_INFO_HEADERS, false);
+        config.put(JsonDeserializer.VALUE_DEFAULT_TYPE, AnalysisRequestedEvent.class.getName());
+
+        return config;
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, AnalysisRequestedEvent> analysisRequestListenerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, AnalysisRequestedEvent> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(analysisRequestConsumerFactory());
+        factory.setConcurrency(concurrency);
+        // Commit only after the analysis has finished so in-flight work is redelivered after a crash
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.RECORD);
+        return factory;
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, AnalysisRequestedEvent> batchAnalysisRequestListenerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, AnalysisRequestedEvent> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(batchAnalysisRequestConsumerFactory());
+        factory.setConcurrency(batchConcurrency);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        return factory;
+    }
+}
@@ -1,13 +1,20 @@
 package com.archsense.executor.controller;
 
-import com.archsense.executor.service.ExecutorService;
+import com.archsense.executor.ai.ClaudeCallGuard;
+import com.archsense.executor.model.AnalysisJob;
+import com.archsense.executor.service.AnalysisJobQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/internal")
@@ -15,10 +22,16 @@ public class InternalController {
 
     private static final Logger log = LoggerFactory.getLogger(InternalController.class);
 
-    private final ExecutorService executorService;
+    private final AnalysisJobQueue jobQueue;
+    private final int retryAfterSeconds;
 
-    public InternalController(ExecutorService executorService) {
-        this.executorService = executorService;
+    @Autowired(required = false)
+    private ClaudeCallGuard claudeCallGuard;
+
+    public InternalController(AnalysisJobQueue jobQueue,
+                              @Value("${executor.queue.retry-after-seconds:30}") int retryAfterSeconds) {
+        this.jobQueue = jobQueue;
+        this.retryAfterSeconds = retryAfterSeconds;
     }
 
     @PostMapping("/execute")
@@ -30,17 +43,48 @@ public class InternalController {
         List<String> artifactIds = (List<String>) payload.get("artifactIds");
         Integer version = (Integer) payload.get("version");  // NEW
         String previousAnalysisId = (String) payload.get("previousAnalysisId");  // NEW
+        String batchId = (String) payload.get("batchId");
 
         log.info("Received analysis execution request for analysisId: {} (version {})",
                 analysisId, version);
 
+        // While the provider is down a queued job would only fail; tell the caller when to come back instead
+        if (claudeCallGuard != null && claudeCallGuard.isOpen()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(claudeCallGuard.retryAfterSeconds()))
+                    .body(Map.of("status", "rejected", "message", "AI provider is unavailable, retry later"));
+        }
+
         try {
-            executorService.executeAnalysisSync(analysisId, projectId, userId, artifactIds,
-                    version, previousAnalysisId);
-            return ResponseEntity.ok(Map.of("status", "success"));
+            AnalysisJob job = jobQueue.submit(new AnalysisJob(analysisId, projectId, userId, artifactIds,
+                    version, previousAnalysisId, batchId));
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .body(Map.of("status", job.getState().name(), "analysisId", analysisId));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                    .body(Map.of("status", "rejected", "message", "Analysis queue is full, retry later"));
         } catch (Exception e) {
-            log.error("Failed to execute analysis: {}", analysisId, e);
+            log.error("Failed to queue analysis: {}", analysisId, e);
             return ResponseEntity.status(500).body(Map.of("status", "error", "message", e.getMessage()));
         }
     }
-}
\ No newline at end of file
+
+    @GetMapping("/jobs/{analysisId}")
+    public ResponseEntity<AnalysisJob> getJob(@PathVariable String analysisId) {
+        return jobQueue.getJob(analysisId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/jobs")
+    public ResponseEntity<Map<String, Integer>> getQueueStats() {
+        return ResponseEntity.ok(Map.of(
+                "queued", jobQueue.getQueueDepth(),
+                "remainingCapacity", jobQueue.getRemainingCapacity(),
+                "activeWorkers", jobQueue.getActiveWorkers(),
+                "batchQueued", jobQueue.getBatchQueueDepth(),
+                "batchActiveWorkers", jobQueue.getBatchActiveWorkers()
+        ));
+    }
+}
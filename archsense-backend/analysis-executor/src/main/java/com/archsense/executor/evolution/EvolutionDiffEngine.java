@@ -0,0 +1,164 @@
+package com.archsense.executor.evolution;
+
+import com.archsense.executor.model.AnalysisReport;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Derives what changed between two report versions by matching issue fingerprints, so the resolved, new
+// and regressed lists are the same every time for the same reports and cost no tokens. The model only
+// contributes a short prose summary of the change
+@Component
+public class EvolutionDiffEngine {
+
+    private static final Map<String, Integer> SEVERITY_WEIGHT = Map.of("HIGH", 3, "MEDIUM", 2, "LOW", 1);
+    // Net severity change, relative to what the previous version carried, that counts as a trend
+    private static final double TREND_THRESHOLD = 0.1;
+
+    public record Match(AnalysisReport.Issue previous, AnalysisReport.Issue current, double similarity) {
+    }
+
+    // regressed and improved are the matches whose severity went up or down; persisted holds every match
+    public record EvolutionDiff(List<Match> persisted, List<AnalysisReport.Issue> resolved,
+                                List<AnalysisReport.Issue> added, List<Match> regressed, List<Match> improved,
+                                String overallTrend) {
+    }
+
+    private record Candidate(int previousIndex, int currentIndex, double similarity) {
+    }
+
+    private final double matchThreshold;
+    private final Timer diffTimer;
+
+    public EvolutionDiffEngine(MeterRegistry meterRegistry,
+                               @Value("${executor.evolution.match-threshold:0.45}") double matchThreshold) {
+        this.matchThreshold = matchThreshold;
+        this.diffTimer = meterRegistry.timer("archsense.evolution.diff");
+    }
+
+    // Stored with the report, so the next version matches against the same ids. Always computed here:
+    // a fingerprint the model copied over from the previous report is not evidence of anything
+    public void fingerprint(List<AnalysisReport.Issue> issues) {
+        if (issues == null) {
+            return;
+        }
+        for (AnalysisReport.Issue issue : issues) {
+            issue.setFingerprint(IssueFingerprint.computeId(issue));
+        }
+    }
+
+    // Issues carrying the same stored fingerprint always match; the rest are paired by similarity
+    public EvolutionDiff diff(List<AnalysisReport.Issue> previous, List<AnalysisReport.Issue> current) {
+        long startedAt = System.nanoTime();
+        List<AnalysisReport.Issue> before = previous != null ? previous : List.of();
+        List<AnalysisReport.Issue> after = current != null ? current : List.of();
+
+        List<IssueFingerprint> beforePrints = before.stream().map(IssueFingerprint::of).toList();
+        List<IssueFingerprint> afterPrints = after.stream().map(IssueFingerprint::of).toList();
+
+        // Best pairs first, each issue used at most once; index order breaks ties so the result is stable
+        List<Candidate> candidates = new ArrayList<>();
+        for (int i = 0; i < beforePrints.size(); i++) {
+            for (int j = 0; j < afterPrints.size(); j++) {
+                double similarity = beforePrints.get(i).similarity(afterPrints.get(j));
+                if (similarity >= matchThreshold) {
+                    candidates.add(new Candidate(i, j, similarity));
+                }
+            }
+        }
+        candidates.sort(Comparator.comparingDouble(Candidate::similarity).reversed()
+                .thenComparingInt(Candidate::previousIndex)
+                .thenComparingInt(Candidate::currentIndex));
+
+        Set<Integer> matchedBefore = new HashSet<>();
+        Set<Integer> matchedAfter = new HashSet<>();
+        List<Match> persisted = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (!matchedBefore.contains(candidate.previousIndex()) && !matchedAfter.contains(candidate.currentIndex())) {
+                matchedBefore.add(candidate.previousIndex());
+                matchedAfter.add(candidate.currentIndex());
+                persisted.add(new Match(before.get(candidate.previousIndex()), after.get(candidate.currentIndex()),
+                        candidate.similarity()));
+            }
+        }
+        persisted.sort(Comparator.comparingInt(match -> before.indexOf(match.previous())));
+
+        List<AnalysisReport.Issue> resolved = new ArrayList<>();
+        for (int i = 0; i < before.size(); i++) {
+            if (!matchedBefore.contains(i)) {
+                resolved.add(before.get(i));
+            }
+        }
+        List<AnalysisReport.Issue> added = new ArrayList<>();
+        for (int j = 0; j < after.size(); j++) {
+            if (!matchedAfter.contains(j)) {
+                added.add(after.get(j));
+            }
+        }
+        List<Match> regressed = new ArrayList<>();
+        List<Match> improved = new ArrayList<>();
+        for (Match match : persisted) {
+            int change = weight(match.current()) - weight(match.previous());
+            if (change > 0) {
+                regressed.add(match);
+            } else if (change < 0) {
+                improved.add(match);
+            }
+        }
+
+        EvolutionDiff diff = new EvolutionDiff(persisted, resolved, added, regressed, improved,
+                trend(before, resolved, added, regressed, improved));
+        diffTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        return diff;
+    }
+
+    public AnalysisReport.EvolutionAnalysis toEvolutionAnalysis(EvolutionDiff diff, String summary) {
+        AnalysisReport.EvolutionAnalysis evolution = new AnalysisReport.EvolutionAnalysis();
+        evolution.setResolvedIssues(new ArrayList<>(diff.resolved().stream().map(this::describe).toList()));
+        evolution.setNewIssues(new ArrayList<>(diff.added().stream().map(this::describe).toList()));
+        evolution.setRegressedIssues(new ArrayList<>(diff.regressed().stream()
+                .map(match -> describe(match.current()) + " (was " + match.previous().getSeverity() + ")")
+                .toList()));
+        evolution.setOverallTrend(diff.overallTrend());
+        evolution.setSummary(summary);
+        return evolution;
+    }
+
+    private String trend(List<AnalysisReport.Issue> before, List<AnalysisReport.Issue> resolved,
+                         List<AnalysisReport.Issue> added, List<Match> regressed, List<Match> improved) {
+        int net = 0;
+        for (AnalysisReport.Issue issue : resolved) {
+            net += weight(issue);
+        }
+        for (AnalysisReport.Issue issue : added) {
+            net -= weight(issue);
+        }
+        for (Match match : regressed) {
+            net -= weight(match.current()) - weight(match.previous());
+        }
+        for (Match match : improved) {
+            net += weight(match.previous()) - weight(match.current());
+        }
+
+        int baseline = Math.max(1, before.stream().mapToInt(this::weight).sum());
+        double change = (double) net / baseline;
+        return change > TREND_THRESHOLD ? "IMPROVING" : change < -TREND_THRESHOLD ? "DEGRADING" : "STABLE";
+    }
+
+    private int weight(AnalysisReport.Issue issue) {
+        return issue.getSeverity() == null ? 1 : SEVERITY_WEIGHT.getOrDefault(issue.getSeverity().toUpperCase(), 1);
+    }
+
+    private String describe(AnalysisReport.Issue issue) {
+        return "[" + issue.getSeverity() + "] " + issue.getCategory() + ": " + issue.getDescription();
+    }
+}
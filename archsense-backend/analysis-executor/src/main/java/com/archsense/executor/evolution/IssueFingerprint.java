@@ -0,0 +1,168 @@
+package com.archsense.executor.evolution;
+
+import com.archsense.executor.model.AnalysisReport;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// What identifies an issue across report versions, independent of how the model happened to word it:
+// a normalized category, the words of its location, and word shingles of its description. The id is
+// exact (same category and same significant words); similarity() is for everything the id misses.
+// An id already stored on the issue is kept, so a report is matched by the ids it was saved with
+public record IssueFingerprint(String id, String category, Set<String> locationWords,
+                               Set<String> descriptionWords, Set<String> shingles) {
+
+    private static final Pattern WORD = Pattern.compile("[a-z0-9]+");
+    private static final Set<String> STOP_WORDS = Set.of(
+            "the", "and", "for", "with", "are", "was", "not", "from", "that", "this", "which", "into",
+            "can", "could", "may", "might", "has", "have", "its", "their", "there", "without", "between",
+            "all", "any", "due", "lack", "lacks", "missing", "potential", "possible", "use", "uses", "using");
+
+    // The model is not consistent about category names; these are the variants it produces
+    private static final Map<String, String> CATEGORY_ALIASES = Map.ofEntries(
+            Map.entry("availability", "reliability"), Map.entry("resilience", "reliability"),
+            Map.entry("fault tolerance", "reliability"), Map.entry("perf", "performance"),
+            Map.entry("latency", "performance"), Map.entry("scaling", "scalability"),
+            Map.entry("cost optimization", "cost"), Map.entry("costs", "cost"),
+            Map.entry("data security", "security"), Map.entry("authentication", "security"));
+
+    private static final double WORD_WEIGHT = 0.75;
+    private static final double SHINGLE_WEIGHT = 0.25;
+    private static final double LOCATION_WEIGHT = 0.15;
+    // Word stems are cut to this length, so "replicas", "replicated" and "replication" all meet
+    private static final int STEM_LENGTH = 6;
+    // Below this many words, overlap with a longer description says too little and Jaccard is used instead
+    private static final int MIN_OVERLAP_WORDS = 3;
+
+    public static IssueFingerprint of(AnalysisReport.Issue issue) {
+        return of(issue, issue.getFingerprint());
+    }
+
+    // Ignores any stored id, for issues that are being fingerprinted rather than matched
+    public static String computeId(AnalysisReport.Issue issue) {
+        return of(issue, null).id();
+    }
+
+    private static IssueFingerprint of(AnalysisReport.Issue issue, String storedId) {
+        String category = normalizeCategory(issue.getCategory());
+        List<String> words = significantWords(issue.getDescription());
+
+        Set<String> shingles = new LinkedHashSet<>();
+        for (int i = 0; i + 1 < words.size(); i++) {
+            shingles.add(words.get(i) + " " + words.get(i + 1));
+        }
+        Set<String> descriptionWords = new TreeSet<>(words);
+        return new IssueFingerprint(storedId != null ? storedId : id(category, descriptionWords), category,
+                words(issue.getLocation()), descriptionWords, shingles);
+    }
+
+    // 0..1; only issues in the same category are ever considered the same issue
+    public double similarity(IssueFingerprint other) {
+        if (id.equals(other.id)) {
+            return 1;
+        }
+        if (!category.equals(other.category)) {
+            return 0;
+        }
+        // Rewording mostly adds or drops words around the same core, which overlap tolerates and Jaccard does not
+        double description = WORD_WEIGHT * overlap(descriptionWords, other.descriptionWords)
+                + SHINGLE_WEIGHT * jaccard(shingles, other.shingles);
+        // A missing location says nothing either way, so it neither helps nor hurts
+        if (locationWords.isEmpty() || other.locationWords.isEmpty()) {
+            return description;
+        }
+        return (1 - LOCATION_WEIGHT) * description + LOCATION_WEIGHT * overlap(locationWords, other.locationWords);
+    }
+
+    // The same tokenizer and set similarity, for other text that has to be matched the way issues are
+    public static Set<String> words(String text) {
+        return new TreeSet<>(significantWords(text));
+    }
+
+    public static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0;
+        }
+        int common = common(a, b);
+        return (double) common / (a.size() + b.size() - common);
+    }
+
+    private static String normalizeCategory(String category) {
+        if (category == null || category.isBlank()) {
+            return "general";
+        }
+        String normalized = category.toLowerCase().replaceAll("[^a-z ]+", " ").trim().replaceAll(" +", " ");
+        return CATEGORY_ALIASES.getOrDefault(normalized, normalized);
+    }
+
+    private static List<String> significantWords(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        Matcher matcher = WORD.matcher(text.toLowerCase());
+        while (matcher.find()) {
+            String word = matcher.group();
+            if (word.length() > 2 && !STOP_WORDS.contains(word)) {
+                words.add(stem(word));
+            }
+        }
+        return words;
+    }
+
+    // Plurals and the commonest verb forms, then a fixed-length prefix; crude, but the same on both sides
+    private static String stem(String word) {
+        if (word.length() > 4 && word.endsWith("ies")) {
+            word = word.substring(0, word.length() - 3) + "y";
+        } else if (word.length() > 3 && word.endsWith("s") && !word.endsWith("ss")) {
+            word = word.substring(0, word.length() - 1);
+        }
+        if (word.length() > 5 && word.endsWith("ing")) {
+            word = word.substring(0, word.length() - 3);
+        } else if (word.length() > 4 && word.endsWith("ed")) {
+            word = word.substring(0, word.length() - 2);
+        }
+        if (word.length() > 4 && word.endsWith("e")) {
+            word = word.substring(0, word.length() - 1);
+        }
+        return word.length() > STEM_LENGTH ? word.substring(0, STEM_LENGTH) : word;
+    }
+
+    private static String id(String category, Set<String> words) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            byte[] digest = sha256.digest((category + "|" + String.join(" ", words)).getBytes(StandardCharsets.UTF_8));
+            return category.replace(' ', '-') + ":" + HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static double overlap(Set<String> a, Set<String> b) {
+        int smaller = Math.min(a.size(), b.size());
+        if (smaller < MIN_OVERLAP_WORDS) {
+            return jaccard(a, b);
+        }
+        return (double) common(a, b) / smaller;
+    }
+
+    private static int common(Set<String> a, Set<String> b) {
+        int common = 0;
+        for (String value : a) {
+            if (b.contains(value)) {
+                common++;
+            }
+        }
+        return common;
+    }
+}
@@ -0,0 +1,55 @@
+package com.archsense.executor.messaging;
+
+import com.archsense.common.constant.KafkaTopics;
+import com.archsense.common.event.AnalysisCompletedEvent;
+import com.archsense.common.event.AnalysisDeferredEvent;
+import com.archsense.common.event.AnalysisFailedEvent;
+import com.archsense.common.event.AnalysisStartedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+
+@Component
+public class AnalysisEventPublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalysisEventPublisher.class);
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+
+    public AnalysisEventPublisher(KafkaTemplate<String, Object> kafkaTemplate) {
+        this.kafkaTemplate = kafkaTemplate;
+    }
+
+    // Returned so a failure can be published only once the started event is on its way
+    public CompletableFuture<?> publishAnalysisStarted(AnalysisStartedEvent event) {
+        log.info("Publishing AnalysisStartedEvent for analysisId: {}", event.analysisId());
+        return send(KafkaTopics.ANALYSIS_STARTED, event.analysisId(), event);
+    }
+
+    public void publishAnalysisDeferred(AnalysisDeferredEvent event) {
+        log.info("Publishing AnalysisDeferredEvent for analysisId: {}", event.analysisId());
+        send(KafkaTopics.ANALYSIS_DEFERRED, event.analysisId(), event);
+    }
+
+    public void publishAnalysisCompleted(AnalysisCompletedEvent event) {
+        log.info("Publishing AnalysisCompletedEvent for analysisId: {}", event.analysisId());
+        send(KafkaTopics.ANALYSIS_COMPLETED, event.analysisId(), event);
+    }
+
+    public void publishAnalysisFailed(AnalysisFailedEvent event) {
+        log.info("Publishing AnalysisFailedEvent for analysisId: {}", event.analysisId());
+        send(KafkaTopics.ANALYSIS_FAILED, event.analysisId(), event);
+    }
+
+    private CompletableFuture<?> send(String topic, String key, Object event) {
+        // Fire-and-forget; the producer retries internally and failures are only logged
+        return kafkaTemplate.send(topic, key, event).whenComplete((result, e) -> {
+            if (e != null) {
+                log.error("Failed to publish event to {} for analysisId: {}", topic, key, e);
+            }
+        });
+    }
+}
@@ -0,0 +1,86 @@
+package com.archsense.executor.messaging;
+
+import com.archsense.common.constant.KafkaTopics;
+import com.archsense.common.event.AnalysisRequestedEvent;
+import com.archsense.executor.model.AnalysisJob;
+import com.archsense.executor.service.AnalysisJobQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+@Component
+public class AnalysisRequestConsumer {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalysisRequestConsumer.class);
+
+    private final AnalysisJobQueue jobQueue;
+    private final long rejectedBackoffMs;
+
+    public AnalysisRequestConsumer(AnalysisJobQueue jobQueue,
+                                   @Value("${executor.kafka.rejected-backoff-ms:5000}") long rejectedBackoffMs) {
+        this.jobQueue = jobQueue;
+        this.rejectedBackoffMs = rejectedBackoffMs;
+    }
+
+    @KafkaListener(topics = KafkaTopics.ANALYSIS_REQUESTED,
+            groupId = "${executor.kafka.group-id:analysis-executor}",
+            containerFactory = "analysisRequestListenerFactory")
+    public void handleAnalysisRequested(AnalysisRequestedEvent event) throws InterruptedException {
+        log.info("Received AnalysisRequestedEvent for analysisId: {} (version {})",
+                event.analysisId(), event.version());
+
+        AnalysisJob job = submit(event);
+
+        try {
+            job.getCompletion().join();
+            log.info("Analysis {} finished, committing offset", event.analysisId());
+        } catch (CompletionException e) {
+            // The executor already marked the analysis FAILED; redelivering would just fail again
+            log.warn("Analysis {} failed: {}", event.analysisId(), job.getError());
+        }
+    }
+
+    // Batch work is fetched a few records at a time so the job queue holds jobs from several batches
+    // and can interleave them; offsets are committed once the whole poll has finished. It has a consumer
+    // group of its own, so a rebalance caused by one listener never stalls the other
+    @KafkaListener(topics = KafkaTopics.ANALYSIS_BATCH_REQUESTED,
+            groupId = "${executor.kafka.batch-group-id:analysis-executor-batch}",
+            containerFactory = "batchAnalysisRequestListenerFactory")
+    public void handleBatchAnalysisRequested(List<AnalysisRequestedEvent> events) throws InterruptedException {
+        log.info("Received {} batch AnalysisRequestedEvents", events.size());
+
+        List<AnalysisJob> jobs = new ArrayList<>(events.size());
+        for (AnalysisRequestedEvent event : events) {
+            jobs.add(submit(event));
+        }
+
+        for (AnalysisJob job : jobs) {
+            try {
+                job.getCompletion().join();
+            } catch (CompletionException e) {
+                log.warn("Batch analysis {} (batch {}) failed: {}", job.getAnalysisId(), job.getBatchId(), job.getError());
+            }
+        }
+        log.info("{} batch analyses finished, committing offsets", jobs.size());
+    }
+
+    private AnalysisJob submit(AnalysisRequestedEvent event) throws InterruptedException {
+        while (true) {
+            try {
+                return jobQueue.submit(new AnalysisJob(event.analysisId(), event.projectId(), event.userId(),
+                        event.artifactIds(), event.version(), event.previousAnalysisId(), event.batchId()));
+            } catch (RejectedExecutionException e) {
+                // A full lane holds the record instead of dropping it
+                log.info("Job queue full, retrying analysis {} in {} ms", event.analysisId(), rejectedBackoffMs);
+                Thread.sleep(rejectedBackoffMs);
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.archsense.executor.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class AnalysisJob {
+
+    public enum State {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private final String analysisId;
+    private final String projectId;
+    private final String userId;
+    private final List<String> artifactIds;
+    private final Integer version;
+    private final String previousAnalysisId;
+    private final String batchId;
+    private final Instant submittedAt;
+
+    private volatile State state;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    public AnalysisJob(String analysisId, String projectId, String userId,
+                       List<String> artifactIds, Integer version, String previousAnalysisId, String batchId) {
+        this.analysisId = analysisId;
+        this.projectId = projectId;
+        this.userId = userId;
+        this.artifactIds = artifactIds;
+        this.version = version;
+        this.previousAnalysisId = previousAnalysisId;
+        this.batchId = batchId;
+        this.submittedAt = Instant.now();
+        this.state = State.QUEUED;
+    }
+
+    public void markRunning() {
+        this.state = State.RUNNING;
+        this.startedAt = Instant.now();
+    }
+
+    // finishedAt is written before state so anyone who sees a finished job also sees when it finished
+    public void markCompleted() {
+        this.finishedAt = Instant.now();
+        this.state = State.COMPLETED;
+        completion.complete(null);
+    }
+
+    public void markFailed(String error) {
+        this.error = error;
+        this.finishedAt = Instant.now();
+        this.state = State.FAILED;
+        completion.completeExceptionally(new RuntimeException(error));
+    }
+
+    @JsonIgnore
+    public boolean isFinished() {
+        return state == State.COMPLETED || state == State.FAILED;
+    }
+
+    public String getAnalysisId() {
+        return analysisId;
+    }
+
+    public String getProjectId() {
+        return projectId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public List<String> getArtifactIds() {
+        return artifactIds;
+    }
+
+    public Integer getVersion() {
+        return version;
+    }
+
+    public String getPreviousAnalysisId() {
+        return previousAnalysisId;
+    }
+
+    public String getBatchId() {
+        return batchId;
+    }
+
+    public Instant getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @JsonIgnore
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+}
@@ -21,12 +21,14 @@ public class AnalysisReport {
     private Integer version;
     private EvolutionAnalysis evolutionAnalysis;
     private CostEstimation costEstimation;
+    private TokenUsage tokenUsage;
 
     public static class EvolutionAnalysis {
         private List<String> resolvedIssues;
         private List<String> newIssues;
         private List<String> regressedIssues;
         private String overallTrend;  // "IMPROVING", "STABLE", "DEGRADING"
+        private String summary;       // the model's prose; the lists and trend are derived by the executor
 
         public EvolutionAnalysis() {}
 
@@ -41,6 +43,9 @@ public class AnalysisReport {
 
         public String getOverallTrend() { return overallTrend; }
         public void setOverallTrend(String overallTrend) { this.overallTrend = overallTrend; }
+
+        public String getSummary() { return summary; }
+        public void setSummary(String summary) { this.summary = summary; }
     }
 
     public static class CostEstimation {
@@ -88,6 +93,43 @@ public class AnalysisReport {
         public void setEstimatedMonthlyCost(Double estimatedMonthlyCost) { this.estimatedMonthlyCost = estimatedMonthlyCost; }
     }
 
+    // Claude API usage for the call that produced this report; absent for cached and mock reports
+    public static class TokenUsage {
+        private String model;
+        private Integer inputTokens;
+        private Integer outputTokens;
+        private Integer cacheCreationInputTokens;
+        private Integer cacheReadInputTokens;
+        private Long timeToFirstTokenMs;  // streaming only
+        private Long durationMs;
+        private String routing;  // tiered mode only: triage, escalated:<reason> or direct:<reason>
+
+        public TokenUsage() {}
+
+        public String getModel() { return model; }
+        public void setModel(String model) { this.model = model; }
+
+        public Integer getInputTokens() { return inputTokens; }
+        public void setInputTokens(Integer inputTokens) { this.inputTokens = inputTokens; }
+
+        public Integer getOutputTokens() { return outputTokens; }
+        public void setOutputTokens(Integer outputTokens) { this.outputTokens = outputTokens; }
+
+        public Integer getCacheCreationInputTokens() { return cacheCreationInputTokens; }
+        public void setCacheCreationInputTokens(Integer cacheCreationInputTokens) { this.cacheCreationInputTokens = cacheCreationInputTokens; }
+
+        public Integer getCacheReadInputTokens() { return cacheReadInputTokens; }
+        public void setCacheReadInputTokens(Integer cacheReadInputTokens) { this.cacheReadInputTokens = cacheReadInputTokens; }
+
+        public Long getTimeToFirstTokenMs() { return timeToFirstTokenMs; }
+        public void setTimeToFirstTokenMs(Long timeToFirstTokenMs) { this.timeToFirstTokenMs = timeToFirstTokenMs; }
+
+        public Long getDurationMs() { return durationMs; }
+        public void setDurationMs(Long durationMs) { this.durationMs = durationMs; }
+
+        public String getRouting() { return routing; }
+        public void setRouting(String routing) { this.routing = routing; }
+    }
 
     public AnalysisReport() {
         this.generatedAt = Instant.now();
@@ -165,6 +207,7 @@ public class AnalysisReport {
         private String description;
         private String location;
         private Double confidenceScore;
+        private String fingerprint;
 
         public Issue() {}
 
@@ -179,6 +222,10 @@ public class AnalysisReport {
 
         public void setConfidenceScore(Double confidenceScore) { this.confidenceScore = confidenceScore; }
 
+        public String getFingerprint() { return fingerprint; }
+
+        public void setFingerprint(String fingerprint) { this.fingerprint = fingerprint; }
+
         public String getSeverity() {
             return severity;
         }
@@ -268,4 +315,7 @@ public class AnalysisReport {
 
     public CostEstimation getCostEstimation() { return costEstimation; }
     public void setCostEstimation(CostEstimation costEstimation) { this.costEstimation = costEstimation; }
-}
\ No newline at end of file
+
+    public TokenUsage getTokenUsage() { return tokenUsage; }
+    public void setTokenUsage(TokenUsage tokenUsage) { this.tokenUsage = tokenUsage; }
+}
@@ -9,6 +9,15 @@ public class Artifact {
     private long size;
     private String s3Key;
 
+    // Set by artifact-service once upload-time preprocessing has finished
+    private String processingStatus;
+    private String contentDigest;
+    private Long perceptualHash;
+    private String derivativeKey;
+    private String derivativeContentType;
+    private String textKey;
+    private Long textLength;
+
     // Getters and Setters
 
     public String getId() {
@@ -66,4 +75,60 @@ public class Artifact {
     public void setS3Key(String s3Key) {
         this.s3Key = s3Key;
     }
-}
\ No newline at end of file
+
+    public String getProcessingStatus() {
+        return processingStatus;
+    }
+
+    public void setProcessingStatus(String processingStatus) {
+        this.processingStatus = processingStatus;
+    }
+
+    public String getContentDigest() {
+        return contentDigest;
+    }
+
+    public void setContentDigest(String contentDigest) {
+        this.contentDigest = contentDigest;
+    }
+
+    public Long getPerceptualHash() {
+        return perceptualHash;
+    }
+
+    public void setPerceptualHash(Long perceptualHash) {
+        this.perceptualHash = perceptualHash;
+    }
+
+    public String getDerivativeKey() {
+        return derivativeKey;
+    }
+
+    public void setDerivativeKey(String derivativeKey) {
+        this.derivativeKey = derivativeKey;
+    }
+
+    public String getDerivativeContentType() {
+        return derivativeContentType;
+    }
+
+    public void setDerivativeContentType(String derivativeContentType) {
+        this.derivativeContentType = derivativeContentType;
+    }
+
+    public String getTextKey() {
+        return textKey;
+    }
+
+    public void setTextKey(String textKey) {
+        this.textKey = textKey;
+    }
+
+    public Long getTextLength() {
+        return textLength;
+    }
+
+    public void setTextLength(Long textLength) {
+        this.textLength = textLength;
+    }
+}
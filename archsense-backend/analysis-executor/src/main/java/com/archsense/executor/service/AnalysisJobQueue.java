@@ -0,0 +1,171 @@
+package com.archsense.executor.service;
+
+import com.archsense.executor.model.AnalysisJob;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Service
+public class AnalysisJobQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalysisJobQueue.class);
+
+    private final ExecutorService executorService;
+    // Exactly one of these runs the jobs, depending on executor.threads.mode
+    private final ThreadPoolExecutor workerPool;
+    private final VirtualJobDispatcher virtualDispatcher;
+    private final FairJobQueue workQueue;
+    private final Map<String, AnalysisJob> jobs = new ConcurrentHashMap<>();
+    private final Duration retention;
+
+    public AnalysisJobQueue(ExecutorService executorService,
+                            @Value("${executor.queue.workers:8}") int workers,
+                            @Value("${executor.queue.capacity:100}") int capacity,
+                            @Value("${executor.queue.retention-minutes:60}") long retentionMinutes,
+                            @Value("${executor.queue.batch-capacity:50}") int batchCapacity,
+                            @Value("${executor.queue.batch-max-workers:6}") int batchMaxWorkers,
+                            @Value("${executor.threads.mode:platform}") String threadMode,
+                            ThreadFactory analysisThreadFactory) {
+        this.executorService = executorService;
+        this.retention = Duration.ofMinutes(retentionMinutes);
+
+        this.workQueue = new FairJobQueue(
+                task -> ((JobTask) task).job().getBatchId(),
+                capacity, batchCapacity, Math.min(batchMaxWorkers, workers));
+
+        if ("virtual".equalsIgnoreCase(threadMode)) {
+            // workers bounds concurrency here; each job still gets its own, unpooled virtual thread
+            this.workerPool = null;
+            this.virtualDispatcher = new VirtualJobDispatcher(workQueue, workers, analysisThreadFactory);
+            virtualDispatcher.start();
+        } else {
+            this.virtualDispatcher = null;
+            this.workerPool = new ThreadPoolExecutor(
+                    workers, workers,
+                    0L, TimeUnit.MILLISECONDS,
+                    workQueue,
+                    analysisThreadFactory,
+                    new ThreadPoolExecutor.AbortPolicy());
+            // With every worker started up front each job goes through the fair queue instead of being
+            // handed straight to a newly created thread
+            workerPool.prestartAllCoreThreads();
+        }
+
+        log.info("Analysis job queue initialized: mode={}, workers={}, capacity={}, batchCapacity={}, batchMaxWorkers={}",
+                threadMode, workers, capacity, batchCapacity, Math.min(batchMaxWorkers, workers));
+    }
+
+    public AnalysisJob submit(AnalysisJob job) {
+        evictFinishedJobs();
+
+        // Re-submitting an analysis that is still queued or running returns the existing job; check and
+        // insert are one atomic step so concurrent duplicates cannot both be queued
+        AnalysisJob current = jobs.compute(job.getAnalysisId(),
+                (analysisId, existing) -> existing != null && !existing.isFinished() ? existing : job);
+        if (current != job) {
+            log.info("Analysis {} already {}, ignoring duplicate submission", job.getAnalysisId(), current.getState());
+            return current;
+        }
+
+        try {
+            if (workerPool != null) {
+                workerPool.execute(new JobTask(this, job));
+            } else {
+                virtualDispatcher.execute(new JobTask(this, job));
+            }
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getAnalysisId(), job);
+            log.warn("Analysis queue full ({} queued), rejecting {} analysis: {}",
+                    workQueue.size(), job.getBatchId() != null ? "batch" : "interactive", job.getAnalysisId());
+            throw e;
+        }
+
+        log.info("Analysis {} queued (queue depth: {}, batch: {})",
+                job.getAnalysisId(), workQueue.size(), job.getBatchId());
+        return job;
+    }
+
+    public Optional<AnalysisJob> getJob(String analysisId) {
+        return Optional.ofNullable(jobs.get(analysisId));
+    }
+
+    public int getQueueDepth() {
+        return workQueue.size();
+    }
+
+    public int getRemainingCapacity() {
+        return workQueue.remainingCapacity();
+    }
+
+    public int getActiveWorkers() {
+        return workerPool != null ? workerPool.getActiveCount() : virtualDispatcher.getActiveCount();
+    }
+
+    public int getBatchQueueDepth() {
+        return workQueue.getBatchQueued();
+    }
+
+    public int getBatchActiveWorkers() {
+        return workQueue.getBatchRunning();
+    }
+
+    private void run(AnalysisJob job) {
+        job.markRunning();
+        try {
+            // A deferred analysis is not finished (nor its Kafka record committed) until its message batch is
+            // submitted, but it does not hold the worker while it waits for that
+            executorService.executeAnalysisSync(job.getAnalysisId(), job.getProjectId(), job.getUserId(),
+                            job.getArtifactIds(), job.getVersion(), job.getPreviousAnalysisId(), job.getBatchId())
+                    .whenComplete((ignored, failure) -> {
+                        if (failure == null) {
+                            job.markCompleted();
+                        } else {
+                            log.error("Deferred analysis could not be submitted: {}", job.getAnalysisId(), failure);
+                            job.markFailed(failure.getMessage());
+                        }
+                    });
+        } catch (Exception e) {
+            log.error("Analysis job failed: {}", job.getAnalysisId(), e);
+            job.markFailed(e.getMessage());
+        } finally {
+            if (job.getBatchId() != null) {
+                workQueue.batchJobFinished();
+            }
+        }
+    }
+
+    // Carries the job so the fair queue can tell which lane a task belongs to
+    private record JobTask(AnalysisJobQueue owner, AnalysisJob job) implements Runnable {
+        @Override
+        public void run() {
+            owner.run(job);
+        }
+    }
+
+    private void evictFinishedJobs() {
+        Instant cutoff = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(cutoff));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        log.info("Shutting down analysis job queue ({} queued, {} running)", workQueue.size(), getActiveWorkers());
+        if (workerPool != null) {
+            workerPool.shutdown();
+        } else {
+            virtualDispatcher.shutdown();
+        }
+    }
+}
@@ -1,23 +1,43 @@
 package com.archsense.executor.service;
 
+import com.archsense.common.event.AnalysisCompletedEvent;
+import com.archsense.common.event.AnalysisDeferredEvent;
+import com.archsense.common.event.AnalysisFailedEvent;
+import com.archsense.common.event.AnalysisStartedEvent;
+import com.archsense.common.http.PooledHttpClientFactory;
 import com.archsense.executor.ai.ClaudeAnalysisEngine;
+import com.archsense.executor.ai.ClaudeBatchEngine;
+import com.archsense.executor.ai.ClaudeMapReduceEngine;
+import com.archsense.executor.ai.ClaudeTieredEngine;
 import com.archsense.executor.ai.MockAnalysisEngine;
+import com.archsense.executor.evolution.EvolutionDiffEngine;
+import com.archsense.executor.messaging.AnalysisEventPublisher;
 import com.archsense.executor.model.AnalysisReport;
 import com.archsense.executor.model.Artifact;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Service
 public class ExecutorService {
@@ -26,6 +46,12 @@ public class ExecutorService {
 
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
+    private final Executor taskExecutor;
+    private final AnalysisEventPublisher analysisEventPublisher;
+    private final EvolutionDiffEngine evolutionDiffEngine;
+    private RestTemplate artifactsRestTemplate;
+    private RestTemplate constraintsRestTemplate;
+    private RestTemplate previousReportRestTemplate;
 
     @Value("${services.analysis.base-url}")
     private String analysisServiceUrl;
@@ -33,6 +59,18 @@ public class ExecutorService {
     @Value("${services.artifact.base-url}")
     private String artifactServiceUrl;
 
+    @Value("${services.project.base-url:http://localhost:8082}")
+    private String projectServiceUrl;
+
+    @Value("${executor.context.artifacts-timeout-ms:10000}")
+    private long artifactsTimeoutMs;
+
+    @Value("${executor.context.timeout-ms:5000}")
+    private long contextTimeoutMs;
+
+    @Value("${executor.context.previous-report-timeout-ms:10000}")
+    private long previousReportTimeoutMs;
+
     @Autowired(required = false)
     private com.archsense.executor.storage.StorageService localStorageService;
 
@@ -45,23 +83,101 @@ public class ExecutorService {
     @Autowired(required = false)
     private ClaudeAnalysisEngine claudeAnalysisEngine;
 
-    public ExecutorService(RestTemplate restTemplate, ObjectMapper objectMapper) {
+    @Autowired(required = false)
+    private ClaudeBatchEngine claudeBatchEngine;
+
+    @Autowired(required = false)
+    private ClaudeMapReduceEngine claudeMapReduceEngine;
+
+    @Autowired(required = false)
+    private ClaudeTieredEngine claudeTieredEngine;
+
+    public ExecutorService(RestTemplate restTemplate, ObjectMapper objectMapper,
+                           @Qualifier("analysisTaskExecutor") Executor taskExecutor,
+                           AnalysisEventPublisher analysisEventPublisher,
+                           EvolutionDiffEngine evolutionDiffEngine) {
         this.restTemplate = restTemplate;
         this.objectMapper = objectMapper;
+        this.taskExecutor = taskExecutor;
+        this.analysisEventPublisher = analysisEventPublisher;
+        this.evolutionDiffEngine = evolutionDiffEngine;
+    }
+
+    // The context futures time out on their own; bounding the calls behind them as well means a fetch
+    // that is given up on frees its pool thread then, not at the HTTP client's read timeout
+    @PostConstruct
+    public void boundContextFetches() {
+        artifactsRestTemplate = PooledHttpClientFactory.withTimeout(restTemplate, Duration.ofMillis(artifactsTimeoutMs));
+        constraintsRestTemplate = PooledHttpClientFactory.withTimeout(restTemplate, Duration.ofMillis(contextTimeoutMs));
+        previousReportRestTemplate = PooledHttpClientFactory.withTimeout(restTemplate,
+                Duration.ofMillis(previousReportTimeoutMs));
     }
 
-    public void executeAnalysisSync(String analysisId, String projectId, String userId,
-                                    List<String> artifactIds,
-                                    Integer version,
-                                    String previousAnalysisId) {
+    @PostConstruct
+    public void registerDeferredResultHandler() {
+        if (claudeBatchEngine == null) {
+            return;
+        }
+
+        // Message batch results come back long after the worker moved on; finish them the same way
+        claudeBatchEngine.setResultHandler(new ClaudeBatchEngine.ResultHandler() {
+            @Override
+            public void onReport(ClaudeBatchEngine.DeferredAnalysis analysis, AnalysisReport report) {
+                try {
+                    // The previous report is not kept while the batch runs; fetch it again for the diff
+                    String previousReport = analysis.previousAnalysisId() != null && analysis.version() != null
+                            && analysis.version() > 1 ? loadPreviousReport(analysis.previousAnalysisId()) : null;
+                    completeAnalysis(analysis.analysisId(), analysis.projectId(), analysis.userId(),
+                            analysis.version(), analysis.previousAnalysisId(), previousReport, report);
+                } catch (Exception e) {
+                    onFailure(analysis, e.getMessage());
+                }
+            }
+
+            @Override
+            public void onFailure(ClaudeBatchEngine.DeferredAnalysis analysis, String error) {
+                log.error("Deferred analysis failed: {} - {}", analysis.analysisId(), error);
+                analysisEventPublisher.publishAnalysisFailed(new AnalysisFailedEvent(
+                        analysis.analysisId(), analysis.projectId(), analysis.userId(), error, Instant.now()));
+            }
+        });
+    }
+
+    // Runs the analysis on the calling thread. The returned future is already complete, except for an
+    // analysis deferred to a message batch: that one is done once the batch has been submitted
+    public CompletableFuture<Void> executeAnalysisSync(String analysisId, String projectId, String userId,
+                                                       List<String> artifactIds,
+                                                       Integer version,
+                                                       String previousAnalysisId,
+                                                       String batchId) {
         log.info("Executing analysis: {} (version {})", analysisId, version);
 
+        CompletableFuture<?> started = CompletableFuture.completedFuture(null);
         try {
-            // Update status to IN_PROGRESS
-            updateAnalysisStatus(analysisId, "IN_PROGRESS", null);
+            // Status changes are published as events; analysis-service applies them asynchronously
+            started = analysisEventPublisher.publishAnalysisStarted(
+                    new AnalysisStartedEvent(analysisId, projectId, userId, Instant.now()));
+
+            // Fan out the independent context fetches; only the previous report waits on its metadata
+            CompletableFuture<List<Artifact>> artifactsFuture = CompletableFuture
+                    .supplyAsync(() -> fetchArtifacts(artifactIds, userId), taskExecutor)
+                    .orTimeout(artifactsTimeoutMs, TimeUnit.MILLISECONDS);
+
+            CompletableFuture<Object> constraintsFuture = optionalBranch(
+                    CompletableFuture.supplyAsync(() -> fetchProjectConstraints(projectId, userId), taskExecutor),
+                    contextTimeoutMs, "project constraints");
+
+            CompletableFuture<String> previousReportFuture = CompletableFuture.completedFuture(null);
+            if (previousAnalysisId != null && version != null && version > 1) {
+                previousReportFuture = optionalBranch(
+                        CompletableFuture.supplyAsync(() -> fetchPreviousReportUrl(previousAnalysisId), taskExecutor)
+                                .thenApplyAsync(this::retrieveStoredReport, taskExecutor),
+                        previousReportTimeoutMs, "previous report");
+            } else {
+                log.info("No previous analysis comparison needed - version: {}, previousId: {}", version, previousAnalysisId);
+            }
 
-            // Fetch artifacts - NOTE: passes userId as second parameter
-            List<Artifact> artifacts = fetchArtifacts(artifactIds, userId);
+            List<Artifact> artifacts = awaitArtifacts(artifactsFuture);
             log.info("Fetched {} artifacts for analysis", artifacts.size());
 
             if (artifacts.isEmpty()) {
@@ -69,40 +185,76 @@ public class ExecutorService {
             }
 
             // NEW: Build context
-            Map<String, Object> context = buildAnalysisContext(
-                    projectId, userId, version, previousAnalysisId);
-
-            // Run AI analysis with context
-            log.info("Performing AI analysis for analysisId: {}", analysisId);
-            AnalysisReport report = performAnalysis(artifacts, context);
-
-            // Set version
-            report.setVersion(version);
-            report.setAnalysisId(analysisId);
-
-            // NEW: Calculate evolution metrics if previous analysis exists
-            if (previousAnalysisId != null && report.getEvolutionAnalysis() != null) {
-                calculateAndSetEvolutionMetrics(analysisId, report.getEvolutionAnalysis());
+            Map<String, Object> context = buildAnalysisContext(version, previousAnalysisId,
+                    constraintsFuture.join(), previousReportFuture.join());
+            context.put("analysisId", analysisId);
+            context.put("projectId", projectId);
+            // Batch-API analyses queue behind interactive ones for token capacity
+            context.put("batch", batchId != null);
+
+            AnalysisReport report;
+            if (batchId != null && claudeBatchEngine != null) {
+                // Batch runs trade latency for cost: the report arrives when the message batch ends
+                ClaudeBatchEngine.Deferral deferral = claudeBatchEngine.defer(new ClaudeBatchEngine.DeferredAnalysis(
+                        analysisId, projectId, userId, version, previousAnalysisId), artifacts, context);
+                if (deferral.cached().isEmpty()) {
+                    analysisEventPublisher.publishAnalysisDeferred(
+                            new AnalysisDeferredEvent(analysisId, projectId, userId, Instant.now()));
+                    return deferral.submitted();
+                }
+                report = deferral.cached().get();
+            } else {
+                // Run AI analysis with context
+                log.info("Performing AI analysis for analysisId: {}", analysisId);
+                report = performAnalysis(artifacts, context);
             }
 
-            // Store report - NOTE: passes projectId and userId
-            String reportPath = storeReport(analysisId, projectId, userId, report);
-            log.info("Report stored at: {}", reportPath);
-
-            // Update analysis status to COMPLETED
-            updateAnalysisStatus(analysisId, "COMPLETED", reportPath);
-
-            log.info("Analysis execution completed successfully: {}", analysisId);
+            completeAnalysis(analysisId, projectId, userId, version, previousAnalysisId,
+                    (String) context.get("previousReport"), report);
+            return CompletableFuture.completedFuture(null);
 
         } catch (Exception e) {
             log.error("Analysis execution failed: {}", analysisId, e);
-            updateAnalysisStatus(analysisId, "FAILED", null);
+            // The events go to different topics, so FAILED waits until IN_PROGRESS has been sent
+            awaitStarted(analysisId, started);
+            analysisEventPublisher.publishAnalysisFailed(
+                    new AnalysisFailedEvent(analysisId, projectId, userId, e.getMessage(), Instant.now()));
             throw new RuntimeException("Analysis execution failed", e);
         }
     }
 
+    private void completeAnalysis(String analysisId, String projectId, String userId, Integer version,
+                                  String previousAnalysisId, String previousReport, AnalysisReport report) {
+        // Set version
+        report.setVersion(version);
+        report.setAnalysisId(analysisId);
+
+        evolutionDiffEngine.fingerprint(report.getIssues());
+        if (version != null && version > 1) {
+            applyEvolution(analysisId, report, previousReport);
+        } else {
+            report.setEvolutionAnalysis(null);
+        }
+
+        // Store report - NOTE: passes projectId and userId
+        String reportPath = storeReport(analysisId, projectId, userId, report);
+        log.info("Report stored at: {}", reportPath);
+
+        // Update analysis status to COMPLETED
+        analysisEventPublisher.publishAnalysisCompleted(
+                new AnalysisCompletedEvent(analysisId, projectId, userId, reportPath, Instant.now()));
+
+        log.info("Analysis execution completed successfully: {}", analysisId);
+    }
+
     private AnalysisReport performAnalysis(List<Artifact> artifacts, Map<String, Object> context) {
-        if (claudeAnalysisEngine != null) {
+        if (claudeMapReduceEngine != null && claudeMapReduceEngine.handles(artifacts)) {
+            log.info("Using Claude AI in map-reduce mode for {} artifacts", artifacts.size());
+            return claudeMapReduceEngine.analyze(artifacts, context);
+        } else if (claudeTieredEngine != null) {
+            log.info("Using Claude AI in tiered mode");
+            return claudeTieredEngine.analyze(artifacts, context);
+        } else if (claudeAnalysisEngine != null) {
             log.info("Using Claude AI for analysis");
             return claudeAnalysisEngine.analyze(artifacts, context);
         } else if (mockAnalysisEngine != null) {
@@ -121,7 +273,7 @@ public class ExecutorService {
 
         HttpEntity<Void> entity = new HttpEntity<>(headers);
 
-        ResponseEntity<List<Artifact>> response = restTemplate.exchange(
+        ResponseEntity<List<Artifact>> response = artifactsRestTemplate.exchange(
                 url,
                 HttpMethod.GET,
                 entity,
@@ -150,119 +302,165 @@ public class ExecutorService {
         }
     }
 
-    private void updateAnalysisStatus(String analysisId, String status, String reportUrl) {
-        String url = analysisServiceUrl + "/internal/analyses/" + analysisId + "/status";
+    private List<Artifact> awaitArtifacts(CompletableFuture<List<Artifact>> artifactsFuture) {
+        try {
+            List<Artifact> artifacts = artifactsFuture.join();
+            return artifacts != null ? artifacts : List.of();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                throw new RuntimeException("Timed out fetching artifacts after " + artifactsTimeoutMs + " ms");
+            }
+            throw new RuntimeException("Failed to fetch artifacts", e.getCause());
+        }
+    }
 
-        Map<String, String> body = new HashMap<>();
-        body.put("status", status);
-        if (reportUrl != null) {
-            body.put("reportUrl", reportUrl);
+    private void awaitStarted(String analysisId, CompletableFuture<?> started) {
+        try {
+            started.get(contextTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Started event for {} not acknowledged: {}", analysisId, e.getMessage());
         }
+    }
+
+    // Optional context branches degrade to null on timeout or error instead of failing the analysis
+    private <T> CompletableFuture<T> optionalBranch(CompletableFuture<T> branch, long timeoutMs, String name) {
+        return branch
+                .completeOnTimeout(null, timeoutMs, TimeUnit.MILLISECONDS)
+                .exceptionally(e -> {
+                    log.warn("Could not fetch {}: {}", name, e.getMessage());
+                    return null;
+                });
+    }
 
+    private Object fetchProjectConstraints(String projectId, String userId) {
+        String url = projectServiceUrl + "/api/projects/" + projectId + "?userId=" + userId;
         HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("X-User-Id", userId);
+        HttpEntity<Void> entity = new HttpEntity<>(headers);
 
-        HttpEntity<Map<String, String>> entity = new HttpEntity<>(body, headers);
+        ResponseEntity<Map> response = constraintsRestTemplate.exchange(
+                url, HttpMethod.GET, entity, Map.class);
 
-        restTemplate.put(url, entity);
+        if (response.getBody() != null && response.getBody().get("constraints") != null) {
+            log.info("Loaded project constraints: {}", response.getBody().get("constraints"));
+            return response.getBody().get("constraints");
+        }
+        return null;
     }
 
-    private Map<String, Object> buildAnalysisContext(String projectId, String userId,
-                                                     Integer version, String previousAnalysisId) {
+    private Map<String, Object> buildAnalysisContext(Integer version, String previousAnalysisId,
+                                                     Object constraints, String previousReport) {
         Map<String, Object> context = new HashMap<>();
         context.put("version", version);
 
         log.info("Building context for version {}, previousAnalysisId: {}", version, previousAnalysisId);
 
-        // Fetch project constraints
-        try {
-            String url = "http://localhost:8082/api/projects/" + projectId + "?userId=" + userId;
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("X-User-Id", userId);
-            HttpEntity<Void> entity = new HttpEntity<>(headers);
-
-            ResponseEntity<Map> response = restTemplate.exchange(
-                    url, HttpMethod.GET, entity, Map.class);
-
-            if (response.getBody() != null && response.getBody().get("constraints") != null) {
-                context.put("constraints", response.getBody().get("constraints"));
-                log.info("Loaded project constraints: {}", response.getBody().get("constraints"));
-            }
-        } catch (Exception e) {
-            log.warn("Could not fetch project constraints: {}", e.getMessage());
+        if (constraints != null) {
+            context.put("constraints", constraints);
         }
 
-        // Fetch previous report if exists
         if (previousAnalysisId != null && version != null && version > 1) {
-            try {
-                log.info("Attempting to fetch previous report for analysisId: {}", previousAnalysisId);
-                String previousReport = fetchPreviousReport(previousAnalysisId);
-
-                if (previousReport != null && !previousReport.trim().isEmpty()) {
-                    log.info("Successfully fetched previous report, length: {} chars", previousReport.length());
-
-                    // Parse the report to verify it's valid JSON
-                    try {
-                        ObjectMapper mapper = new ObjectMapper();
-                        JsonNode reportNode = mapper.readTree(previousReport);
+            if (previousReport != null && !previousReport.trim().isEmpty()) {
+                log.info("Successfully fetched previous report, length: {} chars", previousReport.length());
 
-                        // Log key info from previous report
-                        log.info("Previous report summary - Version: {}, Issues: {}, Pattern: {}",
-                                reportNode.path("version").asInt(),
-                                reportNode.path("issues").size(),
-                                reportNode.path("architecturePattern").asText());
+                // Parse the report to verify it's valid JSON
+                try {
+                    JsonNode reportNode = objectMapper.readTree(previousReport);
 
-                        context.put("previousReport", previousReport);
-                        log.info("✓ Previous report added to context successfully");
+                    // Log key info from previous report
+                    log.info("Previous report summary - Version: {}, Issues: {}, Pattern: {}",
+                            reportNode.path("version").asInt(),
+                            reportNode.path("issues").size(),
+                            reportNode.path("architecturePattern").asText());
 
-                    } catch (Exception parseEx) {
-                        log.error("Previous report is not valid JSON: {}", parseEx.getMessage());
-                        log.debug("Report content: {}", previousReport.substring(0, Math.min(500, previousReport.length())));
-                    }
+                    context.put("previousReport", previousReport);
+                    log.info("✓ Previous report added to context successfully");
 
-                } else {
-                    log.warn("Previous report is null or empty for analysisId: {}", previousAnalysisId);
+                } catch (Exception parseEx) {
+                    log.error("Previous report is not valid JSON: {}", parseEx.getMessage());
+                    log.debug("Report content: {}", previousReport.substring(0, Math.min(500, previousReport.length())));
                 }
-            } catch (Exception e) {
-                log.error("Failed to fetch previous report for analysisId: {}", previousAnalysisId, e);
+
+            } else {
+                log.warn("Previous report is null or empty for analysisId: {}", previousAnalysisId);
             }
-        } else {
-            log.info("No previous analysis comparison needed - version: {}, previousId: {}", version, previousAnalysisId);
         }
 
         return context;
     }
 
-    private String fetchPreviousReport(String previousAnalysisId) {
-        try {
-            String url = analysisServiceUrl + "/internal/analyses/" + previousAnalysisId;
-            ResponseEntity<Map> response = restTemplate.getForEntity(url, Map.class);
+    private String fetchPreviousReportUrl(String previousAnalysisId) {
+        log.info("Attempting to fetch previous report for analysisId: {}", previousAnalysisId);
+        String url = analysisServiceUrl + "/internal/analyses/" + previousAnalysisId;
+        ResponseEntity<Map> response = previousReportRestTemplate.getForEntity(url, Map.class);
 
-            if (response.getBody() != null && response.getBody().get("reportUrl") != null) {
-                String reportUrl = (String) response.getBody().get("reportUrl");
+        if (response.getBody() != null) {
+            return (String) response.getBody().get("reportUrl");
+        }
+        return null;
+    }
 
-                // Fetch the actual report content
-                if (s3StorageService != null) {
-                    return s3StorageService.retrieveReport(reportUrl);
-                } else if (localStorageService != null) {
-                    return localStorageService.retrieveReport(reportUrl);
-                }
+    private String retrieveStoredReport(String reportUrl) {
+        if (reportUrl == null) {
+            return null;
+        }
+
+        // Fetch the actual report content
+        if (s3StorageService != null) {
+            return s3StorageService.retrieveReport(reportUrl);
+        } else if (localStorageService != null) {
+            return localStorageService.retrieveReport(reportUrl);
+        }
+        return null;
+    }
+
+    // The lists, trend and metrics come from the local fingerprint diff; only the summary is the model's
+    private void applyEvolution(String analysisId, AnalysisReport report, String previousReport) {
+        AnalysisReport previous = null;
+        if (previousReport != null) {
+            try {
+                previous = objectMapper.readValue(previousReport, AnalysisReport.class);
+            } catch (Exception e) {
+                log.error("Previous report is not a readable report: {}", e.getMessage());
             }
+        }
+
+        if (previous == null) {
+            AnalysisReport.EvolutionAnalysis evolution = new AnalysisReport.EvolutionAnalysis();
+            evolution.setResolvedIssues(List.of("Previous report unavailable - cannot determine resolved issues"));
+            evolution.setNewIssues(new ArrayList<>());
+            evolution.setRegressedIssues(new ArrayList<>());
+            evolution.setOverallTrend("UNKNOWN");
+            report.setEvolutionAnalysis(evolution);
+            return;
+        }
+
+        EvolutionDiffEngine.EvolutionDiff diff = evolutionDiffEngine.diff(previous.getIssues(), report.getIssues());
+        String summary = report.getEvolutionAnalysis() != null ? report.getEvolutionAnalysis().getSummary() : null;
+        report.setEvolutionAnalysis(evolutionDiffEngine.toEvolutionAnalysis(diff, summary));
+        log.info("Evolution diff for {}: {} resolved, {} new, {} regressed, {} persisted -> {}", analysisId,
+                diff.resolved().size(), diff.added().size(), diff.regressed().size(), diff.persisted().size(),
+                diff.overallTrend());
+
+        calculateAndSetEvolutionMetrics(analysisId, diff);
+    }
+
+    private String loadPreviousReport(String previousAnalysisId) {
+        try {
+            return retrieveStoredReport(fetchPreviousReportUrl(previousAnalysisId));
         } catch (Exception e) {
-            log.error("Failed to fetch previous report", e);
+            log.warn("Could not fetch previous report {}: {}", previousAnalysisId, e.getMessage());
+            return null;
         }
-        return null;
     }
 
-    private void calculateAndSetEvolutionMetrics(String analysisId,
-                                                 AnalysisReport.EvolutionAnalysis evolution) {
+    private void calculateAndSetEvolutionMetrics(String analysisId, EvolutionDiffEngine.EvolutionDiff diff) {
         try {
-            int resolved = evolution.getResolvedIssues() != null ?
-                    evolution.getResolvedIssues().size() : 0;
-            int newIssues = evolution.getNewIssues() != null ?
-                    evolution.getNewIssues().size() : 0;
-            int regressed = evolution.getRegressedIssues() != null ?
-                    evolution.getRegressedIssues().size() : 0;
+            int resolved = diff.resolved().size();
+            int newIssues = diff.added().size();
+            int regressed = diff.regressed().size();
 
             // Calculate improvement score (0-100)
             double improvementScore = 50.0; // Neutral baseline
@@ -0,0 +1,316 @@
+package com.archsense.executor.service;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+// Work queue for the analysis worker pool. Interactive jobs always go first; batch jobs are taken
+// round-robin across batches so one large CI run cannot hold every worker while a smaller batch
+// waits, and at most maxBatchRunning workers are ever busy with batch work at the same time.
+// Each lane has its own capacity, so a full batch lane never rejects an interactive request.
+class FairJobQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    private final Function<Runnable, String> batchKey;
+    private final int interactiveCapacity;
+    private final int batchCapacity;
+    private final int maxBatchRunning;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private final Deque<Runnable> interactive = new ArrayDeque<>();
+    // Insertion order is the round-robin order; a batch that just had a job taken moves to the back
+    private final LinkedHashMap<String, Deque<Runnable>> batches = new LinkedHashMap<>();
+    private int batchQueued;
+    private int batchRunning;
+
+    FairJobQueue(Function<Runnable, String> batchKey, int interactiveCapacity, int batchCapacity, int maxBatchRunning) {
+        this.batchKey = batchKey;
+        this.interactiveCapacity = interactiveCapacity;
+        this.batchCapacity = batchCapacity;
+        this.maxBatchRunning = maxBatchRunning;
+    }
+
+    // Called by the worker once a batch job handed out by this queue has finished
+    void batchJobFinished() {
+        lock.lock();
+        try {
+            batchRunning = Math.max(0, batchRunning - 1);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getBatchQueued() {
+        lock.lock();
+        try {
+            return batchQueued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getBatchRunning() {
+        lock.lock();
+        try {
+            return batchRunning;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        Objects.requireNonNull(task);
+        lock.lock();
+        try {
+            if (!enqueue(task)) {
+                return false;
+            }
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+        Objects.requireNonNull(task);
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (!enqueue(task)) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(Runnable task) throws InterruptedException {
+        Objects.requireNonNull(task);
+        lock.lockInterruptibly();
+        try {
+            while (!enqueue(task)) {
+                notFull.await();
+            }
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            Runnable task;
+            while ((task = dequeue()) == null) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            Runnable task;
+            while ((task = dequeue()) == null) {
+                notEmpty.await();
+            }
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            if (!interactive.isEmpty()) {
+                return interactive.peekFirst();
+            }
+            return batches.isEmpty() ? null : batches.values().iterator().next().peekFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object task) {
+        lock.lock();
+        try {
+            if (interactive.remove(task)) {
+                notFull.signal();
+                return true;
+            }
+            Iterator<Deque<Runnable>> it = batches.values().iterator();
+            while (it.hasNext()) {
+                Deque<Runnable> lane = it.next();
+                if (lane.remove(task)) {
+                    if (lane.isEmpty()) {
+                        it.remove();
+                    }
+                    batchQueued--;
+                    notFull.signal();
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return interactive.size() + batchQueued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return (interactiveCapacity - interactive.size()) + (batchCapacity - batchQueued);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> target) {
+        return drainTo(target, Integer.MAX_VALUE);
+    }
+
+    // Used on shutdownNow; ignores the batch concurrency limit since nothing will run these anyway
+    @Override
+    public int drainTo(Collection<? super Runnable> target, int maxElements) {
+        lock.lock();
+        try {
+            int drained = 0;
+            while (drained < maxElements && !interactive.isEmpty()) {
+                target.add(interactive.pollFirst());
+                drained++;
+            }
+            Iterator<Deque<Runnable>> it = batches.values().iterator();
+            while (drained < maxElements && it.hasNext()) {
+                Deque<Runnable> lane = it.next();
+                while (drained < maxElements && !lane.isEmpty()) {
+                    target.add(lane.pollFirst());
+                    batchQueued--;
+                    drained++;
+                }
+                if (lane.isEmpty()) {
+                    it.remove();
+                }
+            }
+            if (drained > 0) {
+                notFull.signalAll();
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Weakly consistent snapshot, which is all ThreadPoolExecutor needs for purge and toString
+    @Override
+    public Iterator<Runnable> iterator() {
+        lock.lock();
+        try {
+            List<Runnable> snapshot = new ArrayList<>(interactive);
+            batches.values().forEach(snapshot::addAll);
+            return snapshot.iterator();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean enqueue(Runnable task) {
+        String key = batchKey.apply(task);
+        if (key == null) {
+            if (interactive.size() >= interactiveCapacity) {
+                return false;
+            }
+            interactive.addLast(task);
+            return true;
+        }
+
+        if (batchQueued >= batchCapacity) {
+            return false;
+        }
+        batches.computeIfAbsent(key, k -> new ArrayDeque<>()).addLast(task);
+        batchQueued++;
+        return true;
+    }
+
+    private Runnable dequeue() {
+        Runnable task = interactive.pollFirst();
+        if (task != null) {
+            notFull.signal();
+            return task;
+        }
+
+        if (batches.isEmpty() || batchRunning >= maxBatchRunning) {
+            return null;
+        }
+
+        Iterator<Map.Entry<String, Deque<Runnable>>> it = batches.entrySet().iterator();
+        Map.Entry<String, Deque<Runnable>> next = it.next();
+        it.remove();
+
+        task = next.getValue().pollFirst();
+        if (!next.getValue().isEmpty()) {
+            batches.put(next.getKey(), next.getValue());
+        }
+        batchQueued--;
+        batchRunning++;
+        notFull.signal();
+        return task;
+    }
+}
@@ -0,0 +1,77 @@
+package com.archsense.executor.service;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Virtual-thread counterpart of the worker pool. Virtual threads are cheap to create and are not meant to
+// be pooled, so every job gets a fresh one from a thread-per-task executor; a Semaphore takes the place of
+// the pool size, and one dispatcher thread hands jobs out of the fair queue in the order it decides
+class VirtualJobDispatcher {
+
+    private final BlockingQueue<Runnable> queue;
+    private final Semaphore permits;
+    private final ExecutorService jobExecutor;
+    private final AtomicInteger active = new AtomicInteger();
+    private volatile boolean shuttingDown;
+
+    VirtualJobDispatcher(BlockingQueue<Runnable> queue, int maxConcurrent, ThreadFactory threadFactory) {
+        this.queue = queue;
+        this.permits = new Semaphore(maxConcurrent);
+        this.jobExecutor = Executors.newThreadPerTaskExecutor(threadFactory);
+    }
+
+    void start() {
+        Thread.ofPlatform().daemon().name("analysis-dispatcher").start(this::dispatch);
+    }
+
+    void execute(Runnable task) {
+        if (shuttingDown || !queue.offer(task)) {
+            throw new RejectedExecutionException("Analysis queue is full");
+        }
+    }
+
+    int getActiveCount() {
+        return active.get();
+    }
+
+    // Like the pool's shutdown(): nothing new is accepted, but what is already queued still runs
+    void shutdown() {
+        shuttingDown = true;
+    }
+
+    private void dispatch() {
+        try {
+            while (true) {
+                permits.acquire();
+                // Polled with a timeout so the loop notices shutdown once the queue has drained
+                Runnable task = queue.poll(1, TimeUnit.SECONDS);
+                if (task == null) {
+                    permits.release();
+                    if (shuttingDown && queue.isEmpty()) {
+                        break;
+                    }
+                    continue;
+                }
+                active.incrementAndGet();
+                jobExecutor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        active.decrementAndGet();
+                        permits.release();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            jobExecutor.shutdown();
+        }
+    }
+}
@@ -9,6 +9,7 @@ import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
 
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 
 @Service
@@ -16,16 +17,20 @@ import java.nio.charset.StandardCharsets;
 public class S3StorageService {
 
     private static final Logger log = LoggerFactory.getLogger(S3StorageService.class);
+    private static final String PARTIALS_PREFIX = "partials/";
 
     private final S3Client s3Client;
     private final String bucketName;
+    private final String artifactsBucketName;
 
     public S3StorageService(
             S3Client s3Client,
-            @Value("${storage.s3.bucket-reports}") String bucketName) {
+            @Value("${storage.s3.bucket-reports}") String bucketName,
+            @Value("${storage.s3.bucket-artifacts}") String artifactsBucketName) {
         this.s3Client = s3Client;
         this.bucketName = bucketName;
-        log.info("S3StorageService initialized with bucket: {}", bucketName);
+        this.artifactsBucketName = artifactsBucketName;
+        log.info("S3StorageService initialized with buckets: reports={}, artifacts={}", bucketName, artifactsBucketName);
     }
 
     public String storeReport(String userId, String projectId, String fileName, String content) {
@@ -65,4 +70,44 @@ public class S3StorageService {
             throw new RuntimeException("Failed to retrieve report from S3", e);
         }
     }
-}
\ No newline at end of file
+
+    // Partial results live next to the reports, keyed by content rather than by user or project
+    public void storePartial(String key, String content) {
+        PutObjectRequest putRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(PARTIALS_PREFIX + key + ".json")
+                .contentType("application/json")
+                .build();
+        s3Client.putObject(putRequest, RequestBody.fromString(content, StandardCharsets.UTF_8));
+    }
+
+    // Null when there is no partial for the key yet
+    public String retrievePartial(String key) {
+        try {
+            GetObjectRequest getRequest = GetObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(PARTIALS_PREFIX + key + ".json")
+                    .build();
+            return s3Client.getObjectAsBytes(getRequest).asUtf8String();
+        } catch (NoSuchKeyException e) {
+            return null;
+        }
+    }
+
+    public InputStream openArtifact(String s3Key) {
+        log.debug("Opening artifact from S3: bucket={}, key={}", artifactsBucketName, s3Key);
+
+        try {
+            GetObjectRequest getRequest = GetObjectRequest.builder()
+                    .bucket(artifactsBucketName)
+                    .key(s3Key)
+                    .build();
+
+            // The caller streams the object body and must close it to release the connection
+            return s3Client.getObject(getRequest);
+        } catch (S3Exception e) {
+            log.error("Failed to open artifact from S3: {}", s3Key, e);
+            throw new RuntimeException("Failed to retrieve artifact from S3", e);
+        }
+    }
+}
@@ -7,6 +7,7 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -20,6 +21,12 @@ public class StorageService {
     @Value("${storage.local.reports-path:./storage/reports}")
     private String reportsBasePath;
 
+    @Value("${storage.local.artifacts-path:./storage/artifacts}")
+    private String artifactsBasePath;
+
+    @Value("${storage.local.partials-path:./storage/partials}")
+    private String partialsBasePath;
+
     public String storeReport(String userId, String projectId, String fileName, String content) {
         try {
             // fileName includes analysisId/report.json, so we need to create the full path
@@ -57,4 +64,23 @@ public class StorageService {
             throw new RuntimeException("Failed to retrieve report", e);
         }
     }
-}
\ No newline at end of file
+
+    public void storePartial(String key, String content) throws IOException {
+        Path filePath = Paths.get(partialsBasePath, key + ".json");
+        Files.createDirectories(filePath.getParent());
+        Files.writeString(filePath, content);
+    }
+
+    // Null when there is no partial for the key yet
+    public String retrievePartial(String key) throws IOException {
+        Path filePath = Paths.get(partialsBasePath, key + ".json");
+        return Files.exists(filePath) ? Files.readString(filePath) : null;
+    }
+
+    public InputStream openArtifact(String s3Key) throws IOException {
+        // Artifacts are binary; stream the raw bytes instead of decoding them as text
+        Path filePath = Paths.get(artifactsBasePath).resolve(s3Key);
+        log.debug("Opening artifact from: {}", filePath);
+        return Files.newInputStream(filePath);
+    }
+}
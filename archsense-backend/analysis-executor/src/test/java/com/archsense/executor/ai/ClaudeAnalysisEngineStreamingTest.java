@@ -0,0 +1,157 @@
+package com.archsense.executor.ai;
+
+import com.archsense.executor.cache.ArtifactCache;
+import com.archsense.executor.cache.ReportCache;
+import com.archsense.executor.client.AnalysisServiceClient;
+import com.archsense.executor.model.AnalysisReport;
+import com.archsense.executor.model.Artifact;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+// Streaming mode against a local stub of the Messages API that answers in SSE
+class ClaudeAnalysisEngineStreamingTest {
+
+    private static final String REPORT = """
+            {"summary":"Three-tier web app","architecturePattern":"Layered",
+             "components":["web","api","db"],"connections":["web->api","api->db"],
+             "issues":[{"severity":"HIGH","category":"Reliability","description":"Single database instance","location":"db"},
+                       {"severity":"MEDIUM","category":"Security","description":"No WAF in front of web","location":"web"}],
+             "recommendations":[]}""";
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AnalysisServiceClient analysisServiceClient = mock(AnalysisServiceClient.class);
+    private MockWebServer server;
+    private ClaudeAnalysisEngine engine;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        engine = new ClaudeAnalysisEngine(server.url("/").toString().replaceAll("/$", ""), "test-key",
+                "claude-test", 4096, true, 0, true, 200000, 50000, false, 2000, 15000,
+                objectMapper, meterRegistry, mock(ReportCache.class), mock(ArtifactCache.class),
+                mock(ImagePreprocessor.class), mock(DocumentTextReader.class),
+                new ClaudeCallGuard(meterRegistry, 1, 1, 1, 1000, 5, 1000),
+                new TokenRateGovernor(meterRegistry, false, 1, 1, 1, 10));
+        ReflectionTestUtils.setField(engine, "analysisServiceClient", analysisServiceClient);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    void parsesReportFromDeltasAndPublishesProgress() throws Exception {
+        server.enqueue(sse(streamOf(REPORT, 17)));
+
+        AnalysisReport report = engine.analyze(List.of(artifact()), context());
+
+        assertThat(report.getSummary()).isEqualTo("Three-tier web app");
+        assertThat(report.getIssues()).extracting(AnalysisReport.Issue::getSeverity).containsExactly("HIGH", "MEDIUM");
+        assertThat(report.getTokenUsage().getInputTokens()).isEqualTo(1200);
+        assertThat(report.getTokenUsage().getOutputTokens()).isEqualTo(310);
+        assertThat(report.getTokenUsage().getTimeToFirstTokenMs()).isNotNull();
+
+        RecordedRequest request = server.takeRequest();
+        assertThat(request.getPath()).isEqualTo("/v1/messages");
+        assertThat(request.getHeader("x-api-key")).isEqualTo("test-key");
+        assertThat(objectMapper.readTree(request.getBody().readUtf8()).path("stream").asBoolean()).isTrue();
+
+        // Issues are reported while the stream is still open, the last update covering both
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<String>> partialIssues = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<Integer> issuesFound = ArgumentCaptor.forClass(Integer.class);
+        verify(analysisServiceClient, atLeastOnce())
+                .updateProgress(eq("analysis-1"), issuesFound.capture(), partialIssues.capture());
+        assertThat(issuesFound.getAllValues()).isSorted().last().isEqualTo(2);
+        assertThat(partialIssues.getValue()).containsExactly(
+                "[HIGH] Reliability: Single database instance",
+                "[MEDIUM] Security: No WAF in front of web");
+    }
+
+    @Test
+    void streamWithoutContentFails() {
+        server.enqueue(sse(List.of(
+                event("message_start", "{\"type\":\"message_start\",\"message\":{\"usage\":{\"input_tokens\":10}}}"),
+                event("message_stop", "{\"type\":\"message_stop\"}"))));
+
+        assertThatThrownBy(() -> engine.analyze(List.of(artifact()), context()))
+                .hasMessageContaining("without any content");
+        verify(analysisServiceClient, never()).updateProgress(eq("analysis-1"), anyInt(), anyList());
+    }
+
+    // The report text split into fixed-size deltas, so JSON tokens are cut at arbitrary points
+    static List<String> streamOf(String report, int chunkSize) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        List<String> events = new ArrayList<>();
+        events.add(event("message_start",
+                "{\"type\":\"message_start\",\"message\":{\"usage\":{\"input_tokens\":1200,\"output_tokens\":1}}}"));
+        events.add(event("content_block_start",
+                "{\"type\":\"content_block_start\",\"index\":0,\"content_block\":{\"type\":\"text\",\"text\":\"\"}}"));
+        for (int i = 0; i < report.length(); i += chunkSize) {
+            String chunk = report.substring(i, Math.min(report.length(), i + chunkSize));
+            events.add(event("content_block_delta", "{\"type\":\"content_block_delta\",\"index\":0,"
+                    + "\"delta\":{\"type\":\"text_delta\",\"text\":" + mapper.writeValueAsString(chunk) + "}}"));
+        }
+        events.add(event("content_block_stop", "{\"type\":\"content_block_stop\",\"index\":0}"));
+        events.add(event("message_delta",
+                "{\"type\":\"message_delta\",\"delta\":{\"stop_reason\":\"end_turn\"},\"usage\":{\"output_tokens\":310}}"));
+        events.add(event("message_stop", "{\"type\":\"message_stop\"}"));
+        return events;
+    }
+
+    static String event(String type, String data) {
+        return "event: " + type + "\ndata: " + data + "\n\n";
+    }
+
+    static MockResponse sse(List<String> events) {
+        return new MockResponse()
+                .setHeader("content-type", "text/event-stream")
+                .setBody(String.join("", events));
+    }
+
+    static Artifact artifact() {
+        Artifact artifact = new Artifact();
+        artifact.setId("artifact-1");
+        artifact.setName("architecture.txt");
+        artifact.setType("TEXT");
+        artifact.setS3Key("user/project/architecture.txt");
+        artifact.setSize(42);
+        return artifact;
+    }
+
+    static Map<String, Object> context() {
+        Map<String, Object> context = new HashMap<>();
+        context.put("analysisId", "analysis-1");
+        context.put("projectId", "project-1");
+        context.put("version", 1);
+        return context;
+    }
+}
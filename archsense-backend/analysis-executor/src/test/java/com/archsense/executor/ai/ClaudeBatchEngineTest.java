@@ -0,0 +1,345 @@
+package com.archsense.executor.ai;
+
+import com.archsense.executor.cache.ArtifactCache;
+import com.archsense.executor.cache.ReportCache;
+import com.archsense.executor.model.AnalysisReport;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.archsense.executor.ai.ClaudeAnalysisEngineStreamingTest.artifact;
+import static com.archsense.executor.ai.ClaudeAnalysisEngineStreamingTest.context;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Submit, poll and result handling against a local stub of the Message Batches API, with an in-memory
+// stand-in for the Redis keys that let a batch outlive the replica that submitted it
+class ClaudeBatchEngineTest {
+
+    private static final String REPORT = """
+            {"summary":"Event-driven order pipeline","architecturePattern":"Event-driven",
+             "components":["orders","queue"],"connections":["orders->queue"],
+             "issues":[{"severity":"HIGH","category":"Reliability","description":"No dead-letter queue","location":"queue"}],
+             "recommendations":[]}""";
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final FakeRedis redis = new FakeRedis();
+    private final List<String> reports = new CopyOnWriteArrayList<>();
+    private final List<String> failures = new CopyOnWriteArrayList<>();
+    private MockWebServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    void submitsCollectedAnalysesAndHandsBackResults() throws Exception {
+        ClaudeBatchEngine engine = newEngine(60000);
+        ClaudeBatchEngine.Deferral first = defer(engine, "analysis-1");
+        ClaudeBatchEngine.Deferral second = defer(engine, "analysis-2");
+        assertThat(first.cached()).isEmpty();
+        // Nothing is sent, so nothing may be acknowledged, until the collect window closes
+        assertThat(first.submitted()).isNotDone();
+
+        server.enqueue(json("{\"id\":\"msgbatch_1\",\"processing_status\":\"in_progress\"}"));
+        engine.flush();
+
+        assertThat(first.submitted()).isCompleted();
+        assertThat(second.submitted()).isCompleted();
+        RecordedRequest submission = server.takeRequest();
+        assertThat(submission.getPath()).isEqualTo("/v1/messages/batches");
+        JsonNode requests = objectMapper.readTree(submission.getBody().readUtf8()).path("requests");
+        assertThat(requests.findValuesAsText("custom_id")).containsExactly("analysis-1", "analysis-2");
+        assertThat(requests.get(0).path("params").path("stream").asBoolean(false)).isFalse();
+        assertThat(redis.members).containsExactly("msgbatch_1");
+
+        server.enqueue(json("{\"id\":\"msgbatch_1\",\"processing_status\":\"in_progress\"}"));
+        engine.poll();
+        assertThat(reports).isEmpty();
+
+        enqueueEnded("msgbatch_1", succeeded("analysis-1"), errored("analysis-2", "prompt is too long"));
+        engine.poll();
+
+        assertThat(reports).containsExactly("analysis-1: Event-driven order pipeline");
+        assertThat(failures).singleElement().asString()
+                .startsWith("analysis-2: ").contains("errored").contains("prompt is too long");
+        assertThat(redis.members).isEmpty();
+        assertThat(redis.values).isEmpty();
+    }
+
+    @Test
+    void failedSubmissionFailsTheAnalyses() throws Exception {
+        ClaudeBatchEngine engine = newEngine(60000);
+        ClaudeBatchEngine.Deferral deferral = defer(engine, "analysis-1");
+
+        server.enqueue(new MockResponse().setResponseCode(400).setBody("{\"error\":{\"message\":\"bad\"}}"));
+        engine.flush();
+
+        assertThat(deferral.submitted()).isCompletedExceptionally();
+        assertThat(failures).singleElement().asString().contains("submission failed");
+        assertThat(redis.members).isEmpty();
+    }
+
+    @Test
+    void anotherReplicaTakesOverOnlyOnceTheOwnerStopsRenewing() throws Exception {
+        ClaudeBatchEngine owner = newEngine(300);
+        defer(owner, "analysis-1");
+        server.enqueue(json("{\"id\":\"msgbatch_1\",\"processing_status\":\"in_progress\"}"));
+        owner.flush();
+        server.takeRequest();
+
+        // A second replica leaves a batch alone while its owner keeps the lease
+        ClaudeBatchEngine other = newEngine(300);
+        other.recoverInFlightBatches();
+        other.poll();
+        assertThat(server.getRequestCount()).isEqualTo(1);
+
+        // The owner dies without releasing it; once the lease runs out the other replica finishes the batch
+        Thread.sleep(400);
+        enqueueEnded("msgbatch_1", succeeded("analysis-1"));
+        other.poll();
+        assertThat(reports).containsExactly("analysis-1: Event-driven order pipeline");
+
+        // Had the owner only paused, it must not deliver the batch a second time
+        owner.poll();
+        assertThat(server.getRequestCount()).isEqualTo(3);
+        assertThat(reports).hasSize(1);
+    }
+
+    @Test
+    void restartedReplicaResumesItsBatchesAfterReleasingThem() throws Exception {
+        ClaudeBatchEngine before = newEngine(60000);
+        defer(before, "analysis-1");
+        server.enqueue(json("{\"id\":\"msgbatch_1\",\"processing_status\":\"in_progress\"}"));
+        before.flush();
+        server.takeRequest();
+        before.releaseLeases();
+
+        ClaudeBatchEngine after = newEngine(60000);
+        after.recoverInFlightBatches();
+        enqueueEnded("msgbatch_1", succeeded("analysis-1"));
+        after.poll();
+
+        assertThat(reports).containsExactly("analysis-1: Event-driven order pipeline");
+        assertThat(redis.members).isEmpty();
+    }
+
+    @Test
+    void resultsReadThatBreaksOffIsResumedWithoutRepeatingAny() throws Exception {
+        ClaudeBatchEngine first = newEngine(60000);
+        defer(first, "analysis-1");
+        defer(first, "analysis-2");
+        defer(first, "analysis-3");
+        server.enqueue(json("{\"id\":\"msgbatch_1\",\"processing_status\":\"in_progress\"}"));
+        first.flush();
+        server.takeRequest();
+
+        // The connection drops after the first result
+        enqueueEndedBreakingOff("msgbatch_1", List.of(succeeded("analysis-1")), succeeded("analysis-2"));
+        first.poll();
+        assertThat(reports).containsExactly("analysis-1: Event-driven order pipeline");
+
+        // The retry gets further before breaking off again
+        enqueueEndedBreakingOff("msgbatch_1", List.of(succeeded("analysis-1"), succeeded("analysis-2")),
+                succeeded("analysis-3"));
+        first.poll();
+        assertThat(reports).containsExactly("analysis-1: Event-driven order pipeline",
+                "analysis-2: Event-driven order pipeline");
+
+        // Another replica that takes the batch over only finishes what is left
+        first.releaseLeases();
+        ClaudeBatchEngine second = newEngine(60000);
+        second.recoverInFlightBatches();
+        enqueueEnded("msgbatch_1", succeeded("analysis-2"), succeeded("analysis-1"), succeeded("analysis-3"));
+        second.poll();
+
+        assertThat(reports).containsExactly("analysis-1: Event-driven order pipeline",
+                "analysis-2: Event-driven order pipeline", "analysis-3: Event-driven order pipeline");
+        assertThat(failures).isEmpty();
+        assertThat(redis.members).isEmpty();
+        assertThat(redis.values).isEmpty();
+        assertThat(redis.sets).isEmpty();
+    }
+
+    private ClaudeBatchEngine newEngine(long leaseMs) {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        String baseUrl = server.url("/").toString().replaceAll("/$", "");
+        ClaudeAnalysisEngine analysisEngine = new ClaudeAnalysisEngine(baseUrl, "test-key",
+                "claude-test", 4096, true, 0, false, 200000, 50000, false, 2000, 15000,
+                objectMapper, meterRegistry, mock(ReportCache.class), mock(ArtifactCache.class),
+                mock(ImagePreprocessor.class), mock(DocumentTextReader.class),
+                new ClaudeCallGuard(meterRegistry, 1, 1, 1, 1000, 5, 1000),
+                new TokenRateGovernor(meterRegistry, false, 1, 1, 1, 10));
+
+        ClaudeBatchEngine engine = new ClaudeBatchEngine(baseUrl, "test-key", 100, true, leaseMs,
+                analysisEngine, objectMapper);
+        ReflectionTestUtils.setField(engine, "redisTemplate", redis.template());
+        engine.setResultHandler(new ClaudeBatchEngine.ResultHandler() {
+            @Override
+            public void onReport(ClaudeBatchEngine.DeferredAnalysis analysis, AnalysisReport report) {
+                reports.add(analysis.analysisId() + ": " + report.getSummary());
+            }
+
+            @Override
+            public void onFailure(ClaudeBatchEngine.DeferredAnalysis analysis, String error) {
+                failures.add(analysis.analysisId() + ": " + error);
+            }
+        });
+        return engine;
+    }
+
+    private ClaudeBatchEngine.Deferral defer(ClaudeBatchEngine engine, String analysisId) {
+        Map<String, Object> context = context();
+        context.put("analysisId", analysisId);
+        return engine.defer(new ClaudeBatchEngine.DeferredAnalysis(analysisId, "project-1", "user-1", 1, null),
+                List.of(artifact()), context);
+    }
+
+    private void enqueueEnded(String batchId, String... results) {
+        server.enqueue(json("{\"id\":\"" + batchId + "\",\"processing_status\":\"ended\",\"results_url\":\""
+                + server.url("/v1/messages/batches/" + batchId + "/results") + "\"}"));
+        server.enqueue(new MockResponse().setBody(String.join("\n", results) + "\n"));
+    }
+
+    // Sends the delivered results in full, then drops the connection partway through the next one
+    private void enqueueEndedBreakingOff(String batchId, List<String> delivered, String next) {
+        String sent = String.join("\n", delivered) + "\n";
+        // The stub disconnects halfway through the body, so whatever follows is as long as what is sent
+        String cut = next.repeat(sent.length() / next.length() + 1).substring(0, sent.length());
+        server.enqueue(json("{\"id\":\"" + batchId + "\",\"processing_status\":\"ended\"}"));
+        server.enqueue(new MockResponse().setBody(sent + cut)
+                .setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY));
+    }
+
+    private String succeeded(String analysisId) throws Exception {
+        return "{\"custom_id\":\"" + analysisId + "\",\"result\":{\"type\":\"succeeded\",\"message\":{"
+                + "\"content\":[{\"type\":\"text\",\"text\":" + objectMapper.writeValueAsString(REPORT) + "}],"
+                + "\"usage\":{\"input_tokens\":900,\"output_tokens\":200}}}}";
+    }
+
+    private static String errored(String analysisId, String message) {
+        return "{\"custom_id\":\"" + analysisId + "\",\"result\":{\"type\":\"errored\",\"error\":{\"type\":\"error\","
+                + "\"error\":{\"type\":\"invalid_request_error\",\"message\":\"" + message + "\"}}}}";
+    }
+
+    private static MockResponse json(String body) {
+        return new MockResponse().setHeader("content-type", "application/json").setBody(body);
+    }
+
+    // The handful of Redis operations the engine uses, with the lease scripts evaluated in Java
+    private static class FakeRedis {
+
+        final Map<String, String> values = new ConcurrentHashMap<>();
+        final Map<String, Long> expiresAt = new ConcurrentHashMap<>();
+        final Set<String> members = ConcurrentHashMap.newKeySet();
+        // Every other set, by key
+        final Map<String, Set<String>> sets = new ConcurrentHashMap<>();
+
+        @SuppressWarnings("unchecked")
+        StringRedisTemplate template() {
+            StringRedisTemplate template = mock(StringRedisTemplate.class);
+            ValueOperations<String, String> valueOps = mock(ValueOperations.class);
+            SetOperations<String, String> setOps = mock(SetOperations.class);
+            when(template.opsForValue()).thenReturn(valueOps);
+            when(template.opsForSet()).thenReturn(setOps);
+
+            doAnswer(invocation -> {
+                values.put(invocation.getArgument(0), invocation.getArgument(1));
+                return null;
+            }).when(valueOps).set(anyString(), anyString());
+            when(valueOps.get(anyString())).thenAnswer(invocation -> get(invocation.getArgument(0)));
+            when(setOps.members(anyString())).thenAnswer(invocation -> Set.copyOf(set(invocation.getArgument(0))));
+            when(setOps.add(anyString(), any(String[].class))).thenAnswer(invocation ->
+                    set(invocation.getArgument(0)).add(invocation.getArgument(1)) ? 1L : 0L);
+            when(setOps.remove(anyString(), any(Object[].class))).thenAnswer(invocation ->
+                    set(invocation.getArgument(0)).remove((String) invocation.getArgument(1)) ? 1L : 0L);
+            when(template.delete(anyCollection())).thenAnswer(invocation -> {
+                Collection<String> keys = invocation.getArgument(0);
+                keys.forEach(this::delete);
+                return (long) keys.size();
+            });
+            when(template.execute(ArgumentMatchers.<RedisScript<Long>>any(), anyList(), any(Object[].class)))
+                    .thenAnswer(invocation -> {
+                        List<String> keys = invocation.getArgument(1);
+                        Object[] args = Arrays.copyOfRange(invocation.getArguments(), 2, invocation.getArguments().length);
+                        return args.length == 2 ? claim(keys, (String) args[0], Long.parseLong((String) args[1]))
+                                : release(keys.get(0), (String) args[0]);
+                    });
+            return template;
+        }
+
+        private synchronized long claim(List<String> keys, String owner, long leaseMs) {
+            if (get(keys.get(1)) == null) {
+                return 0;
+            }
+            String current = get(keys.get(0));
+            if (current != null && !current.equals(owner)) {
+                return 0;
+            }
+            values.put(keys.get(0), owner);
+            expiresAt.put(keys.get(0), System.currentTimeMillis() + leaseMs);
+            return 1;
+        }
+
+        private synchronized long release(String key, String owner) {
+            if (!owner.equals(get(key))) {
+                return 0;
+            }
+            delete(key);
+            return 1;
+        }
+
+        private String get(String key) {
+            Long expiry = expiresAt.get(key);
+            if (expiry != null && expiry <= System.currentTimeMillis()) {
+                delete(key);
+            }
+            return values.get(key);
+        }
+
+        private Set<String> set(String key) {
+            return "message_batches".equals(key) ? members : sets.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet());
+        }
+
+        private void delete(String key) {
+            values.remove(key);
+            expiresAt.remove(key);
+            sets.remove(key);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.archsense.executor.ai;
+
+import com.archsense.executor.cache.ArtifactCache;
+import com.archsense.executor.cache.ReportCache;
+import com.archsense.executor.model.AnalysisReport;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.archsense.executor.ai.ClaudeAnalysisEngineStreamingTest.artifact;
+import static com.archsense.executor.ai.ClaudeAnalysisEngineStreamingTest.context;
+import static com.archsense.executor.ai.ClaudeAnalysisEngineStreamingTest.event;
+import static com.archsense.executor.ai.ClaudeAnalysisEngineStreamingTest.sse;
+import static com.archsense.executor.ai.ClaudeAnalysisEngineStreamingTest.streamOf;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Retry and circuit breaker behaviour of real engine calls against a local stub of the Messages API
+class ClaudeCallGuardTest {
+
+    private static final String REPORT = """
+            {"summary":"Static site behind a CDN","architecturePattern":"Serverless",
+             "components":["cdn","bucket"],"connections":["cdn->bucket"],
+             "issues":[{"severity":"LOW","category":"Cost","description":"No cache headers on assets","location":"bucket"}],
+             "recommendations":[]}""";
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private MockWebServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    void waitsForRetryAfterOn429() {
+        ClaudeCallGuard guard = guard(3, 5, 60000);
+        ClaudeAnalysisEngine engine = engine(guard, false);
+        server.enqueue(error(429, "rate_limit_error").setHeader("retry-after", "0.3"));
+        server.enqueue(ok());
+
+        long startedAt = System.nanoTime();
+        AnalysisReport report = engine.analyze(List.of(artifact()), context());
+
+        assertThat(report.getSummary()).isEqualTo("Static site behind a CDN");
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt)).isGreaterThanOrEqualTo(300);
+        assertThat(server.getRequestCount()).isEqualTo(2);
+        assertThat(attempts("429")).isEqualTo(1);
+        assertThat(attempts("success")).isEqualTo(1);
+    }
+
+    @Test
+    void backsOffOnItsOwnWhen429HasNoRetryAfter() {
+        ClaudeAnalysisEngine engine = engine(guard(3, 5, 60000), false);
+        server.enqueue(error(429, "rate_limit_error"));
+        server.enqueue(ok());
+
+        assertThat(engine.analyze(List.of(artifact()), context()).getSummary()).isEqualTo("Static site behind a CDN");
+        assertThat(server.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    void retryAfterLongerThanAllowedFailsAtOnce() {
+        ClaudeAnalysisEngine engine = engine(guard(3, 5, 60000), false);
+        server.enqueue(error(429, "rate_limit_error").setHeader("retry-after", "120"));
+
+        assertThatThrownBy(() -> engine.analyze(List.of(artifact()), context())).hasMessageContaining("429");
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    void retriesOverloaded529UntilItSucceeds() {
+        ClaudeAnalysisEngine engine = engine(guard(3, 5, 60000), false);
+        server.enqueue(error(529, "overloaded_error"));
+        server.enqueue(error(529, "overloaded_error"));
+        server.enqueue(ok());
+
+        assertThat(engine.analyze(List.of(artifact()), context()).getSummary()).isEqualTo("Static site behind a CDN");
+        assertThat(server.getRequestCount()).isEqualTo(3);
+        assertThat(attempts("529")).isEqualTo(2);
+    }
+
+    @Test
+    void retriesOverloadThatArrivesMidStream() throws Exception {
+        ClaudeAnalysisEngine engine = engine(guard(3, 5, 60000), true);
+        List<String> overloaded = new ArrayList<>(streamOf(REPORT, 40).subList(0, 3));
+        overloaded.add(event("error", "{\"type\":\"error\",\"error\":{\"type\":\"overloaded_error\",\"message\":\"Overloaded\"}}"));
+        server.enqueue(sse(overloaded));
+        server.enqueue(sse(streamOf(REPORT, 40)));
+
+        assertThat(engine.analyze(List.of(artifact()), context()).getSummary()).isEqualTo("Static site behind a CDN");
+        assertThat(server.getRequestCount()).isEqualTo(2);
+        assertThat(attempts("529")).isEqualTo(1);
+    }
+
+    @Test
+    void retriesATimedOutCall() {
+        ClaudeAnalysisEngine engine = engine(guard(3, 5, 60000), false);
+        ReflectionTestUtils.setField(engine, "httpClient",
+                new OkHttpClient.Builder().readTimeout(200, TimeUnit.MILLISECONDS).build());
+        server.enqueue(ok().setHeadersDelay(1, TimeUnit.SECONDS));
+        server.enqueue(ok());
+
+        assertThat(engine.analyze(List.of(artifact()), context()).getSummary()).isEqualTo("Static site behind a CDN");
+        assertThat(attempts("timeout")).isEqualTo(1);
+    }
+
+    @Test
+    void rejectedRequestIsNotRetriedAndLeavesTheCircuitClosed() {
+        ClaudeCallGuard guard = guard(3, 1, 60000);
+        ClaudeAnalysisEngine engine = engine(guard, false);
+        server.enqueue(error(400, "invalid_request_error"));
+
+        assertThatThrownBy(() -> engine.analyze(List.of(artifact()), context())).hasMessageContaining("400");
+        assertThat(server.getRequestCount()).isEqualTo(1);
+        assertThat(guard.getState()).isEqualTo(ClaudeCallGuard.State.CLOSED);
+    }
+
+    @Test
+    void consecutiveFailuresOpenTheCircuit() {
+        ClaudeCallGuard guard = guard(1, 2, 60000);
+        guard.registerMetrics();
+        ClaudeAnalysisEngine engine = engine(guard, false);
+        server.enqueue(error(503, "api_error"));
+        server.enqueue(error(503, "api_error"));
+
+        assertThatThrownBy(() -> engine.analyze(List.of(artifact()), context())).hasMessageContaining("503");
+        assertThat(guard.getState()).isEqualTo(ClaudeCallGuard.State.CLOSED);
+        assertThatThrownBy(() -> engine.analyze(List.of(artifact()), context())).hasMessageContaining("503");
+        assertThat(guard.getState()).isEqualTo(ClaudeCallGuard.State.OPEN);
+        assertThat(meterRegistry.get("archsense.claude.circuit.state").gauge().value())
+                .isEqualTo(ClaudeCallGuard.State.OPEN.ordinal());
+
+        // Open: no call reaches the API
+        assertThatThrownBy(() -> engine.analyze(List.of(artifact()), context())).hasMessageContaining("circuit is open");
+        assertThat(server.getRequestCount()).isEqualTo(2);
+        assertThat(meterRegistry.get("archsense.claude.circuit.rejected").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void halfOpenLetsOneTrialDecide() throws Exception {
+        ClaudeCallGuard guard = guard(1, 1, 200);
+        ClaudeAnalysisEngine engine = engine(guard, false);
+        server.enqueue(error(503, "api_error"));
+        assertThatThrownBy(() -> engine.analyze(List.of(artifact()), context())).hasMessageContaining("503");
+        assertThat(guard.getState()).isEqualTo(ClaudeCallGuard.State.OPEN);
+
+        // A failed trial opens it again straight away
+        Thread.sleep(250);
+        assertThat(guard.getState()).isEqualTo(ClaudeCallGuard.State.HALF_OPEN);
+        server.enqueue(error(503, "api_error"));
+        assertThatThrownBy(() -> engine.analyze(List.of(artifact()), context())).hasMessageContaining("503");
+        assertThat(guard.getState()).isEqualTo(ClaudeCallGuard.State.OPEN);
+
+        // While the trial is out everyone else is still turned away; its success closes the circuit
+        Thread.sleep(250);
+        server.enqueue(ok().setHeadersDelay(300, TimeUnit.MILLISECONDS));
+        CompletableFuture<AnalysisReport> trial = CompletableFuture.supplyAsync(
+                () -> engine.analyze(List.of(artifact()), context()));
+        // The two failed calls, then the trial, which is now waiting on its response
+        for (int i = 0; i < 3; i++) {
+            assertThat(server.takeRequest(5, TimeUnit.SECONDS)).isNotNull();
+        }
+        assertThatThrownBy(() -> engine.analyze(List.of(artifact()), context())).hasMessageContaining("circuit is open");
+
+        assertThat(trial.get(5, TimeUnit.SECONDS).getSummary()).isEqualTo("Static site behind a CDN");
+        assertThat(guard.getState()).isEqualTo(ClaudeCallGuard.State.CLOSED);
+        assertThat(server.getRequestCount()).isEqualTo(3);
+    }
+
+    @Test
+    void tokenCapacityTimeoutLeavesTheCircuitAlone() throws Exception {
+        ClaudeCallGuard guard = guard(1, 1, 200);
+        ClaudeAnalysisEngine engine = engine(guard, false);
+        server.enqueue(error(503, "api_error"));
+        assertThatThrownBy(() -> engine.analyze(List.of(artifact()), context())).hasMessageContaining("503");
+        Thread.sleep(250);
+
+        // The half-open trial never gets a request out: the token buckets stay empty
+        TokenRateGovernor governor = new TokenRateGovernor(meterRegistry, true, 1000, 1000, 50, 10);
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        when(redisTemplate.execute(ArgumentMatchers.<RedisScript<Long>>any(), anyList(), any(Object[].class))).thenReturn(60000L);
+        ReflectionTestUtils.setField(governor, "redisTemplate", redisTemplate);
+        ClaudeAnalysisEngine starved = engine(guard, false, governor);
+        assertThatThrownBy(() -> starved.analyze(List.of(artifact()), context())).hasMessageContaining("No token capacity");
+
+        assertThat(server.getRequestCount()).isEqualTo(1);
+        assertThat(attempts("error")).isZero();
+        assertThat(guard.getState()).isEqualTo(ClaudeCallGuard.State.HALF_OPEN);
+
+        // ...so the next caller still gets to run the trial
+        server.enqueue(ok());
+        assertThat(engine.analyze(List.of(artifact()), context()).getSummary()).isEqualTo("Static site behind a CDN");
+        assertThat(guard.getState()).isEqualTo(ClaudeCallGuard.State.CLOSED);
+    }
+
+    private ClaudeCallGuard guard(int maxAttempts, int failureThreshold, long openMs) {
+        return new ClaudeCallGuard(meterRegistry, maxAttempts, 1, 5, 2000, failureThreshold, openMs);
+    }
+
+    private ClaudeAnalysisEngine engine(ClaudeCallGuard guard, boolean streaming) {
+        return engine(guard, streaming, new TokenRateGovernor(meterRegistry, false, 1, 1, 1, 10));
+    }
+
+    private ClaudeAnalysisEngine engine(ClaudeCallGuard guard, boolean streaming, TokenRateGovernor governor) {
+        return new ClaudeAnalysisEngine(server.url("/").toString().replaceAll("/$", ""), "test-key",
+                "claude-test", 4096, streaming, 0, true, 200000, 50000, false, 2000, 15000,
+                objectMapper, meterRegistry, mock(ReportCache.class), mock(ArtifactCache.class),
+                mock(ImagePreprocessor.class), mock(DocumentTextReader.class),
+                guard, governor);
+    }
+
+    private long attempts(String outcome) {
+        return meterRegistry.find("archsense.claude.attempts").tag("outcome", outcome).timers().stream()
+                .mapToLong(Timer::count).sum();
+    }
+
+    private MockResponse ok() {
+        try {
+            return new MockResponse().setHeader("content-type", "application/json")
+                    .setBody("{\"content\":[{\"type\":\"text\",\"text\":" + objectMapper.writeValueAsString(REPORT)
+                            + "}],\"usage\":{\"input_tokens\":800,\"output_tokens\":150}}");
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MockResponse error(int status, String type) {
+        return new MockResponse().setResponseCode(status).setHeader("content-type", "application/json")
+                .setBody("{\"type\":\"error\",\"error\":{\"type\":\"" + type + "\",\"message\":\"" + type + "\"}}");
+    }
+}
@@ -0,0 +1,109 @@
+package com.archsense.executor.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ArtifactCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void leavesFilesItDidNotCreate() throws Exception {
+        Path foreignFile = Files.writeString(directory.resolve("notes.txt"), "keep me");
+        Path foreignDirectory = Files.createDirectories(directory.resolve("data"));
+        // Left behind by a process that stopped without cleaning up: nobody holds its lock
+        Path abandoned = Files.createDirectories(directory.resolve("archsense-spill-123"));
+        Files.writeString(abandoned.resolve(".lock"), "");
+        Files.writeString(abandoned.resolve("artifact-7.bin"), "from an earlier run");
+
+        ArtifactCache cache = new ArtifactCache(new SimpleMeterRegistry(), true, directory.toString(), 1024);
+        assertThat(abandoned).doesNotExist();
+        try (ArtifactCache.CachedArtifact artifact = cache.get("a", key -> bytes(100))) {
+            assertThat(artifact.getSize()).isEqualTo(100);
+        }
+        cache.shutdown();
+
+        assertThat(foreignFile).exists();
+        assertThat(foreignDirectory).exists();
+        assertThat(spillFiles()).isEmpty();
+        assertThat(spillDirectories()).isEmpty();
+    }
+
+    @Test
+    void replicasSharingTheDirectoryKeepTheirSpillsApart() throws Exception {
+        ArtifactCache first = new ArtifactCache(new SimpleMeterRegistry(), true, directory.toString(), 1024);
+        ArtifactCache.CachedArtifact held = first.get("a", key -> bytes(100));
+
+        // A replica starting on the same directory neither deletes the live spills nor reuses their names
+        ArtifactCache second = new ArtifactCache(new SimpleMeterRegistry(), true, directory.toString(), 1024);
+        assertThat(spillFiles()).hasSize(2);
+        try (ArtifactCache.CachedArtifact other = second.get("a", key -> bytes(200))) {
+            assertThat(other.getSize()).isEqualTo(200);
+        }
+        assertThat(spillDirectories()).hasSize(2);
+        assertThat(spillFiles()).hasSize(4);
+
+        second.shutdown();
+        assertThat(spillFiles()).hasSize(2);
+        assertThat(held.getBytes().get(99)).isEqualTo((byte) 99);
+        held.close();
+        first.shutdown();
+        assertThat(spillDirectories()).isEmpty();
+    }
+
+    @Test
+    void evictedSpillStaysReadableUntilItsLastHandleCloses() throws Exception {
+        // Room for one 300-byte artifact (and its base64) at a time
+        ArtifactCache cache = new ArtifactCache(new SimpleMeterRegistry(), true, directory.toString(), 900);
+
+        ArtifactCache.CachedArtifact first = cache.get("first", key -> bytes(300));
+        ArtifactCache.CachedArtifact retained = first.retain();
+        first.close();
+
+        cache.get("second", key -> bytes(300)).close();
+        assertThat(cache.getCachedBytes()).isEqualTo(300 + 400);
+        // Evicted: gone from the directory, but the open handle still reads the mapping
+        assertThat(spillFiles()).hasSize(2);
+        ByteBuffer bytes = retained.getBytes();
+        assertThat(bytes.remaining()).isEqualTo(300);
+        assertThat(bytes.get(299)).isEqualTo((byte) 299);
+        retained.close();
+
+        // A cache hit hands out a new handle on the same files
+        try (ArtifactCache.CachedArtifact again = cache.get("second", key -> {
+            throw new AssertionError("should be served from the cache");
+        })) {
+            assertThat(again.getSize()).isEqualTo(300);
+        }
+        cache.shutdown();
+        assertThat(spillFiles()).isEmpty();
+    }
+
+    private Stream<Path> spillDirectories() throws Exception {
+        return Files.list(directory).filter(path -> path.getFileName().toString().startsWith("archsense-spill-")).toList().stream();
+    }
+
+    private Stream<Path> spillFiles() throws Exception {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(path -> path.getFileName().toString().startsWith("artifact-")).toList().stream();
+        }
+    }
+
+    private static ByteArrayInputStream bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return new ByteArrayInputStream(bytes);
+    }
+}
@@ -0,0 +1,99 @@
+package com.archsense.executor.evolution;
+
+import com.archsense.executor.model.AnalysisReport;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EvolutionDiffEngineTest {
+
+    private final EvolutionDiffEngine engine = new EvolutionDiffEngine(new SimpleMeterRegistry(), 0.45);
+
+    @Test
+    void matchesRewordedIssuesAndSortsOutTheRest() {
+        AnalysisReport.Issue database = issue("HIGH", "Reliability", "Single database instance with no replica", "orders-db");
+        AnalysisReport.Issue waf = issue("MEDIUM", "Security", "No WAF in front of the public load balancer", "edge");
+        AnalysisReport.Issue cache = issue("LOW", "Performance", "Session cache has no eviction policy", "redis");
+
+        AnalysisReport.Issue databaseReworded = issue("HIGH", "Availability", "The orders database runs as a single instance without replicas", "orders-db");
+        AnalysisReport.Issue cacheWorse = issue("HIGH", "Performance", "Session cache without an eviction policy", "redis");
+        AnalysisReport.Issue queue = issue("MEDIUM", "Scalability", "Synchronous calls to the billing service block checkout", "billing");
+
+        EvolutionDiffEngine.EvolutionDiff diff = engine.diff(List.of(database, waf, cache),
+                List.of(databaseReworded, cacheWorse, queue));
+
+        assertThat(diff.persisted()).extracting(EvolutionDiffEngine.Match::previous).containsExactly(database, cache);
+        assertThat(diff.persisted()).extracting(EvolutionDiffEngine.Match::current).containsExactly(databaseReworded, cacheWorse);
+        assertThat(diff.resolved()).containsExactly(waf);
+        assertThat(diff.added()).containsExactly(queue);
+        assertThat(diff.regressed()).extracting(EvolutionDiffEngine.Match::current).containsExactly(cacheWorse);
+        assertThat(diff.improved()).isEmpty();
+        // MEDIUM resolved, LOW->HIGH and a new MEDIUM: net -4 against a baseline of 6
+        assertThat(diff.overallTrend()).isEqualTo("DEGRADING");
+    }
+
+    @Test
+    void sameWordingInAnotherCategoryIsNotTheSameIssue() {
+        AnalysisReport.Issue security = issue("HIGH", "Security", "Credentials stored in plain text configuration", "api");
+        AnalysisReport.Issue cost = issue("HIGH", "Cost", "Credentials stored in plain text configuration", "api");
+
+        EvolutionDiffEngine.EvolutionDiff diff = engine.diff(List.of(security), List.of(cost));
+
+        assertThat(diff.persisted()).isEmpty();
+        assertThat(diff.resolved()).containsExactly(security);
+        assertThat(diff.added()).containsExactly(cost);
+        assertThat(diff.overallTrend()).isEqualTo("STABLE");
+    }
+
+    @Test
+    void storedFingerprintMatchesWhateverTheWording() {
+        AnalysisReport.Issue current = issue("MEDIUM", "Reliability", "Payment webhook retries are not idempotent", "payments");
+        engine.fingerprint(List.of(current));
+        AnalysisReport.Issue previous = issue("MEDIUM", "Data Integrity", "Duplicate charges possible on redelivery", "psp");
+        previous.setFingerprint(current.getFingerprint());
+
+        EvolutionDiffEngine.EvolutionDiff diff = engine.diff(List.of(previous), List.of(current));
+
+        assertThat(diff.persisted()).singleElement().satisfies(match -> {
+            assertThat(match.previous()).isSameAs(previous);
+            assertThat(match.similarity()).isEqualTo(1.0);
+        });
+        assertThat(diff.resolved()).isEmpty();
+        assertThat(diff.added()).isEmpty();
+    }
+
+    @Test
+    void fingerprintReplacesIdsCopiedByTheModel() {
+        AnalysisReport.Issue issue = issue("LOW", "Cost", "Idle NAT gateway in the staging VPC", "staging");
+        issue.setFingerprint("cost:copied-from-last-report");
+
+        engine.fingerprint(List.of(issue));
+
+        assertThat(issue.getFingerprint()).isEqualTo(IssueFingerprint.computeId(issue)).startsWith("cost:")
+                .isNotEqualTo("cost:copied-from-last-report");
+    }
+
+    @Test
+    void diffIsTheSameOnEveryRun() {
+        List<AnalysisReport.Issue> previous = List.of(
+                issue("HIGH", "Security", "Admin API exposed without authentication", "admin"),
+                issue("HIGH", "Security", "Admin console exposed without authentication", "admin"));
+        List<AnalysisReport.Issue> current = List.of(
+                issue("HIGH", "Security", "Admin API is exposed without any authentication", "admin"));
+
+        EvolutionDiffEngine.EvolutionDiff first = engine.diff(previous, current);
+        EvolutionDiffEngine.EvolutionDiff second = engine.diff(previous, current);
+
+        assertThat(first.persisted()).extracting(EvolutionDiffEngine.Match::previous).containsExactly(previous.get(0));
+        assertThat(second.persisted()).extracting(EvolutionDiffEngine.Match::previous)
+                .containsExactlyElementsOf(first.persisted().stream().map(EvolutionDiffEngine.Match::previous).toList());
+        assertThat(second.resolved()).containsExactlyElementsOf(first.resolved());
+    }
+
+    private static AnalysisReport.Issue issue(String severity, String category, String description, String location) {
+        return new AnalysisReport.Issue(severity, category, description, location);
+    }
+}
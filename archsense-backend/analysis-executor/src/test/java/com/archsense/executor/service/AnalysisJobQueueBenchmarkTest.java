@@ -0,0 +1,61 @@
+package com.archsense.executor.service;
+
+import com.archsense.executor.model.AnalysisJob;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+// 1k analyses through the job queue, each blocking on I/O (the Claude call) for a fixed time, on platform
+// workers versus unpooled virtual threads. Runs only in the benchmark task, never in the unit suite
+@Tag("benchmark")
+class AnalysisJobQueueBenchmarkTest {
+
+    private static final int ANALYSES = 1000;
+    private static final long IO_MS = 20;
+
+    @Test
+    void virtualThreadsOutrunPlatformWorkersOnBlockingAnalyses() throws Exception {
+        long platform = run("platform", 8, Thread.ofPlatform().name("bench-worker-", 1).factory());
+        long virtual = run("virtual", ANALYSES, Thread.ofVirtual().name("bench-vworker-", 1).factory());
+
+        assertThat(virtual).as("ms on virtual threads vs 8 platform workers").isLessThan(platform);
+    }
+
+    private long run(String mode, int workers, ThreadFactory threadFactory) throws Exception {
+        ExecutorService executorService = mock(ExecutorService.class);
+        doAnswer(invocation -> {
+            Thread.sleep(IO_MS);
+            return CompletableFuture.completedFuture(null);
+        }).when(executorService).executeAnalysisSync(any(), any(), any(), anyList(), any(), any(), any());
+
+        AnalysisJobQueue queue = new AnalysisJobQueue(executorService, workers, ANALYSES, 60,
+                ANALYSES, workers, mode, threadFactory);
+        try {
+            long startedAt = System.nanoTime();
+            List<CompletableFuture<Void>> completions = new ArrayList<>();
+            for (int i = 0; i < ANALYSES; i++) {
+                AnalysisJob job = new AnalysisJob("analysis-" + i, "project", "user", List.of("artifact"),
+                        1, null, null);
+                completions.add(queue.submit(job).getCompletion());
+            }
+            CompletableFuture.allOf(completions.toArray(new CompletableFuture<?>[0])).get(2, TimeUnit.MINUTES);
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+            assertThat(completions).allMatch(completion -> completion.isDone() && !completion.isCompletedExceptionally());
+            return elapsedMs;
+        } finally {
+            queue.shutdown();
+        }
+    }
+}
@@ -2,11 +2,13 @@ package com.archsense.analysis;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication(scanBasePackages = {
         "com.archsense.analysis",
         "com.archsense.common"
 })
+@EnableScheduling
 public class AnalysisServiceApplication {
     public static void main(String[] args) {
         SpringApplication.run(AnalysisServiceApplication.class, args);
@@ -2,10 +2,16 @@ package com.archsense.analysis.controller;
 
 import com.archsense.analysis.model.Analysis;
 import com.archsense.analysis.repository.AnalysisRepository;
+import com.archsense.analysis.service.AnalysisEventBroadcaster;
 import com.archsense.analysis.service.AnalysisService;
 import com.archsense.common.dto.request.CreateAnalysisRequest;
+import com.archsense.common.dto.request.CreateBatchAnalysisRequest;
 import com.archsense.common.dto.response.AnalysisResponse;
+import com.archsense.common.dto.response.BatchAnalysisResponse;
+import com.archsense.common.dto.response.ErrorResponse;
 import com.archsense.common.exception.ResourceNotFoundException;
+import com.archsense.common.exception.ValidationException;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,6 +19,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import com.archsense.common.constant.AnalysisStatus;
 
 import java.util.HashMap;
@@ -27,10 +34,13 @@ public class AnalysisController {
 
     private final AnalysisService analysisService;
     private final AnalysisRepository analysisRepository;
+    private final AnalysisEventBroadcaster analysisEventBroadcaster;
 
-    public AnalysisController(AnalysisService analysisService, AnalysisRepository analysisRepository) {
+    public AnalysisController(AnalysisService analysisService, AnalysisRepository analysisRepository,
+                              AnalysisEventBroadcaster analysisEventBroadcaster) {
         this.analysisService = analysisService;
         this.analysisRepository = analysisRepository;
+        this.analysisEventBroadcaster = analysisEventBroadcaster;
     }
 
     @PostMapping("/projects/{projectId}/analyses")
@@ -44,6 +54,25 @@ public class AnalysisController {
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
 
+    @PostMapping("/analyses/batch")
+    public ResponseEntity<BatchAnalysisResponse> createBatch(
+            @RequestHeader("X-User-Id") String userId,
+            @Valid @RequestBody CreateBatchAnalysisRequest request) {
+
+        log.info("POST /analyses/batch - userId: {}, size: {}", userId, request.analyses().size());
+        BatchAnalysisResponse response = analysisService.createBatch(userId, request);
+        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    }
+
+    @GetMapping("/analyses/batches/{batchId}")
+    public ResponseEntity<BatchAnalysisResponse> getBatch(
+            @PathVariable String batchId,
+            @RequestHeader("X-User-Id") String userId) {
+
+        log.info("GET /analyses/batches/{} - userId: {}", batchId, userId);
+        return ResponseEntity.ok(analysisService.getBatch(batchId, userId));
+    }
+
     @GetMapping("/projects/{projectId}/analyses")
     public ResponseEntity<List<AnalysisResponse>> listAnalyses(
             @PathVariable String projectId,
@@ -64,6 +93,17 @@ public class AnalysisController {
         return ResponseEntity.ok(response);
     }
 
+    @GetMapping(value = "/analyses/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamAnalysisEvents(
+            @PathVariable String id,
+            @RequestHeader("X-User-Id") String userId) {
+
+        log.info("GET /analyses/{}/events - userId: {}", id, userId);
+        Analysis analysis = analysisRepository.findByIdAndUserId(id, userId)
+                .orElseThrow(() -> new ResourceNotFoundException("Analysis not found"));
+        return analysisEventBroadcaster.subscribe(analysis);
+    }
+
     @GetMapping("/analyses/{id}/report")
     public ResponseEntity<String> getAnalysisReport(
             @PathVariable String id,
@@ -103,4 +143,16 @@ public class AnalysisController {
 
         return ResponseEntity.ok(response);
     }
-}
\ No newline at end of file
+
+    @ExceptionHandler(ValidationException.class)
+    public ResponseEntity<ErrorResponse> handleValidationException(
+            ValidationException ex, HttpServletRequest request) {
+        ErrorResponse error = ErrorResponse.of(
+                HttpStatus.BAD_REQUEST.value(),
+                "Bad Request",
+                ex.getMessage(),
+                request.getRequestURI()
+        );
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+    }
+}
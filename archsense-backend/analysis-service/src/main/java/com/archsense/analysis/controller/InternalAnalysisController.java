@@ -12,6 +12,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.time.Instant;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -67,6 +68,24 @@ public class InternalAnalysisController {
         return ResponseEntity.ok(Map.of("message", "Evolution metrics updated"));
     }
 
+    @PutMapping("/{id}/progress")
+    public ResponseEntity<Map<String, String>> updateProgress(
+            @PathVariable String id,
+            @RequestBody Map<String, Object> request) {
+
+        @SuppressWarnings("unchecked")
+        List<String> partialIssues = (List<String>) request.get("partialIssues");
+        Integer issuesFound = (Integer) request.get("issuesFound");
+
+        if (!analysisService.updateProgress(id, issuesFound, partialIssues)) {
+            return ResponseEntity.ok(Map.of("message", "Analysis is not in progress, progress ignored"));
+        }
+
+        log.debug("Progress updated for analysis {}: {} issues found", id, issuesFound);
+
+        return ResponseEntity.ok(Map.of("message", "Progress updated"));
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<Map<String, Object>> getAnalysisById(@PathVariable String id) {
         log.info("Internal request to fetch analysis: {}", id);
@@ -82,6 +101,7 @@ public class InternalAnalysisController {
         response.put("reportUrl", analysis.getReportUrl());
         response.put("version", analysis.getVersion());
         response.put("previousAnalysisId", analysis.getPreviousAnalysisId());
+        response.put("progress", analysis.getProgress());
         response.put("createdAt", analysis.getCreatedAt());
         response.put("updatedAt", analysis.getUpdatedAt());
 
@@ -0,0 +1,33 @@
+package com.archsense.analysis.messaging;
+
+import com.archsense.common.constant.KafkaTopics;
+import com.archsense.common.event.AnalysisRequestedEvent;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+
+@Component
+public class AnalysisEventPublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalysisEventPublisher.class);
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+
+    public AnalysisEventPublisher(KafkaTemplate<String, Object> kafkaTemplate) {
+        this.kafkaTemplate = kafkaTemplate;
+    }
+
+    public CompletableFuture<RecordMetadata> publishAnalysisRequested(AnalysisRequestedEvent event) {
+        // Batch work has its own topic so a nightly run never queues ahead of interactive requests
+        String topic = event.batchId() != null ? KafkaTopics.ANALYSIS_BATCH_REQUESTED : KafkaTopics.ANALYSIS_REQUESTED;
+        log.info("Publishing AnalysisRequestedEvent for analysisId: {} to {}", event.analysisId(), topic);
+
+        // Keyed by project so versions of one project are analysed in order on a single partition
+        return kafkaTemplate.send(topic, event.projectId(), event)
+                .thenApply(result -> result.getRecordMetadata());
+    }
+}
@@ -0,0 +1,78 @@
+package com.archsense.analysis.messaging;
+
+import com.archsense.analysis.model.AnalysisStatus;
+import com.archsense.analysis.service.AnalysisService;
+import com.archsense.common.constant.KafkaTopics;
+import com.archsense.common.event.AnalysisCompletedEvent;
+import com.archsense.common.event.AnalysisDeferredEvent;
+import com.archsense.common.event.AnalysisFailedEvent;
+import com.archsense.common.event.AnalysisStartedEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+public class AnalysisStatusEventConsumer {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalysisStatusEventConsumer.class);
+
+    private final AnalysisService analysisService;
+    private final ObjectMapper objectMapper;
+
+    public AnalysisStatusEventConsumer(AnalysisService analysisService, ObjectMapper objectMapper) {
+        this.analysisService = analysisService;
+        this.objectMapper = objectMapper;
+    }
+
+    @KafkaListener(topics = {KafkaTopics.ANALYSIS_STARTED, KafkaTopics.ANALYSIS_DEFERRED,
+            KafkaTopics.ANALYSIS_COMPLETED, KafkaTopics.ANALYSIS_FAILED},
+            groupId = "${analysis.status-events.group-id:analysis-service}",
+            containerFactory = "statusEventListenerFactory")
+    public void handleStatusEvents(List<ConsumerRecord<String, String>> records) {
+        log.debug("Received {} analysis status events", records.size());
+
+        List<AnalysisService.StatusUpdate> updates = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, String> record : records) {
+            try {
+                updates.add(toStatusUpdate(record));
+            } catch (Exception e) {
+                // A malformed event must not block the rest of the batch
+                log.error("Skipping unreadable status event from {} at offset {}", record.topic(), record.offset(), e);
+            }
+        }
+
+        analysisService.applyStatusUpdates(updates);
+    }
+
+    private AnalysisService.StatusUpdate toStatusUpdate(ConsumerRecord<String, String> record) throws Exception {
+        return switch (record.topic()) {
+            case KafkaTopics.ANALYSIS_STARTED -> {
+                AnalysisStartedEvent event = objectMapper.readValue(record.value(), AnalysisStartedEvent.class);
+                yield new AnalysisService.StatusUpdate(event.analysisId(), AnalysisStatus.IN_PROGRESS,
+                        null, null, event.startedAt());
+            }
+            case KafkaTopics.ANALYSIS_DEFERRED -> {
+                AnalysisDeferredEvent event = objectMapper.readValue(record.value(), AnalysisDeferredEvent.class);
+                yield new AnalysisService.StatusUpdate(event.analysisId(), AnalysisStatus.DEFERRED,
+                        null, null, event.deferredAt());
+            }
+            case KafkaTopics.ANALYSIS_COMPLETED -> {
+                AnalysisCompletedEvent event = objectMapper.readValue(record.value(), AnalysisCompletedEvent.class);
+                yield new AnalysisService.StatusUpdate(event.analysisId(), AnalysisStatus.COMPLETED,
+                        event.reportS3Key(), null, event.completedAt());
+            }
+            case KafkaTopics.ANALYSIS_FAILED -> {
+                AnalysisFailedEvent event = objectMapper.readValue(record.value(), AnalysisFailedEvent.class);
+                yield new AnalysisService.StatusUpdate(event.analysisId(), AnalysisStatus.FAILED,
+                        null, event.error(), event.failedAt());
+            }
+            default -> throw new IllegalArgumentException("Unexpected topic: " + record.topic());
+        };
+    }
+}
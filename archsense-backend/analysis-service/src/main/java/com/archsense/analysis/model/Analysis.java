@@ -22,6 +22,9 @@ public class Analysis {
     private Integer version;                    // Analysis version number
     private String previousAnalysisId;          // Link to previous version
     private EvolutionMetrics evolutionMetrics; // Comparison with previous version
+    private Progress progress;                  // Partial results while the report is streaming
+    private String errorMessage;                // Why the analysis FAILED, if it did
+    private String batchId;                     // Set when created through the batch API
 
     public static class EvolutionMetrics {
         private Integer issuesResolved;
@@ -44,6 +47,23 @@ public class Analysis {
         public void setImprovementScore(Double improvementScore) { this.improvementScore = improvementScore; }
     }
 
+    public static class Progress {
+        private Integer issuesFound;
+        private List<String> partialIssues;
+        private Instant updatedAt;
+
+        public Progress() {}
+
+        public Integer getIssuesFound() { return issuesFound; }
+        public void setIssuesFound(Integer issuesFound) { this.issuesFound = issuesFound; }
+
+        public List<String> getPartialIssues() { return partialIssues; }
+        public void setPartialIssues(List<String> partialIssues) { this.partialIssues = partialIssues; }
+
+        public Instant getUpdatedAt() { return updatedAt; }
+        public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+    }
+
     public Integer getVersion() { return version; }
     public void setVersion(Integer version) { this.version = version; }
 
@@ -53,6 +73,15 @@ public class Analysis {
     public EvolutionMetrics getEvolutionMetrics() { return evolutionMetrics; }
     public void setEvolutionMetrics(EvolutionMetrics evolutionMetrics) { this.evolutionMetrics = evolutionMetrics; }
 
+    public Progress getProgress() { return progress; }
+    public void setProgress(Progress progress) { this.progress = progress; }
+
+    public String getErrorMessage() { return errorMessage; }
+    public void setErrorMessage(String errorMessage) { this.errorMessage = errorMessage; }
+
+    public String getBatchId() { return batchId; }
+    public void setBatchId(String batchId) { this.batchId = batchId; }
+
     public String getId() {
         return id;
     }
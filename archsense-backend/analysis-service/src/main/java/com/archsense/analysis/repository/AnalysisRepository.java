@@ -11,4 +11,5 @@ import java.util.Optional;
 public interface AnalysisRepository extends MongoRepository<Analysis, String> {
     List<Analysis> findByUserIdAndProjectIdOrderByCreatedAtDesc(String userId, String projectId);
     Optional<Analysis> findByIdAndUserId(String id, String userId);
+    List<Analysis> findByBatchIdAndUserId(String batchId, String userId);
 }
\ No newline at end of file
@@ -0,0 +1,182 @@
+package com.archsense.analysis.service;
+
+import com.archsense.analysis.model.Analysis;
+import com.archsense.analysis.model.AnalysisStatus;
+import com.archsense.analysis.repository.AnalysisRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Pushes analysis snapshots to SSE subscribers. Changes applied on this instance are pushed right
+// away; the periodic sweep picks up changes applied by other instances with one query per interval,
+// no matter how many clients are listening
+@Component
+public class AnalysisEventBroadcaster {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalysisEventBroadcaster.class);
+
+    private final AnalysisRepository analysisRepository;
+    private final long emitterTimeoutMs;
+
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    public AnalysisEventBroadcaster(AnalysisRepository analysisRepository,
+                                    @Value("${analysis.events.timeout-ms:1800000}") long emitterTimeoutMs) {
+        this.analysisRepository = analysisRepository;
+        this.emitterTimeoutMs = emitterTimeoutMs;
+    }
+
+    public SseEmitter subscribe(Analysis analysis) {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+
+        // A finished analysis gets its final state and nothing else
+        if (isTerminal(analysis.getStatus())) {
+            try {
+                emitter.send(toEvent("status", analysis));
+                emitter.complete();
+            } catch (IOException e) {
+                emitter.completeWithError(e);
+            }
+            return emitter;
+        }
+
+        Subscription subscription = subscriptions.computeIfAbsent(analysis.getId(), id -> new Subscription());
+        subscription.emitters.add(emitter);
+
+        emitter.onCompletion(() -> unsubscribe(analysis.getId(), emitter));
+        emitter.onTimeout(() -> unsubscribe(analysis.getId(), emitter));
+        emitter.onError(e -> unsubscribe(analysis.getId(), emitter));
+
+        try {
+            emitter.send(toEvent("status", analysis));
+        } catch (IOException e) {
+            unsubscribe(analysis.getId(), emitter);
+            emitter.completeWithError(e);
+            return emitter;
+        }
+        subscription.remember(analysis);
+
+        log.debug("SSE subscriber added for analysis {} ({} listening)", analysis.getId(), subscription.emitters.size());
+        return emitter;
+    }
+
+    public boolean hasSubscribers(String analysisId) {
+        return subscriptions.containsKey(analysisId);
+    }
+
+    public void publish(Analysis analysis) {
+        Subscription subscription = subscriptions.get(analysis.getId());
+        if (subscription == null) {
+            return;
+        }
+
+        String eventName = subscription.changeFor(analysis);
+        if (eventName == null) {
+            return;
+        }
+
+        SseEmitter.SseEventBuilder event = toEvent(eventName, analysis);
+        for (SseEmitter emitter : subscription.emitters) {
+            try {
+                emitter.send(event);
+            } catch (IOException | IllegalStateException e) {
+                // Client went away; the emitter callbacks take it out of the registry
+                log.debug("Dropping SSE subscriber for analysis {}: {}", analysis.getId(), e.getMessage());
+                emitter.completeWithError(e);
+            }
+        }
+
+        if (isTerminal(analysis.getStatus())) {
+            subscriptions.remove(analysis.getId());
+            subscription.emitters.forEach(SseEmitter::complete);
+            log.debug("Analysis {} finished, closed {} SSE subscribers", analysis.getId(), subscription.emitters.size());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${analysis.events.sweep-interval-ms:2000}")
+    public void sweep() {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        analysisRepository.findAllById(List.copyOf(subscriptions.keySet())).forEach(this::publish);
+    }
+
+    // Keeps idle streams open through the gateway's read timeout and any intermediate proxies
+    @Scheduled(fixedRateString = "${analysis.events.heartbeat-interval-ms:15000}")
+    public void heartbeat() {
+        for (Subscription subscription : subscriptions.values()) {
+            for (SseEmitter emitter : subscription.emitters) {
+                try {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                } catch (IOException | IllegalStateException e) {
+                    emitter.completeWithError(e);
+                }
+            }
+        }
+    }
+
+    private void unsubscribe(String analysisId, SseEmitter emitter) {
+        subscriptions.computeIfPresent(analysisId, (id, subscription) -> {
+            subscription.emitters.remove(emitter);
+            return subscription.emitters.isEmpty() ? null : subscription;
+        });
+    }
+
+    private SseEmitter.SseEventBuilder toEvent(String name, Analysis analysis) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", analysis.getId());
+        data.put("status", analysis.getStatus().toString());
+        data.put("progress", analysis.getProgress());
+        data.put("reportUrl", analysis.getReportUrl());
+        data.put("error", analysis.getErrorMessage());
+        data.put("updatedAt", analysis.getUpdatedAt());
+
+        return SseEmitter.event()
+                .id(String.valueOf(analysis.getUpdatedAt() != null ? analysis.getUpdatedAt().toEpochMilli() : 0))
+                .name(name)
+                .data(data, MediaType.APPLICATION_JSON);
+    }
+
+    private boolean isTerminal(AnalysisStatus status) {
+        return status == AnalysisStatus.COMPLETED || status == AnalysisStatus.FAILED;
+    }
+
+    private static class Subscription {
+        private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+        private AnalysisStatus lastStatus;
+        private Instant lastUpdatedAt;
+
+        synchronized void remember(Analysis analysis) {
+            lastStatus = analysis.getStatus();
+            lastUpdatedAt = analysis.getUpdatedAt();
+        }
+
+        // Returns the event name for a snapshot newer than the last one sent, or null if subscribers
+        // have already seen it (or something later, when a sweep read races a local update)
+        synchronized String changeFor(Analysis analysis) {
+            if (analysis.getStatus() == lastStatus && Objects.equals(analysis.getUpdatedAt(), lastUpdatedAt)) {
+                return null;
+            }
+            if (lastUpdatedAt != null && analysis.getUpdatedAt() != null
+                    && analysis.getUpdatedAt().isBefore(lastUpdatedAt)) {
+                return null;
+            }
+            String name = analysis.getStatus() == lastStatus ? "progress" : "status";
+            remember(analysis);
+            return name;
+        }
+    }
+}
@@ -1,22 +1,45 @@
 package com.archsense.analysis.service;
 
+import com.archsense.analysis.messaging.AnalysisEventPublisher;
 import com.archsense.analysis.model.Analysis;
 import com.archsense.analysis.model.AnalysisStatus;
 import com.archsense.analysis.repository.AnalysisRepository;
 import com.archsense.common.dto.request.CreateAnalysisRequest;
+import com.archsense.common.dto.request.CreateBatchAnalysisRequest;
 import com.archsense.common.dto.response.AnalysisResponse;
+import com.archsense.common.dto.response.BatchAnalysisResponse;
+import com.archsense.common.event.AnalysisRequestedEvent;
 import com.archsense.common.exception.ResourceNotFoundException;
+import com.archsense.common.exception.ValidationException;
+import com.mongodb.bulk.BulkWriteResult;
+import org.bson.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 @Service
 public class AnalysisService {
@@ -24,14 +47,25 @@ public class AnalysisService {
     private static final Logger log = LoggerFactory.getLogger(AnalysisService.class);
 
     private final AnalysisRepository analysisRepository;
+    private final MongoTemplate mongoTemplate;
     private final RestTemplate restTemplate;
+    private final AnalysisEventPublisher analysisEventPublisher;
+    private final AnalysisEventBroadcaster analysisEventBroadcaster;
 
     @Value("${services.executor.base-url:http://localhost:8085}")
     private String executorServiceUrl;
 
-    public AnalysisService(AnalysisRepository analysisRepository, RestTemplate restTemplate) {
+    @Value("${analysis.batch.max-size:500}")
+    private int maxBatchSize;
+
+    public AnalysisService(AnalysisRepository analysisRepository, MongoTemplate mongoTemplate,
+                           RestTemplate restTemplate, AnalysisEventPublisher analysisEventPublisher,
+                           AnalysisEventBroadcaster analysisEventBroadcaster) {
         this.analysisRepository = analysisRepository;
+        this.mongoTemplate = mongoTemplate;
         this.restTemplate = restTemplate;
+        this.analysisEventPublisher = analysisEventPublisher;
+        this.analysisEventBroadcaster = analysisEventBroadcaster;
     }
 
     public AnalysisResponse create(String projectId, String userId, CreateAnalysisRequest request) {
@@ -69,36 +103,158 @@ public class AnalysisService {
     }
 
     private void triggerAnalysisExecution(Analysis analysis) {
-        try {
-            String url = executorServiceUrl + "/internal/execute";
+        AnalysisRequestedEvent event = toRequestedEvent(analysis);
+
+        log.info("Dispatching analysis execution for analysisId: {} (version {})",
+                analysis.getId(), analysis.getVersion());
+
+        analysisEventPublisher.publishAnalysisRequested(event)
+                .whenComplete((metadata, e) -> {
+                    if (e != null) {
+                        log.error("Failed to dispatch analysis: {}", analysis.getId(), e);
+                        updateStatusFailed(analysis.getId(), "Failed to dispatch analysis");
+                    } else {
+                        log.debug("Analysis {} dispatched to partition {} at offset {}",
+                                analysis.getId(), metadata.partition(), metadata.offset());
+                    }
+                });
+    }
+
+    // Creates every analysis of the batch with a single insertMany and dispatches them together;
+    // the executor runs batch work on its own lane so interactive requests are never starved
+    public BatchAnalysisResponse createBatch(String userId, CreateBatchAnalysisRequest request) {
+        List<CreateBatchAnalysisRequest.Item> items = request.analyses();
+        if (items.size() > maxBatchSize) {
+            throw new ValidationException("A batch may contain at most " + maxBatchSize + " analyses");
+        }
+
+        Set<String> projectIds = new HashSet<>();
+        for (CreateBatchAnalysisRequest.Item item : items) {
+            if (!projectIds.add(item.projectId())) {
+                throw new ValidationException("Project " + item.projectId() + " appears more than once in the batch");
+            }
+        }
 
-            Map<String, Object> payload = new HashMap<>();
-            payload.put("analysisId", analysis.getId());
-            payload.put("projectId", analysis.getProjectId());
-            payload.put("userId", analysis.getUserId());
-            payload.put("artifactIds", analysis.getArtifactIds());
-            payload.put("version", analysis.getVersion());  // NEW
-            payload.put("previousAnalysisId", analysis.getPreviousAnalysisId());  // NEW
+        String batchId = UUID.randomUUID().toString();
+        Instant now = Instant.now();
+        Map<String, Document> latestByProject = findLatestAnalyses(userId, projectIds);
+
+        List<Analysis> analyses = new ArrayList<>(items.size());
+        for (CreateBatchAnalysisRequest.Item item : items) {
+            Document latest = latestByProject.get(item.projectId());
+
+            Analysis analysis = new Analysis();
+            analysis.setUserId(userId);
+            analysis.setProjectId(item.projectId());
+            analysis.setArtifactIds(item.artifactIds());
+            analysis.setStatus(AnalysisStatus.PENDING);
+            analysis.setBatchId(batchId);
+            analysis.setCreatedAt(now);
+            analysis.setUpdatedAt(now);
+
+            if (latest != null) {
+                Integer lastVersion = latest.getInteger("version");
+                analysis.setVersion((lastVersion != null ? lastVersion : 0) + 1);
+                analysis.setPreviousAnalysisId(latest.get("analysisId").toString());
+            } else {
+                analysis.setVersion(1);
+            }
+            analyses.add(analysis);
+        }
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
+        List<Analysis> saved = List.copyOf(mongoTemplate.insert(analyses, Analysis.class));
+        log.info("Batch {} created with {} analyses for user: {}", batchId, saved.size(), userId);
 
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(payload, headers);
+        dispatchBatch(batchId, saved);
 
-            log.info("Triggering analysis execution for analysisId: {} (version {})",
-                    analysis.getId(), analysis.getVersion());
+        return toBatchResponse(batchId, saved);
+    }
 
-            new Thread(() -> {
-                try {
-                    restTemplate.postForEntity(url, entity, String.class);
-                } catch (Exception e) {
-                    log.error("Failed to trigger analysis execution for analysisId: {}", analysis.getId(), e);
-                }
-            }).start();
+    public BatchAnalysisResponse getBatch(String batchId, String userId) {
+        List<Analysis> analyses = analysisRepository.findByBatchIdAndUserId(batchId, userId);
+        if (analyses.isEmpty()) {
+            throw new ResourceNotFoundException("Batch not found");
+        }
+        return toBatchResponse(batchId, analyses);
+    }
 
-        } catch (Exception e) {
-            log.error("Error triggering analysis execution", e);
+    // Latest analysis per project in one round trip, instead of one lookup per batch entry
+    private Map<String, Document> findLatestAnalyses(String userId, Collection<String> projectIds) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("userId").is(userId).and("projectId").in(projectIds)),
+                Aggregation.sort(Sort.Direction.DESC, "createdAt"),
+                Aggregation.group("projectId")
+                        .first("_id").as("analysisId")
+                        .first("version").as("version")
+        );
+
+        Map<String, Document> latest = new HashMap<>();
+        for (Document result : mongoTemplate.aggregate(aggregation, Analysis.class, Document.class)) {
+            latest.put(result.getString("_id"), result);
+        }
+        return latest;
+    }
+
+    private void dispatchBatch(String batchId, List<Analysis> analyses) {
+        Collection<StatusUpdate> failures = new ConcurrentLinkedQueue<>();
+
+        CompletableFuture<?>[] sends = analyses.stream()
+                .map(analysis -> analysisEventPublisher.publishAnalysisRequested(toRequestedEvent(analysis))
+                        .whenComplete((metadata, e) -> {
+                            if (e != null) {
+                                failures.add(new StatusUpdate(analysis.getId(), AnalysisStatus.FAILED, null,
+                                        "Failed to dispatch analysis", Instant.now()));
+                            }
+                        }))
+                .toArray(CompletableFuture[]::new);
+
+        // Whatever could not be dispatched is failed in one bulk write once every send has settled
+        CompletableFuture.allOf(sends).whenComplete((ignored, e) -> {
+            if (failures.isEmpty()) {
+                log.info("Batch {} dispatched: {} analyses", batchId, analyses.size());
+                return;
+            }
+            log.error("Batch {}: {} of {} analyses could not be dispatched", batchId, failures.size(), analyses.size());
+            applyStatusUpdates(List.copyOf(failures));
+        });
+    }
+
+    private BatchAnalysisResponse toBatchResponse(String batchId, List<Analysis> analyses) {
+        int pending = 0, inProgress = 0, deferred = 0, completed = 0, failed = 0;
+        for (Analysis analysis : analyses) {
+            switch (analysis.getStatus()) {
+                case PENDING -> pending++;
+                case IN_PROGRESS -> inProgress++;
+                case DEFERRED -> deferred++;
+                case COMPLETED -> completed++;
+                case FAILED -> failed++;
+            }
         }
+
+        Instant createdAt = analyses.stream()
+                .map(Analysis::getCreatedAt)
+                .min(Comparator.naturalOrder())
+                .orElse(null);
+
+        return new BatchAnalysisResponse(
+                batchId,
+                createdAt,
+                new BatchAnalysisResponse.Progress(analyses.size(), pending, inProgress, deferred, completed, failed),
+                analyses.stream().map(this::toResponse).toList()
+        );
+    }
+
+    private AnalysisRequestedEvent toRequestedEvent(Analysis analysis) {
+        return new AnalysisRequestedEvent(
+                analysis.getId(),
+                analysis.getProjectId(),
+                analysis.getUserId(),
+                analysis.getArtifactIds(),
+                analysis.getVersion(),
+                analysis.getPreviousAnalysisId(),
+                Instant.now(),
+                analysis.getBatchId()
+        );
     }
 
     public List<AnalysisResponse> listByProject(String projectId, String userId) {
@@ -119,7 +275,7 @@ public class AnalysisService {
                 .orElseThrow(() -> new ResourceNotFoundException("Analysis not found"));
         analysis.setStatus(AnalysisStatus.IN_PROGRESS);
         analysis.setUpdatedAt(Instant.now());
-        analysisRepository.save(analysis);
+        analysisEventBroadcaster.publish(analysisRepository.save(analysis));
         log.info("Analysis status updated to IN_PROGRESS: {}", analysisId);
     }
 
@@ -130,7 +286,7 @@ public class AnalysisService {
         analysis.setReportUrl(reportUrl);
         analysis.setCompletedAt(Instant.now());
         analysis.setUpdatedAt(Instant.now());
-        analysisRepository.save(analysis);
+        analysisEventBroadcaster.publish(analysisRepository.save(analysis));
         log.info("Analysis completed: {}", analysisId);
     }
 
@@ -138,12 +294,101 @@ public class AnalysisService {
         Analysis analysis = analysisRepository.findById(analysisId)
                 .orElseThrow(() -> new ResourceNotFoundException("Analysis not found"));
         analysis.setStatus(AnalysisStatus.FAILED);
+        analysis.setErrorMessage(error);
+        analysis.setProgress(null);
         analysis.setCompletedAt(Instant.now());
         analysis.setUpdatedAt(Instant.now());
-        analysisRepository.save(analysis);
+        analysisEventBroadcaster.publish(analysisRepository.save(analysis));
         log.error("Analysis failed: {} - {}", analysisId, error);
     }
 
+    // Applies executor status events as a single bulk write; statuses only ever move forward, so a
+    // late or redelivered event can never undo a newer state
+    public void applyStatusUpdates(List<StatusUpdate> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Analysis.class);
+        for (StatusUpdate update : updates) {
+            Query query = Query.query(Criteria.where("id").is(update.analysisId())
+                    .and("status").in(allowedPredecessors(update.status())));
+
+            Update change = new Update()
+                    .set("status", update.status())
+                    .set("updatedAt", Instant.now());
+
+            if (update.status() == AnalysisStatus.COMPLETED) {
+                change.set("reportUrl", update.reportUrl())
+                        .set("completedAt", update.occurredAt())
+                        .unset("progress");
+            } else if (update.status() == AnalysisStatus.FAILED) {
+                change.set("errorMessage", update.error())
+                        .set("completedAt", update.occurredAt())
+                        .unset("progress");
+            }
+
+            bulkOps.updateOne(query, change);
+        }
+
+        BulkWriteResult result = bulkOps.execute();
+        log.info("Applied {} status events: {} matched, {} modified",
+                updates.size(), result.getMatchedCount(), result.getModifiedCount());
+
+        // Re-read only what someone is watching; the stored document is the truth after the guards
+        List<String> watched = updates.stream()
+                .map(StatusUpdate::analysisId)
+                .filter(analysisEventBroadcaster::hasSubscribers)
+                .distinct()
+                .toList();
+        if (!watched.isEmpty()) {
+            analysisRepository.findAllById(watched).forEach(analysisEventBroadcaster::publish);
+        }
+    }
+
+    // A partial update conditioned on IN_PROGRESS, so it cannot overwrite a status change that lands at the
+    // same time, and late progress from a stream that already finished cannot resurrect a partial view
+    public boolean updateProgress(String analysisId, Integer issuesFound, List<String> partialIssues) {
+        Analysis.Progress progress = new Analysis.Progress();
+        progress.setIssuesFound(issuesFound);
+        progress.setPartialIssues(partialIssues);
+        progress.setUpdatedAt(Instant.now());
+
+        Query query = Query.query(Criteria.where("id").is(analysisId).and("status").is(AnalysisStatus.IN_PROGRESS));
+        Update change = new Update()
+                .set("progress", progress)
+                .set("updatedAt", Instant.now());
+
+        Analysis updated = mongoTemplate.findAndModify(query, change,
+                FindAndModifyOptions.options().returnNew(true), Analysis.class);
+        if (updated == null) {
+            if (!analysisRepository.existsById(analysisId)) {
+                throw new ResourceNotFoundException("Analysis not found");
+            }
+            return false;
+        }
+        analysisEventBroadcaster.publish(updated);
+        return true;
+    }
+
+    private List<AnalysisStatus> allowedPredecessors(AnalysisStatus status) {
+        return switch (status) {
+            case IN_PROGRESS -> List.of(AnalysisStatus.PENDING);
+            case DEFERRED -> List.of(AnalysisStatus.PENDING, AnalysisStatus.IN_PROGRESS);
+            case COMPLETED, FAILED -> List.of(AnalysisStatus.PENDING, AnalysisStatus.IN_PROGRESS, AnalysisStatus.DEFERRED);
+            default -> List.of();
+        };
+    }
+
+    public record StatusUpdate(
+            String analysisId,
+            AnalysisStatus status,
+            String reportUrl,
+            String error,
+            Instant occurredAt
+    ) {
+    }
+
     public void updateAnalysisStatus(String analysisId, AnalysisStatus status, String reportUrl) {
         Analysis analysis = analysisRepository.findById(analysisId)
                 .orElseThrow(() -> new ResourceNotFoundException("Analysis not found"));
@@ -156,7 +401,12 @@ public class AnalysisService {
             analysis.setCompletedAt(Instant.now());
         }
 
-        analysisRepository.save(analysis);
+        // The stored report supersedes any partial progress, and a failed analysis has no report to preview
+        if (status == AnalysisStatus.COMPLETED || status == AnalysisStatus.FAILED) {
+            analysis.setProgress(null);
+        }
+
+        analysisEventBroadcaster.publish(analysisRepository.save(analysis));
         log.info("Analysis status updated: {} -> {}", analysisId, status);
     }
 
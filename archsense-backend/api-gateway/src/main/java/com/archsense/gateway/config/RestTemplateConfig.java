@@ -1,18 +1,42 @@
 package com.archsense.gateway.config;
 
+import com.archsense.common.http.HttpClientProperties;
+import com.archsense.common.http.PooledHttpClientFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.context.annotation.Primary;
 import org.springframework.web.client.RestTemplate;
 
 @Configuration
 public class RestTemplateConfig {
 
     @Bean
-    public RestTemplate restTemplate() {
-        HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory();
-        factory.setConnectTimeout(5000);
-        factory.setConnectionRequestTimeout(5000);
-        return new RestTemplate(factory);
+    @Primary
+    @ConfigurationProperties(prefix = "http.client")
+    public HttpClientProperties httpClientProperties() {
+        return new HttpClientProperties();
     }
-}
\ No newline at end of file
+
+    // Long-lived event streams get their own pool so they can never starve regular API calls
+    @Bean
+    @ConfigurationProperties(prefix = "http.streaming-client")
+    public HttpClientProperties streamingHttpClientProperties() {
+        return new HttpClientProperties();
+    }
+
+    @Bean
+    @Primary
+    public RestTemplate restTemplate(HttpClientProperties httpClientProperties, ObjectProvider<MeterRegistry> meterRegistry) {
+        return PooledHttpClientFactory.createRestTemplate("api-gateway", httpClientProperties, meterRegistry.getIfAvailable());
+    }
+
+    @Bean
+    public RestTemplate streamingRestTemplate(@Qualifier("streamingHttpClientProperties") HttpClientProperties streamingHttpClientProperties,
+                                              ObjectProvider<MeterRegistry> meterRegistry) {
+        return PooledHttpClientFactory.createRestTemplate("api-gateway-streaming", streamingHttpClientProperties, meterRegistry.getIfAvailable());
+    }
+}
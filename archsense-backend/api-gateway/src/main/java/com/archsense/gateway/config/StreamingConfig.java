@@ -0,0 +1,42 @@
+package com.archsense.gateway.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+
+// Each proxied event stream holds a thread for its whole lifetime while it copies bytes from
+// upstream, so streams run on a bounded pool of their own instead of the shared task executor
+@Configuration
+public class StreamingConfig implements WebMvcConfigurer {
+
+    private final int maxConcurrentStreams;
+    private final Duration streamTimeout;
+
+    public StreamingConfig(@Value("${gateway.streaming.max-concurrent:200}") int maxConcurrentStreams,
+                           @Value("${gateway.streaming.timeout:30m}") Duration streamTimeout) {
+        this.maxConcurrentStreams = maxConcurrentStreams;
+        this.streamTimeout = streamTimeout;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor streamingTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("sse-proxy-");
+        executor.setCorePoolSize(maxConcurrentStreams);
+        executor.setMaxPoolSize(maxConcurrentStreams);
+        executor.setQueueCapacity(0);  // reject rather than park a stream that would never start
+        executor.setAllowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(streamingTaskExecutor());
+        configurer.setDefaultTimeout(streamTimeout.toMillis());
+    }
+}
@@ -8,6 +8,7 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.util.LinkedMultiValueMap;
@@ -16,8 +17,13 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Enumeration;
+import java.util.List;
 
 @RestController
 @Tag(name = "ArchSense API", description = "All backend operations")
@@ -26,17 +32,20 @@ public class ProxyController {
     private static final Logger log = LoggerFactory.getLogger(ProxyController.class);
 
     private final RestTemplate restTemplate;
+    private final RestTemplate streamingRestTemplate;
     private final String userServiceUrl;
     private final String projectServiceUrl;
     private final String artifactServiceUrl;
     private final String analysisServiceUrl;
 
     public ProxyController(RestTemplate restTemplate,
+                           @Qualifier("streamingRestTemplate") RestTemplate streamingRestTemplate,
                            @Value("${services.user-service.base-url}") String userServiceUrl,
                            @Value("${services.project-service.base-url}") String projectServiceUrl,
                            @Value("${services.artifact-service.base-url}") String artifactServiceUrl,
                            @Value("${services.analysis-service.base-url}") String analysisServiceUrl) {
         this.restTemplate = restTemplate;
+        this.streamingRestTemplate = streamingRestTemplate;
         this.userServiceUrl = userServiceUrl;
         this.projectServiceUrl = projectServiceUrl;
         this.artifactServiceUrl = artifactServiceUrl;
@@ -188,6 +197,18 @@ public class ProxyController {
         return proxyRequest(request, HttpMethod.GET, null);
     }
 
+    @Operation(summary = "Create batch of analyses", security = @SecurityRequirement(name = "bearer-jwt"))
+    @PostMapping("/api/analyses/batch")
+    public ResponseEntity<?> createAnalysisBatch(@RequestBody String body, HttpServletRequest request) {
+        return proxyRequest(request, HttpMethod.POST, body);
+    }
+
+    @Operation(summary = "Get batch progress", security = @SecurityRequirement(name = "bearer-jwt"))
+    @GetMapping("/api/analyses/batches/{batchId}")
+    public ResponseEntity<?> getAnalysisBatch(@PathVariable String batchId, HttpServletRequest request) {
+        return proxyRequest(request, HttpMethod.GET, null);
+    }
+
     @Operation(summary = "Get analysis", security = @SecurityRequirement(name = "bearer-jwt"))
     @GetMapping("/api/analyses/{id}")
     public ResponseEntity<?> getAnalysis(@PathVariable String id, HttpServletRequest request) {
@@ -200,8 +221,60 @@ public class ProxyController {
         return proxyRequest(request, HttpMethod.GET, null);
     }
 
+    @Operation(summary = "Stream analysis progress (SSE)", security = @SecurityRequirement(name = "bearer-jwt"))
+    @GetMapping(value = "/api/analyses/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAnalysisEvents(@PathVariable String id, HttpServletRequest request) {
+        String path = request.getRequestURI();
+        HttpHeaders headers = buildHeaders(request);
+        headers.setAccept(List.of(MediaType.TEXT_EVENT_STREAM));
+
+        StreamingResponseBody body = out -> proxyEventStream(analysisServiceUrl + path, headers, out);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .header("X-Accel-Buffering", "no")
+                .body(body);
+    }
+
     // ==================== INTERNAL PROXY LOGIC ====================
 
+    // Copies the upstream event stream chunk by chunk and flushes after every read, so events reach
+    // the browser as soon as analysis-service emits them instead of when a buffer fills up
+    private void proxyEventStream(String url, HttpHeaders headers, OutputStream out) {
+        try {
+            streamingRestTemplate.execute(url, HttpMethod.GET,
+                    upstreamRequest -> upstreamRequest.getHeaders().putAll(headers),
+                    upstreamResponse -> {
+                        byte[] buffer = new byte[4096];
+                        try (InputStream in = upstreamResponse.getBody()) {
+                            int read;
+                            while ((read = in.read(buffer)) != -1) {
+                                out.write(buffer, 0, read);
+                                out.flush();
+                            }
+                        }
+                        return null;
+                    });
+        } catch (HttpStatusCodeException e) {
+            // Headers are already committed as 200, so the failure goes out as an SSE event
+            log.warn("Event stream rejected upstream: {} - Status: {}", url, e.getStatusCode());
+            writeStreamError(out, e.getStatusCode().value());
+        } catch (Exception e) {
+            // Most often the browser closed the tab; nothing left to tell it
+            log.debug("Event stream closed: {} - {}", url, e.getMessage());
+        }
+    }
+
+    private void writeStreamError(OutputStream out, int status) {
+        try {
+            out.write(("event: error\ndata: {\"status\":" + status + "}\n\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (Exception ignored) {
+            // Client is gone as well
+        }
+    }
+
     @Hidden
     private ResponseEntity<?> proxyRequest(HttpServletRequest request, HttpMethod method, String body) {
         String path = request.getRequestURI();
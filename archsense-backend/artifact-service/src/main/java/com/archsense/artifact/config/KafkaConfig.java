@@ -1,5 +1,6 @@
 package com.archsense.artifact.config;
 
+import com.archsense.common.event.ArtifactUploadedEvent;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
@@ -25,6 +26,15 @@ public class KafkaConfig {
     @Value("${spring.kafka.consumer.group-id}")
     private String groupId;
 
+    @Value("${artifact.preprocessing.group-id:artifact-preprocessing}")
+    private String preprocessingGroupId;
+
+    @Value("${artifact.preprocessing.concurrency:2}")
+    private int preprocessingConcurrency;
+
+    @Value("${artifact.preprocessing.max-poll-interval-ms:600000}")
+    private int preprocessingMaxPollIntervalMs;
+
     @Bean
     public ProducerFactory<String, Object> producerFactory() {
         Map<String, Object> config = new HashMap<>();
@@ -66,4 +76,37 @@ public class KafkaConfig {
         factory.setConsumerFactory(consumerFactory());
         return factory;
     }
-}
\ No newline at end of file
+
+    // Preprocessing has its own group so it keeps its offsets apart from the project-deletion consumer
+    @Bean
+    public ConsumerFactory<String, ArtifactUploadedEvent> artifactUploadedConsumerFactory() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ConsumerConfig.GROUP_ID_CONFIG, preprocessingGroupId);
+        config.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        // A large PDF can take a while; fetch few records so the poll interval covers all of them
+        config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 5);
+        config.put(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, preprocessingMaxPollIntervalMs);
+
+        config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
+        config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
+
+        config.put(ErrorHandlingDeserializer.KEY_DESERIALIZER_CLASS, StringDeserializer.class);
+        config.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, JsonDeserializer.class);
+
+        config.put(JsonDeserializer.TRUSTED_PACKAGES, "com.archsense.common.event");
+        config.put(JsonDeserializer.USE_TYPE_INFO_HEADERS, false);
+        config.put(JsonDeserializer.VALUE_DEFAULT_TYPE, ArtifactUploadedEvent.class.getName());
+
+        return new DefaultKafkaConsumerFactory<>(config);
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, ArtifactUploadedEvent> artifactUploadedListenerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, ArtifactUploadedEvent> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(artifactUploadedConsumerFactory());
+        factory.setConcurrency(preprocessingConcurrency);
+        return factory;
+    }
+}
@@ -1,5 +1,6 @@
 package com.archsense.artifact.domain;
 
+import com.archsense.common.constant.ArtifactProcessingStatus;
 import com.archsense.common.constant.ArtifactType;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.index.CompoundIndex;
@@ -22,6 +23,20 @@ public class Artifact {
     private long size;
     private Instant uploadedAt;
 
+    // Filled in asynchronously by ArtifactPreprocessingService after the upload event
+    private ArtifactProcessingStatus processingStatus;
+    private String contentDigest;
+    private Integer width;
+    private Integer height;
+    private Long perceptualHash;
+    private String derivativeKey;
+    private String derivativeContentType;
+    private Long derivativeSize;
+    private String textKey;
+    private Long textLength;
+    private Instant processedAt;
+    private String processingError;
+
     public Artifact() {
     }
 
@@ -33,6 +48,7 @@ public class Artifact {
         this.s3Key = s3Key;
         this.size = size;
         this.uploadedAt = Instant.now();
+        this.processingStatus = ArtifactProcessingStatus.PENDING;
     }
 
     public String getId() {
@@ -98,4 +114,100 @@ public class Artifact {
     public void setUploadedAt(Instant uploadedAt) {
         this.uploadedAt = uploadedAt;
     }
-}
\ No newline at end of file
+
+    public ArtifactProcessingStatus getProcessingStatus() {
+        return processingStatus;
+    }
+
+    public void setProcessingStatus(ArtifactProcessingStatus processingStatus) {
+        this.processingStatus = processingStatus;
+    }
+
+    public String getContentDigest() {
+        return contentDigest;
+    }
+
+    public void setContentDigest(String contentDigest) {
+        this.contentDigest = contentDigest;
+    }
+
+    public Integer getWidth() {
+        return width;
+    }
+
+    public void setWidth(Integer width) {
+        this.width = width;
+    }
+
+    public Integer getHeight() {
+        return height;
+    }
+
+    public void setHeight(Integer height) {
+        this.height = height;
+    }
+
+    public Long getPerceptualHash() {
+        return perceptualHash;
+    }
+
+    public void setPerceptualHash(Long perceptualHash) {
+        this.perceptualHash = perceptualHash;
+    }
+
+    public String getDerivativeKey() {
+        return derivativeKey;
+    }
+
+    public void setDerivativeKey(String derivativeKey) {
+        this.derivativeKey = derivativeKey;
+    }
+
+    public String getDerivativeContentType() {
+        return derivativeContentType;
+    }
+
+    public void setDerivativeContentType(String derivativeContentType) {
+        this.derivativeContentType = derivativeContentType;
+    }
+
+    public Long getDerivativeSize() {
+        return derivativeSize;
+    }
+
+    public void setDerivativeSize(Long derivativeSize) {
+        this.derivativeSize = derivativeSize;
+    }
+
+    public String getTextKey() {
+        return textKey;
+    }
+
+    public void setTextKey(String textKey) {
+        this.textKey = textKey;
+    }
+
+    public Long getTextLength() {
+        return textLength;
+    }
+
+    public void setTextLength(Long textLength) {
+        this.textLength = textLength;
+    }
+
+    public Instant getProcessedAt() {
+        return processedAt;
+    }
+
+    public void setProcessedAt(Instant processedAt) {
+        this.processedAt = processedAt;
+    }
+
+    public String getProcessingError() {
+        return processingError;
+    }
+
+    public void setProcessingError(String processingError) {
+        this.processingError = processingError;
+    }
+}
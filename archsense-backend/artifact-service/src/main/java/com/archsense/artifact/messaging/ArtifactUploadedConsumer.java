@@ -0,0 +1,27 @@
+package com.archsense.artifact.messaging;
+
+import com.archsense.artifact.service.ArtifactPreprocessingService;
+import com.archsense.common.constant.KafkaTopics;
+import com.archsense.common.event.ArtifactUploadedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+@Component
+public class ArtifactUploadedConsumer {
+
+    private static final Logger log = LoggerFactory.getLogger(ArtifactUploadedConsumer.class);
+
+    private final ArtifactPreprocessingService preprocessingService;
+
+    public ArtifactUploadedConsumer(ArtifactPreprocessingService preprocessingService) {
+        this.preprocessingService = preprocessingService;
+    }
+
+    @KafkaListener(topics = KafkaTopics.ARTIFACT_UPLOADED, containerFactory = "artifactUploadedListenerFactory")
+    public void handleArtifactUploaded(ArtifactUploadedEvent event) {
+        log.info("Received ArtifactUploadedEvent for artifactId: {}", event.artifactId());
+        preprocessingService.process(event);
+    }
+}
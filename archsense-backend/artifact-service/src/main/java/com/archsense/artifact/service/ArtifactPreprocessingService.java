@@ -0,0 +1,275 @@
+package com.archsense.artifact.service;
+
+import com.archsense.artifact.domain.Artifact;
+import com.archsense.artifact.repository.ArtifactRepository;
+import com.archsense.artifact.storage.StorageService;
+import com.archsense.common.constant.ArtifactProcessingStatus;
+import com.archsense.common.event.ArtifactUploadedEvent;
+import com.archsense.common.image.ImageScaler;
+import com.mongodb.client.result.UpdateResult;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+// Does the expensive, input-only work once per upload instead of once per analysis: content digest,
+// image dimensions and perceptual hash, a model-sized image derivative, and extracted text. Runs off
+// the upload event, so the upload request itself is not slowed down
+@Service
+public class ArtifactPreprocessingService {
+
+    private static final Logger log = LoggerFactory.getLogger(ArtifactPreprocessingService.class);
+    private static final String DERIVED_DIRECTORY = "derived/";
+
+    private final ArtifactRepository artifactRepository;
+    private final StorageService storageService;
+    private final MongoTemplate mongoTemplate;
+    private final boolean jpeg;
+    private final float quality;
+    private final int maxEdge;
+    private final long maxTextChars;
+
+    public ArtifactPreprocessingService(ArtifactRepository artifactRepository,
+                                        StorageService storageService,
+                                        MongoTemplate mongoTemplate,
+                                        @Value("${artifact.preprocessing.image.format:png}") String format,
+                                        @Value("${artifact.preprocessing.image.quality:0.85}") float quality,
+                                        @Value("${artifact.preprocessing.image.max-edge:1568}") int maxEdge,
+                                        @Value("${artifact.preprocessing.max-text-chars:2000000}") long maxTextChars) {
+        this.artifactRepository = artifactRepository;
+        this.storageService = storageService;
+        this.mongoTemplate = mongoTemplate;
+        this.jpeg = "jpeg".equalsIgnoreCase(format) || "jpg".equalsIgnoreCase(format);
+        this.quality = quality;
+        this.maxEdge = Math.min(maxEdge, ImageScaler.MODEL_MAX_EDGE);
+        this.maxTextChars = maxTextChars;
+    }
+
+    public void process(ArtifactUploadedEvent event) {
+        Artifact artifact = artifactRepository.findById(event.artifactId()).orElse(null);
+        if (artifact == null) {
+            log.info("Artifact {} was deleted before preprocessing", event.artifactId());
+            return;
+        }
+        if (artifact.getProcessingStatus() == ArtifactProcessingStatus.READY) {
+            log.debug("Artifact {} already preprocessed", artifact.getId());
+            return;
+        }
+
+        long startedAt = System.currentTimeMillis();
+        List<String> storedKeys = new ArrayList<>();
+        Path original = null;
+        try {
+            original = Files.createTempFile("artifact-", ".upload");
+            String digest = download(artifact.getS3Key(), original);
+
+            Update update = new Update()
+                    .set("contentDigest", digest)
+                    .set("processedAt", Instant.now())
+                    .unset("processingError");
+
+            switch (artifact.getType()) {
+                case IMAGE -> processImage(artifact, original, update, storedKeys);
+                case PDF -> extractPdfText(artifact, original, update, storedKeys);
+                case MARKDOWN, TEXT -> extractPlainText(artifact, original, update, storedKeys);
+                default -> update.set("processingStatus", ArtifactProcessingStatus.UNSUPPORTED);
+            }
+
+            if (!apply(artifact.getId(), update)) {
+                // Deleted while we were working; don't leave its derivatives behind
+                log.info("Artifact {} was deleted during preprocessing, discarding derivatives", artifact.getId());
+                storedKeys.forEach(this::deleteQuietly);
+                return;
+            }
+            log.info("Preprocessed artifact {} ({}) in {}ms", artifact.getId(), artifact.getType(),
+                    System.currentTimeMillis() - startedAt);
+
+        } catch (Exception e) {
+            log.error("Failed to preprocess artifact {}", artifact.getId(), e);
+            storedKeys.forEach(this::deleteQuietly);
+            apply(artifact.getId(), new Update()
+                    .set("processingStatus", ArtifactProcessingStatus.FAILED)
+                    .set("processingError", e.getMessage())
+                    .set("processedAt", Instant.now()));
+        } finally {
+            deleteTempFile(original);
+        }
+    }
+
+    // Streams the original to disk and hashes it on the way, so large uploads never sit in the heap
+    private String download(String s3Key, Path target) throws IOException {
+        MessageDigest sha256 = sha256();
+        try (InputStream in = new DigestInputStream(storageService.retrieve(s3Key), sha256)) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return HexFormat.of().formatHex(sha256.digest());
+    }
+
+    private void processImage(Artifact artifact, Path original, Update update, List<String> storedKeys) throws IOException {
+        ByteBuffer bytes = map(original);
+        ImageScaler.Dimensions dimensions = ImageScaler.readDimensions(bytes);
+        if (dimensions == null) {
+            // No ImageIO reader for the format; the executor sends these as uploaded
+            update.set("processingStatus", ArtifactProcessingStatus.UNSUPPORTED);
+            return;
+        }
+
+        BufferedImage image = ImageScaler.resize(ImageScaler.decode(bytes), maxEdge, ImageScaler.MODEL_MAX_PIXELS);
+        byte[] encoded = jpeg ? ImageScaler.encodeJpeg(image, quality) : ImageScaler.encodePng(image);
+        String contentType = jpeg ? "image/jpeg" : "image/png";
+        String derivativeKey = derivedKey(artifact, jpeg ? "image.jpg" : "image.png");
+
+        Path derivative = Files.createTempFile("artifact-", ".derived");
+        try {
+            Files.write(derivative, encoded);
+            storageService.store(derivativeKey, derivative, contentType);
+            storedKeys.add(derivativeKey);
+        } finally {
+            deleteTempFile(derivative);
+        }
+
+        update.set("width", dimensions.width())
+                .set("height", dimensions.height())
+                .set("perceptualHash", ImageScaler.differenceHash(image))
+                .set("derivativeKey", derivativeKey)
+                .set("derivativeContentType", contentType)
+                .set("derivativeSize", (long) encoded.length)
+                .set("processingStatus", ArtifactProcessingStatus.READY);
+    }
+
+    // Page by page, so only one page of text is in memory however long the document is
+    private void extractPdfText(Artifact artifact, Path original, Update update, List<String> storedKeys) throws IOException {
+        Path text = Files.createTempFile("artifact-", ".txt");
+        try {
+            long written = 0;
+            try (PDDocument document = Loader.loadPDF(original.toFile(), IOUtils.createTempFileOnlyStreamCache());
+                 Writer out = Files.newBufferedWriter(text, StandardCharsets.UTF_8)) {
+                PDFTextStripper stripper = new PDFTextStripper();
+                for (int page = 1; page <= document.getNumberOfPages() && written < maxTextChars; page++) {
+                    stripper.setStartPage(page);
+                    stripper.setEndPage(page);
+                    written += write(out, stripper.getText(document), maxTextChars - written);
+                }
+            }
+            storeText(artifact, text, written, update, storedKeys);
+        } finally {
+            deleteTempFile(text);
+        }
+    }
+
+    // Normalizes Markdown/plain text to UTF-8 (invalid bytes replaced) and applies the same length cap
+    private void extractPlainText(Artifact artifact, Path original, Update update, List<String> storedKeys) throws IOException {
+        Path text = Files.createTempFile("artifact-", ".txt");
+        try {
+            long written = 0;
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(Files.newInputStream(original),
+                         StandardCharsets.UTF_8.newDecoder()
+                                 .onMalformedInput(CodingErrorAction.REPLACE)
+                                 .onUnmappableCharacter(CodingErrorAction.REPLACE)));
+                 Writer out = Files.newBufferedWriter(text, StandardCharsets.UTF_8)) {
+                char[] buffer = new char[8192];
+                int read;
+                while (written < maxTextChars && (read = in.read(buffer)) != -1) {
+                    written += write(out, new String(buffer, 0, read), maxTextChars - written);
+                }
+            }
+            storeText(artifact, text, written, update, storedKeys);
+        } finally {
+            deleteTempFile(text);
+        }
+    }
+
+    private void storeText(Artifact artifact, Path text, long length, Update update, List<String> storedKeys) {
+        String textKey = derivedKey(artifact, "text.txt");
+        storageService.store(textKey, text, "text/plain; charset=utf-8");
+        storedKeys.add(textKey);
+
+        update.set("textKey", textKey)
+                .set("textLength", length)
+                .set("processingStatus", ArtifactProcessingStatus.READY);
+        if (length >= maxTextChars) {
+            log.warn("Text of artifact {} truncated at {} chars", artifact.getId(), maxTextChars);
+        }
+    }
+
+    private long write(Writer out, String chunk, long remaining) throws IOException {
+        int length = (int) Math.min(chunk.length(), remaining);
+        out.write(chunk, 0, length);
+        return length;
+    }
+
+    // artifacts/{user}/{project}/{artifactId}/derived/{fileName}, next to the original upload
+    private String derivedKey(Artifact artifact, String fileName) {
+        String s3Key = artifact.getS3Key();
+        return s3Key.substring(0, s3Key.lastIndexOf('/') + 1) + DERIVED_DIRECTORY + fileName;
+    }
+
+    private boolean apply(String artifactId, Update update) {
+        UpdateResult result = mongoTemplate.updateFirst(
+                Query.query(Criteria.where("_id").is(artifactId)), update, Artifact.class);
+        return result.getMatchedCount() > 0;
+    }
+
+    private ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private void deleteQuietly(String key) {
+        try {
+            storageService.delete(key);
+        } catch (Exception e) {
+            log.warn("Failed to delete derivative {}: {}", key, e.getMessage());
+        }
+    }
+
+    private void deleteTempFile(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.debug("Failed to delete temp file {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
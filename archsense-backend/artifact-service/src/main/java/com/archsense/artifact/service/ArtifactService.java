@@ -90,7 +90,7 @@ public class ArtifactService {
         Artifact artifact = artifactRepository.findByIdAndUserId(artifactId, userId)
                 .orElseThrow(() -> new ResourceNotFoundException("Artifact not found"));
 
-        storageService.delete(artifact.getS3Key());
+        deleteStoredFiles(artifact);
         artifactRepository.deleteById(artifactId);
 
         ArtifactDeletedEvent event = new ArtifactDeletedEvent(
@@ -106,11 +106,21 @@ public class ArtifactService {
     public void deleteByProject(String projectId) {
         List<Artifact> artifacts = artifactRepository.findByProjectId(projectId);
         for (Artifact artifact : artifacts) {
-            storageService.delete(artifact.getS3Key());
+            deleteStoredFiles(artifact);
             artifactRepository.deleteById(artifact.getId());
         }
     }
 
+    private void deleteStoredFiles(Artifact artifact) {
+        storageService.delete(artifact.getS3Key());
+        if (artifact.getDerivativeKey() != null) {
+            storageService.delete(artifact.getDerivativeKey());
+        }
+        if (artifact.getTextKey() != null) {
+            storageService.delete(artifact.getTextKey());
+        }
+    }
+
     private ArtifactType determineType(String filename) {
         String lowerName = filename.toLowerCase();
         if (lowerName.endsWith(".png") || lowerName.endsWith(".jpg") || lowerName.endsWith(".jpeg") || lowerName.endsWith(".gif")) {
@@ -44,6 +44,18 @@ public class LocalStorageService implements StorageService {
         }
     }
 
+    @Override
+    public String store(String key, Path file, String contentType) {
+        try {
+            Path targetPath = basePath.resolve(key);
+            Files.createDirectories(targetPath.getParent());
+            Files.copy(file, targetPath, StandardCopyOption.REPLACE_EXISTING);
+            return key;
+        } catch (IOException e) {
+            throw new StorageException("Failed to store file: " + key, e);
+        }
+    }
+
     @Override
     public InputStream retrieve(String key) {
         try {
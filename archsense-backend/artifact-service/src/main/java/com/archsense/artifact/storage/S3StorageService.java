@@ -13,6 +13,7 @@ import software.amazon.awssdk.services.s3.model.*;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 
 @Service
 @ConditionalOnProperty(name = "storage.type", havingValue = "s3")
@@ -53,6 +54,24 @@ public class S3StorageService implements StorageService {
         }
     }
 
+    @Override
+    public String store(String key, Path file, String contentType) {
+        try {
+            log.info("Storing derived file in S3: bucket={}, key={}", bucketName, key);
+
+            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .contentType(contentType)
+                    .build();
+
+            s3Client.putObject(putObjectRequest, RequestBody.fromFile(file));
+            return key;
+        } catch (S3Exception e) {
+            throw new StorageException("S3 error while storing file: " + key, e);
+        }
+    }
+
     @Override
     public InputStream retrieve(String key) {
         try {
@@ -3,11 +3,14 @@ package com.archsense.artifact.storage;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.InputStream;
+import java.nio.file.Path;
 
 public interface StorageService {
 
     String store(String key, MultipartFile file);
 
+    String store(String key, Path file, String contentType);
+
     InputStream retrieve(String key);
 
     void delete(String key);
@@ -3,6 +3,7 @@ package com.archsense.common.constant;
 public enum AnalysisStatus {
     PENDING,
     IN_PROGRESS,
+    DEFERRED,       // Submitted to a provider batch; completes asynchronously
     COMPLETED,
     FAILED
 }
\ No newline at end of file
@@ -0,0 +1,8 @@
+package com.archsense.common.constant;
+
+public enum ArtifactProcessingStatus {
+    PENDING,
+    READY,
+    FAILED,
+    UNSUPPORTED
+}
@@ -5,6 +5,9 @@ public class KafkaTopics {
     public static final String ARTIFACT_UPLOADED = "artifact.uploaded";
     public static final String ARTIFACT_DELETED = "artifact.deleted";
     public static final String ANALYSIS_REQUESTED = "analysis.requested";
+    public static final String ANALYSIS_BATCH_REQUESTED = "analysis.batch.requested";
+    public static final String ANALYSIS_STARTED = "analysis.started";
+    public static final String ANALYSIS_DEFERRED = "analysis.deferred";
     public static final String ANALYSIS_COMPLETED = "analysis.completed";
     public static final String ANALYSIS_FAILED = "analysis.failed";
 
@@ -0,0 +1,22 @@
+package com.archsense.common.dto.request;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+public record CreateBatchAnalysisRequest(
+        @NotEmpty(message = "At least one project must be included")
+        @Valid
+        List<Item> analyses
+) {
+    public record Item(
+            @NotBlank(message = "Project ID is required")
+            String projectId,
+
+            @NotEmpty(message = "At least one artifact must be selected")
+            List<String> artifactIds
+    ) {
+    }
+}
@@ -0,0 +1,24 @@
+package com.archsense.common.dto.response;
+
+import java.time.Instant;
+import java.util.List;
+
+public record BatchAnalysisResponse(
+        String batchId,
+        Instant createdAt,
+        Progress progress,
+        List<AnalysisResponse> analyses
+) {
+    public record Progress(
+            int total,
+            int pending,
+            int inProgress,
+            int deferred,
+            int completed,
+            int failed
+    ) {
+        public boolean isFinished() {
+            return completed + failed == total;
+        }
+    }
+}
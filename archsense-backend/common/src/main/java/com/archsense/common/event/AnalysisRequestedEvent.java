@@ -8,6 +8,9 @@ public record AnalysisRequestedEvent(
         String projectId,
         String userId,
         List<String> artifactIds,
-        Instant requestedAt
+        Integer version,
+        String previousAnalysisId,
+        Instant requestedAt,
+        String batchId          // null for interactive requests
 ) {
 }
\ No newline at end of file
@@ -0,0 +1,11 @@
+package com.archsense.common.event;
+
+import java.time.Instant;
+
+public record AnalysisStartedEvent(
+        String analysisId,
+        String projectId,
+        String userId,
+        Instant startedAt
+) {
+}
@@ -0,0 +1,110 @@
+package com.archsense.common.http;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.classic.HttpClient;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.Configurable;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.Map;
+
+public class PooledHttpClientFactory {
+
+    private static final Logger log = LoggerFactory.getLogger(PooledHttpClientFactory.class);
+
+    private PooledHttpClientFactory() {
+    }
+
+    public static RestTemplate createRestTemplate(String name, HttpClientProperties properties, MeterRegistry meterRegistry) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(createHttpClient(name, properties, meterRegistry)));
+    }
+
+    // Same pool, but each request gives up after the timeout instead of the pool's read timeout. For callers
+    // that stop waiting sooner: a call they abandoned would otherwise hold its thread until the read timeout
+    public static RestTemplate withTimeout(RestTemplate restTemplate, Duration timeout) {
+        if (!(restTemplate.getRequestFactory() instanceof HttpComponentsClientHttpRequestFactory requestFactory)) {
+            log.warn("RestTemplate is not backed by a pooled client; requests keep its own timeouts");
+            return restTemplate;
+        }
+
+        HttpClient httpClient = requestFactory.getHttpClient();
+        RequestConfig defaults = httpClient instanceof Configurable configurable && configurable.getConfig() != null
+                ? configurable.getConfig() : RequestConfig.DEFAULT;
+        Timeout connectionRequestTimeout = defaults.getConnectionRequestTimeout() != null
+                && defaults.getConnectionRequestTimeout().toMilliseconds() < timeout.toMillis()
+                ? defaults.getConnectionRequestTimeout() : Timeout.of(timeout);
+        RequestConfig requestConfig = RequestConfig.copy(defaults)
+                .setConnectionRequestTimeout(connectionRequestTimeout)
+                .setResponseTimeout(Timeout.of(timeout))
+                .build();
+
+        HttpComponentsClientHttpRequestFactory boundedFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        boundedFactory.setHttpContextFactory((method, uri) -> {
+            HttpClientContext context = HttpClientContext.create();
+            context.setRequestConfig(requestConfig);
+            return context;
+        });
+
+        RestTemplate bounded = new RestTemplate(boundedFactory);
+        bounded.setMessageConverters(restTemplate.getMessageConverters());
+        bounded.setErrorHandler(restTemplate.getErrorHandler());
+        bounded.setUriTemplateHandler(restTemplate.getUriTemplateHandler());
+        return bounded;
+    }
+
+    public static CloseableHttpClient createHttpClient(String name, HttpClientProperties properties, MeterRegistry meterRegistry) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(properties.getMaxTotal())
+                .setMaxConnPerRoute(properties.getMaxPerRoute())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(properties.getConnectTimeout()))
+                        .setSocketTimeout(Timeout.of(properties.getReadTimeout()))
+                        .setTimeToLive(TimeValue.of(properties.getTimeToLive()))
+                        .build())
+                .build();
+
+        for (Map.Entry<String, Integer> route : properties.getRoutes().entrySet()) {
+            try {
+                connectionManager.setMaxPerRoute(new HttpRoute(HttpHost.create(route.getKey())), route.getValue());
+            } catch (URISyntaxException e) {
+                throw new IllegalArgumentException("Invalid http.client.routes target: " + route.getKey(), e);
+            }
+        }
+
+        // Metrics are optional; services without a registry still get the pool
+        if (meterRegistry != null) {
+            new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, name).bindTo(meterRegistry);
+        }
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.of(properties.getConnectionRequestTimeout()))
+                .setResponseTimeout(Timeout.of(properties.getReadTimeout()))
+                .build();
+
+        log.info("HTTP client pool '{}' created: maxTotal={}, maxPerRoute={}, routes={}",
+                name, properties.getMaxTotal(), properties.getMaxPerRoute(), properties.getRoutes());
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(properties.getIdleTimeout()))
+                .build();
+    }
+}
@@ -0,0 +1,180 @@
+package com.archsense.common.image;
+
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+// Stateless image helpers shared by upload-time preprocessing in artifact-service and the executor's
+// request pipeline. Dimensions are read from the header only, so measuring an image never decodes it
+public final class ImageScaler {
+
+    // Claude resizes anything beyond these limits before the model sees it, so larger is wasted bytes
+    public static final int MODEL_MAX_EDGE = 1568;
+    public static final double MODEL_MAX_PIXELS = 1_150_000;
+
+    public record Dimensions(int width, int height) {
+        public int longEdge() {
+            return Math.max(width, height);
+        }
+    }
+
+    private ImageScaler() {
+    }
+
+    // Null when no installed ImageIO reader understands the format (e.g. WebP on a stock JDK)
+    public static Dimensions readDimensions(ByteBuffer raw) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteBufferBackedInputStream(raw.duplicate()))) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return new Dimensions(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public static BufferedImage decode(ByteBuffer raw) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteBufferBackedInputStream(raw.duplicate()));
+        if (image == null) {
+            throw new IOException("Unsupported image format");
+        }
+        return image;
+    }
+
+    // Scales down (never up) so the long edge is at most maxEdge and the area at most maxPixels
+    public static BufferedImage resize(BufferedImage source, int maxEdge, double maxPixels) {
+        double scale = Math.min(1.0, Math.min(
+                (double) maxEdge / Math.max(source.getWidth(), source.getHeight()),
+                Math.sqrt(maxPixels / ((double) source.getWidth() * source.getHeight()))));
+        if (scale >= 1.0) {
+            return source;
+        }
+
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        int type = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage target = new BufferedImage(width, height, type);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    public static byte[] encodePng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        return png.toByteArray();
+    }
+
+    public static byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+        // JPEG has no alpha channel; transparent diagram backgrounds become white rather than black
+        BufferedImage rgb = image;
+        if (image.getType() != BufferedImage.TYPE_INT_RGB) {
+            rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = rgb.createGraphics();
+            try {
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+                graphics.drawImage(image, 0, 0, null);
+            } finally {
+                graphics.dispose();
+            }
+        }
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(jpeg)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(rgb, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return jpeg.toByteArray();
+    }
+
+    // Difference hash: average the image down to a 9x8 luminance grid and record whether each cell is
+    // brighter than its right-hand neighbour. Re-exports, rescales and recompressions of one diagram
+    // land a few bits apart. Cells are box-averaged rather than sampled so thin lines still count
+    public static long differenceHash(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double[] sums = new double[9 * 8];
+        int[] counts = new int[9 * 8];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            int cellY = y * 8 / height;
+            for (int x = 0; x < width; x++) {
+                int argb = row[x];
+                // Transparent pixels count as white, matching how they are flattened for JPEG
+                double alpha = ((argb >>> 24) & 0xFF) / 255.0;
+                double luma = 0.299 * ((argb >> 16) & 0xFF) + 0.587 * ((argb >> 8) & 0xFF) + 0.114 * (argb & 0xFF);
+                int cell = cellY * 9 + x * 9 / width;
+                sums[cell] += alpha * luma + (1 - alpha) * 255;
+                counts[cell]++;
+            }
+        }
+
+        long hash = 0;
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                hash <<= 1;
+                int cell = y * 9 + x;
+                if (average(sums, counts, cell) > average(sums, counts, cell + 1)) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    private static double average(double[] sums, int[] counts, int cell) {
+        return counts[cell] == 0 ? 255 : sums[cell] / counts[cell];
+    }
+
+    // Identifies the encoded format from its magic bytes; null for anything else
+    public static String sniffMediaType(ByteBuffer raw) {
+        int p = raw.position();
+        if (raw.remaining() >= 4 && (raw.get(p) & 0xFF) == 0x89
+                && raw.get(p + 1) == 'P' && raw.get(p + 2) == 'N' && raw.get(p + 3) == 'G') {
+            return "image/png";
+        }
+        if (raw.remaining() >= 2 && (raw.get(p) & 0xFF) == 0xFF && (raw.get(p + 1) & 0xFF) == 0xD8) {
+            return "image/jpeg";
+        }
+        return null;
+    }
+}
@@ -21,10 +21,27 @@ export interface Analysis {
 export enum AnalysisStatus {
   PENDING = 'PENDING',
   IN_PROGRESS = 'IN_PROGRESS',
+  DEFERRED = 'DEFERRED',
   COMPLETED = 'COMPLETED',
   FAILED = 'FAILED'
 }
 
+// Pushed over GET /analyses/{id}/events while an analysis runs
+export interface AnalysisEvent {
+  id: string;
+  status: AnalysisStatus;
+  progress?: AnalysisProgress;
+  reportUrl?: string;
+  error?: string;
+  updatedAt?: string;
+}
+
+export interface AnalysisProgress {
+  issuesFound: number;
+  partialIssues: string[];
+  updatedAt?: string;
+}
+
 export interface CreateAnalysisRequest {
   artifactIds: string[];
 }
@@ -75,6 +92,7 @@ export interface EvolutionAnalysis {
   newIssues: string[];
   regressedIssues: string[];
   overallTrend: 'IMPROVING' | 'STABLE' | 'DEGRADING' | 'UNKNOWN';
+  summary?: string;
 }
 
 export interface CostEstimation {
@@ -2,7 +2,8 @@ import { Injectable } from '@angular/core';
 import { HttpClient } from '@angular/common/http';
 import { Observable } from 'rxjs';
 import { environment } from '../../../environments/environment';
-import { Analysis, CreateAnalysisRequest, AnalysisReport } from '../models/analysis.model';
+import { AuthService } from './auth.service';
+import { Analysis, CreateAnalysisRequest, AnalysisReport, AnalysisEvent } from '../models/analysis.model';
 
 @Injectable({
   providedIn: 'root'
@@ -10,7 +11,7 @@ import { Analysis, CreateAnalysisRequest, AnalysisReport } from '../models/analy
 export class AnalysisService {
   private readonly baseUrl = `${environment.apiUrl}`;
 
-  constructor(private http: HttpClient) {}
+  constructor(private http: HttpClient, private authService: AuthService) {}
 
   create(projectId: string, request: CreateAnalysisRequest): Observable<Analysis> {
     return this.http.post<Analysis>(`${this.baseUrl}/projects/${projectId}/analyses`, request);
@@ -27,4 +28,69 @@ export class AnalysisService {
   getReport(id: string): Observable<AnalysisReport> {
     return this.http.get<AnalysisReport>(`${this.baseUrl}/analyses/${id}/report`);
   }
-}
\ No newline at end of file
+
+  // EventSource cannot send an Authorization header, so the stream is read through fetch instead
+  streamEvents(id: string): Observable<AnalysisEvent> {
+    return new Observable<AnalysisEvent>(subscriber => {
+      const controller = new AbortController();
+      const token = this.authService.getToken();
+      const headers: Record<string, string> = { Accept: 'text/event-stream' };
+      if (token) {
+        headers['Authorization'] = `Bearer ${token}`;
+      }
+
+      fetch(`${this.baseUrl}/analyses/${id}/events`, { headers, signal: controller.signal })
+        .then(async response => {
+          if (!response.ok || !response.body) {
+            throw new Error(`Event stream failed with status ${response.status}`);
+          }
+
+          const reader = response.body.pipeThrough(new TextDecoderStream()).getReader();
+          let buffer = '';
+          while (true) {
+            const { value, done } = await reader.read();
+            if (done) {
+              break;
+            }
+            buffer += value;
+
+            let boundary: number;
+            while ((boundary = buffer.indexOf('\n\n')) >= 0) {
+              const block = buffer.slice(0, boundary);
+              buffer = buffer.slice(boundary + 2);
+
+              const event = this.parseEvent(block);
+              if (event?.name === 'error') {
+                throw new Error(`Event stream rejected: ${event.data}`);
+              }
+              if (event) {
+                subscriber.next(JSON.parse(event.data) as AnalysisEvent);
+              }
+            }
+          }
+          subscriber.complete();
+        })
+        .catch(error => {
+          if (!controller.signal.aborted) {
+            subscriber.error(error);
+          }
+        });
+
+      return () => controller.abort();
+    });
+  }
+
+  private parseEvent(block: string): { name: string; data: string } | null {
+    let name = 'message';
+    const data: string[] = [];
+    for (const line of block.split('\n')) {
+      if (line.startsWith('event:')) {
+        name = line.slice(6).trim();
+      } else if (line.startsWith('data:')) {
+        data.push(line.slice(5).replace(/^ /, ''));
+      }
+    }
+    // Comment-only blocks are heartbeats
+    return data.length ? { name, data: data.join('\n') } : null;
+  }
+}
@@ -11,6 +11,7 @@ import {
   Analysis, 
   AnalysisStatus, 
   AnalysisReport,
+  AnalysisProgress,
   ComponentCost 
 } from '../../../core/models/analysis.model';
 
@@ -28,6 +29,11 @@ export class AnalysisReportComponent implements OnInit {
   loading = true;
   errorMessage = '';
   pollSubscription?: Subscription;
+  eventSubscription?: Subscription;
+  progress: AnalysisProgress | null = null;
+  // Stream reopenings since the last event; past the limit the page falls back to polling
+  streamReconnects = 0;
+  readonly maxStreamReconnects = 3;
 
   AnalysisStatus = AnalysisStatus;
 
@@ -46,6 +52,7 @@ export class AnalysisReportComponent implements OnInit {
   }
 
   ngOnDestroy(): void {
+    this.stopWatching();
     this.stopPolling();
   }
 
@@ -57,8 +64,9 @@ export class AnalysisReportComponent implements OnInit {
 
         if (analysis.status === AnalysisStatus.COMPLETED) {
           this.loadReport();
-        } else if (analysis.status === AnalysisStatus.PENDING || analysis.status === AnalysisStatus.IN_PROGRESS) {
-          this.startPolling();
+        } else if (analysis.status === AnalysisStatus.PENDING || analysis.status === AnalysisStatus.IN_PROGRESS
+            || analysis.status === AnalysisStatus.DEFERRED) {
+          this.watchProgress();
         }
       },
       error: (error) => {
@@ -81,6 +89,50 @@ export class AnalysisReportComponent implements OnInit {
     });
   }
 
+  // Live updates over SSE; polling is only the fallback when the stream cannot be opened
+  watchProgress(): void {
+    this.eventSubscription = this.analysisService.streamEvents(this.analysisId).subscribe({
+      next: (event) => {
+        if (!this.analysis) {
+          return;
+        }
+        this.streamReconnects = 0;
+        this.analysis = { ...this.analysis, status: event.status, reportUrl: event.reportUrl, error: event.error };
+        this.progress = event.progress ?? null;
+
+        if (event.status === AnalysisStatus.COMPLETED) {
+          this.stopWatching();
+          this.loadAnalysis();
+        } else if (event.status === AnalysisStatus.FAILED) {
+          this.stopWatching();
+        }
+      },
+      error: () => this.startPolling(),
+      // The server or a proxy ended the stream before the analysis finished
+      complete: () => {
+        const status = this.analysis?.status;
+        if (status !== AnalysisStatus.COMPLETED && status !== AnalysisStatus.FAILED) {
+          this.reconnectOrPoll();
+        }
+      }
+    });
+  }
+
+  reconnectOrPoll(): void {
+    if (this.streamReconnects < this.maxStreamReconnects) {
+      this.streamReconnects++;
+      this.watchProgress();
+    } else {
+      this.startPolling();
+    }
+  }
+
+  stopWatching(): void {
+    if (this.eventSubscription) {
+      this.eventSubscription.unsubscribe();
+    }
+  }
+
   startPolling(): void {
     this.pollSubscription = interval(5000).subscribe(() => {
       this.analysisService.getById(this.analysisId).subscribe({